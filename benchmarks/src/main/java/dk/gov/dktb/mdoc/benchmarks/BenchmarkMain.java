@@ -0,0 +1,21 @@
+package dk.gov.dktb.mdoc.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/// Runs the benchmarks with the GC profiler enabled, so every stage reports allocation rate
+/// (`gc.alloc.rate.norm` is bytes allocated per operation) next to throughput and average time.
+///
+/// Accepts the usual JMH command line, e.g. `java -jar benchmarks.jar VerificationPath -p fixture=4x40`.
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        var commandLine = new CommandLineOptions(args);
+        var options = new OptionsBuilder()
+                .parent(commandLine)
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,29 @@
+package dk.gov.dktb.mdoc.benchmarks;
+
+import java.time.Instant;
+
+/// Recorded presentations used by the benchmarks.
+///
+/// These are copies of the fixtures in `DocumentTest` and `SignedQRTest`; test classes are not
+/// packaged with the library, so they cannot be referenced from here directly.
+final class Fixtures {
+    static final String VP_TOKEN = "o2ZzdGF0dXMAZ3ZlcnNpb25jMS4waWRvY3VtZW50c4GjZ2RvY1R5cGV4KWV1LmV1cm9wYS5lYy5ldWRpLnBzZXVkb255bS5hZ2Vfb3Zlcl8xOC4xbGRldmljZVNpZ25lZKJqZGV2aWNlQXV0aKFvZGV2aWNlU2lnbmF0dXJl0oRDoQEmoFiX2BhYk4R0RGV2aWNlQXV0aGVudGljYXRpb26D9vaDWCAJ54TaW-jEJMRorQNqMSexA5YbSvDADvAwyQbSDxZaR1ggPURukyoWyoKUYMIQbH-Vsz3Y9u2LGonGuDKTFdNEDhVlbm9uY2V4KWV1LmV1cm9wYS5lYy5ldWRpLnBzZXVkb255bS5hZ2Vfb3Zlcl8xOC4x2BhBoFhA-Mnub22moQ4Tp-dQniPnwYpGHSMzfT6GQKUUVwxele_GgGyHQUgdDHbFcnXuE8Cu3EN8hJ-FQEc7LYyht5vFVWpuYW1lU3BhY2Vz2BhBoGxpc3N1ZXJTaWduZWSiamlzc3VlckF1dGiEQ6EBJqEYIVkBKjCCASYwgc2gAwIBAgIJAMWUH8uwJloXMAoGCCqGSM49BAMCMA0xCzAJBgNVBAMMAkNBMB4XDTI0MDkxNzE0MDY1M1oXDTM0MDkxNzE0MDY1M1owETEPMA0GA1UEAwwGSXNzdWVyMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEGw7Dfpfd-wl4ejog_Xx4fNEvxl-NmHRV16A7pSHpHhRO6JKiK9Y3enEQBCpfl0ZhOmMjyLZOchuO_ktgNYRDS6MSMBAwDgYDVR0PAQH_BAQDAgbAMAoGCCqGSM49BAMCA0gAMEUCICd3BXtlOtgsf4yQyEcgp9nK5MHoEIbafneafxIZyoxDAiEA4UKPkD_yztasUpiMHwjQ3FFsYowZOmkMEwHbOWAB32ZZAbfYGFkBsqZnZG9jVHlwZXgpZXUuZXVyb3BhLmVjLmV1ZGkucHNldWRvbnltLmFnZV9vdmVyXzE4LjFndmVyc2lvbmMxLjBsdmFsaWRpdHlJbmZvo2ZzaWduZWTAdDIwMjUtMDUtMjhUMTI6MTM6NDNaaXZhbGlkRnJvbcB0MjAyNS0wNS0yOFQxMjoxMzo0M1pqdmFsaWRVbnRpbMB0MjAyNS0wOC0yNlQxMjoxMzo0M1psdmFsdWVEaWdlc3RzoXgpZXUuZXVyb3BhLmVjLmV1ZGkucHNldWRvbnltLmFnZV9vdmVyXzE4LjGiGm_u4fFYICkTYAVOX2c8b97gSodEPk8e80lKcJ7xH16Yxvd0-sqEGnC5JZFYIG0JV1iTvWM1RIlLWwd6gQ510q5MuCexQV_CYuVjFLeZbWRldmljZUtleUluZm-haWRldmljZUtleaUBAgMmIAEhWCC0xVfUgOs1U8CozVemtYfJKH95NnCWQFJPQ_9U4xD7tSJYIBcv7-0qBq7UbimF5WYExvmbPyDKn8BUl1FDDhJWrWi1b2RpZ2VzdEFsZ29yaXRobWdTSEEtMjU2WECl7OKeiU4J8ab39mR7FADGNkXAdrt3H0Zpf99zPxBTdMmBLDoSYjVgBbJqw3--YVy7HLlF54itBr-wPF8kma8_am5hbWVTcGFjZXOheClldS5ldXJvcGEuZWMuZXVkaS5wc2V1ZG9ueW0uYWdlX292ZXJfMTguMYHYGFhkpGZyYW5kb21YIGurgl5w5ekHaOO4ZQsujyYz3Z3l6ZVspa5UnPAdgN8ZaGRpZ2VzdElEGm_u4fFsZWxlbWVudFZhbHVl9XFlbGVtZW50SWRlbnRpZmllcmthZ2Vfb3Zlcl8xOA";
+    static final String VP_TOKEN_MDOC_NONCE = "hQUmE4m-r5PRefxM4Afvbw";
+    static final String VP_TOKEN_NONCE = "nonce";
+    static final String VP_TOKEN_CLIENT_ID = "clientId";
+    static final String VP_TOKEN_RESPONSE_URI = "responseUrl";
+
+    static final String SIGNED_QR = "pGFkWQQ1o2dkb2NUeXBldGV1LmV1cm9wYS5lYy5hZ2V2MTBubGRldmljZVNpZ25lZKJqZGV2aWNlQXV0aKFvZGV2aWNlU2lnbmF0dXJl0oRDoQEmoFhY2BhYVIR0RGV2aWNlQXV0aGVudGljYXRpb26D9vaDdjZMbGhfZldPYmhySmswaGVlaHhaWUEaaD7hpxpoPuJbdGV1LmV1cm9wYS5lYy5hZ2V2MTBu2BhBoFhAYj83CiLjxOKHhcfGMdCTWV00WjE37MxVkRZYeKqDwAyJ49lqxhZImsWzNC37VMWfWRqURRNu8swNYSEMf4xS9WpuYW1lU3BhY2Vz2BhBoGxpc3N1ZXJTaWduZWSiamlzc3VlckF1dGiEQ6EBJqEYIoIvWCDbADAtKRN0jp8aVItb6fVPI6hQ7hsm8adeEHVRQp_LTlkCJ9gYWQIipmdkb2NUeXBldGV1LmV1cm9wYS5lYy5hZ2V2MTBuZ3ZlcnNpb25jMS4wbHZhbGlkaXR5SW5mb6Nmc2lnbmVkwHQyMDI1LTA2LTAzVDExOjUxOjAzWml2YWxpZEZyb23AdDIwMjUtMDYtMDNUMTE6NTE6MDNaanZhbGlkVW50aWzAdDIwMjUtMDktMDFUMTE6NTE6MDNabHZhbHVlRGlnZXN0c6F0ZXUuZXVyb3BhLmVjLmFnZXYxMG6mGgx3UbxYIJDcOPkM98Jddg51m4XZpFZu4w067PDcnbD5zRyWetjPGkzLHqdYIGsQrYC37a-RHkaRMqQlLFCL89lRBRq7On1pqiF1Rx10GlVOVtJYIBflZ-1FrYrV34ppI8x6yfYYEvP-5iNoysf3eSARsMvoGmowERdYIIDCIxmafW2i7ec8XMT19SrtTtWXSCrafu7zHk21BSdnGmyjww1YIEvBePAdeYWjuPDW1iUPkbROflpsWS9ABzb1Chc6iFUyGn1Chr1YIDzMfWFzxVxk4qCKtm_tqUgwFGRMlXfSX6qO0dYUsE54bWRldmljZUtleUluZm-haWRldmljZUtleaUBAgMmIAEhWCB7-wJX23K7WpofKWS0LBFNFKv6txKVDgtGqBGaKbeYXyJYIL4KhLBz09K9aiarvPNWHbuT384Nu2vCI-iDaECgUqryb2RpZ2VzdEFsZ29yaXRobWdTSEEtMjU2WEDU_XuZ46TZWV6HkzR74x7kUBdrr1-HjPNebTJDz_Iromyfksb0F4e9PcNJzJRLx-8mKd0Z7NnMsePhjNzuXKfHam5hbWVTcGFjZXOhdGV1LmV1cm9wYS5lYy5hZ2V2MTBugdgYWGSkZnJhbmRvbVggVb07h66Lhbwq1uC0Q3HsEEVyn5idk9es9jd9mcIZLZ5oZGlnZXN0SUQabKPDDWxlbGVtZW50VmFsdWX1cWVsZW1lbnRJZGVudGlmaWVya2FnZV9vdmVyXzE4YWYaaD7hp2FtdjZMbGhfZldPYmhySmswaGVlaHhaWUFhdBpoPuJb";
+    static final Instant SIGNED_QR_VALIDATION_TIME = Instant.parse("2025-06-03T11:53:00Z");
+
+    static final String[] SIGNED_QR_PARTS = new String[]{
+            "o2FpAGFuBGFwWQEYpGFkWQQ1o2dkb2NUeXBldGV1LmV1cm9wYS5lYy5hZ2V2MTBubGRldmljZVNpZ25lZKJqZGV2aWNlQXV0aKFvZGV2aWNlU2lnbmF0dXJl0oRDoQEmoFhY2BhYVIR0RGV2aWNlQXV0aGVudGljYXRpb26D9vaDdmdqVTc3Qnp3TkpfaEE2UmxFWEtvMEEaaEBs5xpoQG2bdGV1LmV1cm9wYS5lYy5hZ2V2MTBu2BhBoFhAeNQkjTyw_tWj7GTNnxT-UwHzBPfw4G1-VkKlPRBdE1zNwHL5XW0K29PtTkduR6B0audFN34sIqDUItd7VjXgsmpuYW1lU3BhY2Vz2BhBoGxpc3N1ZXJTaWduZWSiamlzc3VlckF1dA",
+            "o2FpAWFuBGFwWQEYaIRDoQEmoRgigi9YINsAMC0pE3SOnxpUi1vp9U8jqFDuGybxp14QdVFCn8tOWQIn2BhZAiKmZ2RvY1R5cGV0ZXUuZXVyb3BhLmVjLmFnZXYxMG5ndmVyc2lvbmMxLjBsdmFsaWRpdHlJbmZvo2ZzaWduZWTAdDIwMjUtMDYtMDRUMTU6NTc6MjdaaXZhbGlkRnJvbcB0MjAyNS0wNi0wNFQxNTo1NzoyN1pqdmFsaWRVbnRpbMB0MjAyNS0wOS0wMlQxNTo1NzoyN1psdmFsdWVEaWdlc3RzoXRldS5ldXJvcGEuZWMuYWdldjEwbqYaFoC_vVggOxBqcRTVqcfRTNpKCht_DRD9EJ8BCgXXocN2k9cibg8aHQ",
+            "o2FpAmFuBGFwWQEY9IeDWCChQvELwA8oAwrFEZbQJt57NXfHPT10COQxCJMYz4qKABoohT9ZWCDg5BpL29irLPUXWhKkq0hBsyhyXWFnP9liBAWRp1ph5horGWMbWCBD0YYVcmLMLBmJ2hzOs-WYIbu29xJDu4x2v2YeT0rURhpMBrrKWCAU9TV71SbPMuzcx4Z4_VlVV00FdHqWcjIVga49OcNvexpscx4_WCDi68D0NL6SArQ7VcFtHtbnGYzcmc0_oLDn5tPHM59Qgm1kZXZpY2VLZXlJbmZvoWlkZXZpY2VLZXmlAQIDJiABIVggriFPfyA1-VmyvtTg2Wp_q6oxwav5DvAZHbw9Nv2S9z4iWCCTKd3iBLnT9sSpd1cZxaN68g",
+            "o2FpA2FuBGFwWQEahHsbRjB02nHpymurFv5Gb2RpZ2VzdEFsZ29yaXRobWdTSEEtMjU2WEAKmz_rbRVyQcyVxzI-99OtwWYxTtGH4bi5hy3OG-_dJN_KvpdrOutzaIQFL9UMn71aNNlj7kBycgd7iqwyL7n_am5hbWVTcGFjZXOhdGV1LmV1cm9wYS5lYy5hZ2V2MTBugdgYWGSkZnJhbmRvbVggms9eJ2458pYojbjvTxnLVQ7JnabkZIxuMUdCmxkmOYloZGlnZXN0SUQaTAa6ymxlbGVtZW50VmFsdWX1cWVsZW1lbnRJZGVudGlmaWVya2FnZV9vdmVyXzE4YWYaaEBs52FtdmdqVTc3Qnp3TkpfaEE2UmxFWEtvMEFhdBpoQG2b",
+    };
+    static final Instant SIGNED_QR_PARTS_VALIDATION_TIME = Instant.parse("2025-06-04T15:58:00Z");
+
+    private Fixtures() {
+    }
+}
@@ -0,0 +1,278 @@
+package dk.gov.dktb.mdoc.benchmarks;
+
+import dk.gov.dktb.mdoc.model.SessionTranscript;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.KeyStore;
+import java.security.MessageDigest;
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Random;
+
+/// Generates signed DeviceResponses with an arbitrary number of namespaces and elements, so the
+/// benchmarks can show how decoding and verification scale with document size.
+///
+/// The issuer key and self-signed certificate are read from `benchmark-issuer.p12`; the device key
+/// is generated per instance. Everything is encoded by hand, so the output does not depend on the
+/// code being measured.
+final class GeneratedDocuments {
+    static final String DOC_TYPE = "eu.europa.ec.eudi.pid.1";
+
+    private static final String KEYSTORE = "/benchmark-issuer.p12";
+    private static final char[] KEYSTORE_PASSWORD = "benchmark".toCharArray();
+    private static final String KEY_ALIAS = "issuer";
+
+    private static final int COSE_ALG_ES256 = -7;
+    private static final int COSE_HEADER_ALG = 1;
+    private static final int COSE_HEADER_X5CHAIN = 33;
+
+    private final PrivateKey issuerKey;
+    private final X509Certificate issuerCertificate;
+    private final KeyPair deviceKey;
+
+    private GeneratedDocuments(PrivateKey issuerKey, X509Certificate issuerCertificate, KeyPair deviceKey) {
+        this.issuerKey = issuerKey;
+        this.issuerCertificate = issuerCertificate;
+        this.deviceKey = deviceKey;
+    }
+
+    static GeneratedDocuments create() throws Exception {
+        var keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = GeneratedDocuments.class.getResourceAsStream(KEYSTORE)) {
+            keyStore.load(in, KEYSTORE_PASSWORD);
+        }
+        var issuerKey = (PrivateKey) keyStore.getKey(KEY_ALIAS, KEYSTORE_PASSWORD);
+        var issuerCertificate = (X509Certificate) keyStore.getCertificate(KEY_ALIAS);
+
+        var generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+
+        return new GeneratedDocuments(issuerKey, issuerCertificate, generator.generateKeyPair());
+    }
+
+    /// Encodes a DeviceResponse holding one document with `nameSpaces` namespaces of
+    /// `elementsPerNameSpace` elements each, device-signed for `transcript`.
+    byte[] deviceResponse(int nameSpaces, int elementsPerNameSpace, SessionTranscript transcript) throws Exception {
+        var random = new Random(nameSpaces * 31L + elementsPerNameSpace);
+
+        var items = new byte[nameSpaces][elementsPerNameSpace][];
+        var digestIds = new int[nameSpaces][elementsPerNameSpace];
+        for (int n = 0; n < nameSpaces; n++) {
+            for (int e = 0; e < elementsPerNameSpace; e++) {
+                digestIds[n][e] = random.nextInt(Integer.MAX_VALUE);
+                items[n][e] = issuerSignedItemBytes(digestIds[n][e], random, "element_" + e, elementValue(e));
+            }
+        }
+
+        var mso = mobileSecurityObject(items, digestIds);
+        var issuerAuth = sign1(tag24(mso), true, issuerKey);
+        var deviceAuthentication = tag24(deviceAuthentication(transcript));
+        var deviceSignature = sign1(deviceAuthentication, false, deviceKey.getPrivate());
+
+        var out = new Cbor();
+        out.map(3);
+        out.text("version").text("1.0");
+        out.text("documents").array(1);
+        out.map(3);
+        out.text("docType").text(DOC_TYPE);
+        out.text("issuerSigned").map(2);
+        out.text("nameSpaces").map(nameSpaces);
+        for (int n = 0; n < nameSpaces; n++) {
+            out.text(nameSpace(n)).array(elementsPerNameSpace);
+            for (int e = 0; e < elementsPerNameSpace; e++) {
+                out.raw(items[n][e]);
+            }
+        }
+        out.text("issuerAuth").raw(issuerAuth);
+        out.text("deviceSigned").map(2);
+        out.text("nameSpaces").raw(tag24(new Cbor().map(0).toByteArray()));
+        out.text("deviceAuth").map(1);
+        out.text("deviceSignature").tag(18).raw(deviceSignature);
+        out.text("status").integer(0);
+        return out.toByteArray();
+    }
+
+    private static String nameSpace(int index) {
+        return "eu.europa.ec.eudi.pid.benchmark." + index;
+    }
+
+    private static Object elementValue(int index) {
+        return switch (index % 3) {
+            case 0 -> "value-" + index;
+            case 1 -> index * 1000L;
+            default -> index % 2 == 0;
+        };
+    }
+
+    private static byte[] issuerSignedItemBytes(int digestId, Random random, String identifier, Object value) {
+        var salt = new byte[32];
+        random.nextBytes(salt);
+
+        var item = new Cbor().map(4)
+                .text("digestID").integer(digestId)
+                .text("random").bytes(salt)
+                .text("elementIdentifier").text(identifier)
+                .text("elementValue");
+        if (value instanceof String s) {
+            item.text(s);
+        } else if (value instanceof Long l) {
+            item.integer(l);
+        } else {
+            item.bool((Boolean) value);
+        }
+        return tag24(item.toByteArray());
+    }
+
+    private byte[] mobileSecurityObject(byte[][][] items, int[][] digestIds) throws Exception {
+        var sha256 = MessageDigest.getInstance("SHA-256");
+        var ecKey = (ECPublicKey) deviceKey.getPublic();
+
+        var out = new Cbor().map(6);
+        out.text("version").text("1.0");
+        out.text("digestAlgorithm").text("SHA-256");
+        out.text("valueDigests").map(items.length);
+        for (int n = 0; n < items.length; n++) {
+            out.text(nameSpace(n)).map(items[n].length);
+            for (int e = 0; e < items[n].length; e++) {
+                out.integer(digestIds[n][e]).bytes(sha256.digest(items[n][e]));
+            }
+        }
+        out.text("deviceKeyInfo").map(1);
+        out.text("deviceKey").map(4)
+                .integer(1).integer(2)
+                .integer(-1).integer(1)
+                .integer(-2).bytes(unsigned(ecKey.getW().getAffineX()))
+                .integer(-3).bytes(unsigned(ecKey.getW().getAffineY()));
+        out.text("docType").text(DOC_TYPE);
+        out.text("validityInfo").map(3)
+                .text("signed").tag(0).text("2025-01-01T00:00:00Z")
+                .text("validFrom").tag(0).text("2025-01-01T00:00:00Z")
+                .text("validUntil").tag(0).text("2125-01-01T00:00:00Z");
+        return out.toByteArray();
+    }
+
+    private static byte[] deviceAuthentication(SessionTranscript transcript) {
+        return new Cbor().array(4)
+                .text("DeviceAuthentication")
+                .raw(transcript.encode())
+                .text(DOC_TYPE)
+                .raw(tag24(new Cbor().map(0).toByteArray()))
+                .toByteArray();
+    }
+
+    private byte[] sign1(byte[] payload, boolean withCertificate, PrivateKey key) throws Exception {
+        var protectedHeader = new Cbor().map(1).integer(COSE_HEADER_ALG).integer(COSE_ALG_ES256).toByteArray();
+
+        var sigStructure = new Cbor().array(4)
+                .text("Signature1")
+                .bytes(protectedHeader)
+                .bytes(new byte[0])
+                .bytes(payload)
+                .toByteArray();
+        var signer = Signature.getInstance("SHA256withECDSAinP1363Format");
+        signer.initSign(key);
+        signer.update(sigStructure);
+
+        var out = new Cbor().array(4).bytes(protectedHeader);
+        if (withCertificate) {
+            out.map(1).integer(COSE_HEADER_X5CHAIN).bytes(issuerCertificate.getEncoded());
+        } else {
+            out.map(0);
+        }
+        return out.bytes(payload).bytes(signer.sign()).toByteArray();
+    }
+
+    private static byte[] tag24(byte[] encoded) {
+        return new Cbor().tag(24).bytes(encoded).toByteArray();
+    }
+
+    private static byte[] unsigned(BigInteger value) {
+        var bytes = value.toByteArray();
+        var result = new byte[32];
+        var length = Math.min(bytes.length, result.length);
+        System.arraycopy(bytes, bytes.length - length, result, result.length - length, length);
+        return result;
+    }
+
+    /// Minimal definite-length CBOR encoder, enough for the structures above.
+    private static final class Cbor {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        Cbor map(int size) {
+            return head(5, size);
+        }
+
+        Cbor array(int size) {
+            return head(4, size);
+        }
+
+        Cbor tag(long tag) {
+            return head(6, tag);
+        }
+
+        Cbor integer(long value) {
+            return value >= 0 ? head(0, value) : head(1, -1 - value);
+        }
+
+        Cbor bool(boolean value) {
+            out.write(value ? 0xf5 : 0xf4);
+            return this;
+        }
+
+        Cbor text(String value) {
+            var bytes = value.getBytes(StandardCharsets.UTF_8);
+            head(3, bytes.length);
+            out.writeBytes(bytes);
+            return this;
+        }
+
+        Cbor bytes(byte[] value) {
+            head(2, value.length);
+            out.writeBytes(value);
+            return this;
+        }
+
+        Cbor raw(byte[] encoded) {
+            out.writeBytes(encoded);
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return out.toByteArray();
+        }
+
+        private Cbor head(int majorType, long value) {
+            var type = majorType << 5;
+            if (value < 24) {
+                out.write(type | (int) value);
+            } else if (value < 0x100) {
+                out.write(type | 24);
+                out.write((int) value);
+            } else if (value < 0x10000) {
+                out.write(type | 25);
+                writeBigEndian(value, 2);
+            } else if (value < 0x100000000L) {
+                out.write(type | 26);
+                writeBigEndian(value, 4);
+            } else {
+                out.write(type | 27);
+                writeBigEndian(value, 8);
+            }
+            return this;
+        }
+
+        private void writeBigEndian(long value, int bytes) {
+            for (int i = bytes - 1; i >= 0; i--) {
+                out.write((int) (value >>> (8 * i)));
+            }
+        }
+    }
+}
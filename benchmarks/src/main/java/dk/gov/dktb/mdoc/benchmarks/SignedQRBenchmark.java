@@ -0,0 +1,98 @@
+package dk.gov.dktb.mdoc.benchmarks;
+
+import dk.gov.dktb.mdoc.model.SignedQRPayload;
+import dk.gov.dktb.mdoc.utilities.Base64Url;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/// Signed QR verification, using the recorded payloads from `SignedQRTest`.
+///
+/// `decode*` measures parsing only, `assertValid*` measures validation of an already parsed
+/// payload, and `decodeAndAssertValid*` the two together as a scanner would run them.
+/// `decodeAndRejectExpired` is a rescanned stale code, rejected before the document is decoded.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignedQRBenchmark {
+
+    private byte[] singlePayload;
+    private List<byte[]> multiplePayloads;
+    private SignedQRPayload decodedSingle;
+    private SignedQRPayload decodedMultiple;
+
+    @Setup
+    public void setup() {
+        singlePayload = Base64Url.decode(Fixtures.SIGNED_QR);
+        multiplePayloads = Arrays.stream(Fixtures.SIGNED_QR_PARTS).map(Base64Url::decode).toList();
+
+        decodedSingle = decodeSingle();
+        decodedMultiple = decodeMultiple();
+
+        // Fail fast on a broken fixture rather than measuring exceptions.
+        decodedSingle.assertValid();
+        decodedMultiple.assertValid();
+    }
+
+    @Benchmark
+    public SignedQRPayload decodeSingle() {
+        return configure(new SignedQRPayload(singlePayload), Clock.fixed(Fixtures.SIGNED_QR_VALIDATION_TIME, ZoneOffset.UTC));
+    }
+
+    @Benchmark
+    public SignedQRPayload decodeMultiple() {
+        return configure(SignedQRPayload.fromMultipleParts(multiplePayloads), Clock.fixed(Fixtures.SIGNED_QR_PARTS_VALIDATION_TIME, ZoneOffset.UTC));
+    }
+
+    @Benchmark
+    public void assertValidSingle() {
+        decodedSingle.assertValid();
+    }
+
+    @Benchmark
+    public void assertValidMultiple() {
+        decodedMultiple.assertValid();
+    }
+
+    @Benchmark
+    public SignedQRPayload decodeAndAssertValidSingle() {
+        var payload = decodeSingle();
+        payload.assertValid();
+        return payload;
+    }
+
+    @Benchmark
+    public SecurityException decodeAndRejectExpired() {
+        var payload = configure(new SignedQRPayload(singlePayload), Clock.fixed(Fixtures.SIGNED_QR_VALIDATION_TIME.plus(Duration.ofHours(1)), ZoneOffset.UTC));
+        try {
+            payload.assertValid();
+        } catch (SecurityException e) {
+            return e;
+        }
+        throw new IllegalStateException("Expired payload was accepted");
+    }
+
+    private static SignedQRPayload configure(SignedQRPayload payload, Clock clock) {
+        payload.setClock(clock);
+        payload.setAllowedClockSkew(Duration.ofSeconds(60));
+        payload.setMaxAllowedTimeToLive(Duration.ofSeconds(180));
+        return payload;
+    }
+}
@@ -0,0 +1,122 @@
+package dk.gov.dktb.mdoc.benchmarks;
+
+import dk.gov.dktb.mdoc.model.DeviceResponseExt;
+import dk.gov.dktb.mdoc.model.DocumentExt;
+import dk.gov.dktb.mdoc.model.SessionTranscript;
+import dk.gov.dktb.mdoc.model.SessionTranscriptTemplate;
+import dk.gov.dktb.mdoc.utilities.Base64Url;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/// One benchmark per stage of the OID4VP vp_token verification path:
+///
+/// ```
+/// vp_token --base64url--> DeviceResponse bytes --decode--> DeviceResponseExt
+///     --> issuer signature (issuerAuth) --> device signature (DeviceAuthentication)
+///```
+///
+/// Each stage starts from the output of the previous one, prepared once in [#setup()], so the
+/// numbers of one stage do not include the cost of the others. `fullPath` runs all of them.
+///
+/// `fixture` selects the input: `oid4vp` is the recorded token from `DocumentTest`, `NxM` is a
+/// generated document with N namespaces of M elements each.
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class VerificationPathBenchmark {
+
+    @Param({"oid4vp", "1x10", "4x40"})
+    public String fixture;
+
+    private String vpToken;
+    private byte[] vpTokenBytes;
+    private byte[] decodeBuffer;
+    private byte[] deviceResponseBytes;
+    private DocumentExt decodedDocument;
+    private SessionTranscript transcript;
+    private SessionTranscriptTemplate transcriptTemplate;
+
+    @Setup
+    public void setup() throws Exception {
+        transcriptTemplate = SessionTranscriptTemplate.forOid4VP(Fixtures.VP_TOKEN_CLIENT_ID, Fixtures.VP_TOKEN_RESPONSE_URI);
+        transcript = SessionTranscript.forOid4VP(Fixtures.VP_TOKEN_CLIENT_ID, Fixtures.VP_TOKEN_RESPONSE_URI,
+                Fixtures.VP_TOKEN_NONCE, Fixtures.VP_TOKEN_MDOC_NONCE);
+
+        if ("oid4vp".equals(fixture)) {
+            vpToken = Fixtures.VP_TOKEN;
+        } else {
+            var size = fixture.split("x");
+            var generated = GeneratedDocuments.create()
+                    .deviceResponse(Integer.parseInt(size[0]), Integer.parseInt(size[1]), transcript);
+            vpToken = Base64Url.encode(generated);
+        }
+
+        deviceResponseBytes = Base64Url.decode(vpToken);
+        vpTokenBytes = vpToken.getBytes(StandardCharsets.US_ASCII);
+        decodeBuffer = new byte[deviceResponseBytes.length];
+        decodedDocument = DeviceResponseExt.from(deviceResponseBytes).getDocument(0);
+
+        // Fail fast on a broken fixture rather than measuring exceptions.
+        fullPath();
+    }
+
+    @Benchmark
+    public byte[] base64UrlDecode() {
+        return Base64Url.decode(vpToken);
+    }
+
+    /// The token as bytes, as it arrives in an HTTP body, decoded into a reused buffer.
+    @Benchmark
+    public int base64UrlDecodeBytes() {
+        return Base64Url.decode(vpTokenBytes, 0, vpTokenBytes.length, decodeBuffer, 0);
+    }
+
+    @Benchmark
+    public DeviceResponseExt decodeDeviceResponse() {
+        return DeviceResponseExt.from(deviceResponseBytes);
+    }
+
+    @Benchmark
+    public byte[] sessionTranscript() {
+        return SessionTranscript.forOid4VP(Fixtures.VP_TOKEN_CLIENT_ID, Fixtures.VP_TOKEN_RESPONSE_URI,
+                Fixtures.VP_TOKEN_NONCE, Fixtures.VP_TOKEN_MDOC_NONCE).encode();
+    }
+
+    @Benchmark
+    public byte[] sessionTranscriptFromTemplate() {
+        return transcriptTemplate.transcript(Fixtures.VP_TOKEN_NONCE, Fixtures.VP_TOKEN_MDOC_NONCE).encode();
+    }
+
+    @Benchmark
+    public void issuerSignature() {
+        decodedDocument.getIssuerSigned().assertSignatureValid();
+    }
+
+    @Benchmark
+    public void deviceSignature() {
+        decodedDocument.assertSignatureValid(transcript);
+    }
+
+    @Benchmark
+    public DocumentExt fullPath() {
+        var document = DeviceResponseExt.from(Base64Url.decode(vpToken)).getDocument(0);
+        document.getIssuerSigned().assertSignatureValid();
+        document.assertSignatureValid(transcript);
+        return document;
+    }
+}
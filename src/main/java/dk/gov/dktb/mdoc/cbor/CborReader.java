@@ -0,0 +1,500 @@
+package dk.gov.dktb.mdoc.cbor;
+
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/// Token-level CBOR reader over a region of a byte array.
+///
+/// The reader never copies the input: byte strings can be read as [ByteSlice] views of the input
+/// ([#readByteStringSlice()]) and are only materialised when the caller asks for an array. Containers are read header first, so a
+/// caller can walk a structure it knows and [#skip()] everything it does not care about:
+///
+/// ```
+/// var size = reader.readMapHeader();
+/// for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+///     switch (reader.readText()) {
+///         case "docType" -> docType = reader.readText();
+///         default -> reader.skip();
+///     }
+/// }
+///```
+///
+/// Malformed or truncated input is reported as [IllegalArgumentException]. So is input nested
+/// deeper than [#maxDepth(int)] in [#skip()] and [#readValue()], which would otherwise recurse
+/// without bound.
+public final class CborReader {
+    public static final int MAJOR_TYPE_UNSIGNED_INTEGER = 0;
+    public static final int MAJOR_TYPE_NEGATIVE_INTEGER = 1;
+    public static final int MAJOR_TYPE_BYTE_STRING = 2;
+    public static final int MAJOR_TYPE_TEXT_STRING = 3;
+    public static final int MAJOR_TYPE_ARRAY = 4;
+    public static final int MAJOR_TYPE_MAP = 5;
+    public static final int MAJOR_TYPE_TAG = 6;
+    public static final int MAJOR_TYPE_SIMPLE = 7;
+
+    /// Returned by the container header methods for indefinite-length containers.
+    public static final int INDEFINITE_LENGTH = -1;
+
+    public static final int DEFAULT_MAX_DEPTH = 64;
+
+    private static final int ADDITIONAL_INFO_INDEFINITE = 31;
+    private static final int BREAK = 0xff;
+    private static final int SIMPLE_FALSE = 20;
+    private static final int SIMPLE_TRUE = 21;
+    private static final int SIMPLE_NULL = 22;
+    private static final int SIMPLE_UNDEFINED = 23;
+
+    private final byte[] data;
+    private final int end;
+    private int position;
+    private int maxDepth = DEFAULT_MAX_DEPTH;
+    private int depth;
+
+    public CborReader(byte[] data) {
+        this(data, 0, data.length);
+    }
+
+    public CborReader(ByteSlice slice) {
+        this(slice.array(), slice.offset(), slice.length());
+    }
+
+    public CborReader(byte[] data, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > data.length - length) {
+            throw new IndexOutOfBoundsException("Region [" + offset + ", " + offset + "+" + length + ") outside array of length " + data.length);
+        }
+        this.data = data;
+        this.position = offset;
+        this.end = offset + length;
+    }
+
+    /// Limits the nesting of arrays, maps and tags in items read with [#skip()] and [#readValue()].
+    ///
+    /// @return this reader
+    public CborReader maxDepth(int maxDepth) {
+        this.maxDepth = maxDepth;
+        return this;
+    }
+
+    /// @return a reader over `slice`, typically embedded CBOR read from this reader, with the same limits
+    public CborReader reader(ByteSlice slice) {
+        return new CborReader(slice).maxDepth(maxDepth);
+    }
+
+    public byte[] data() {
+        return data;
+    }
+
+    public int position() {
+        return position;
+    }
+
+    public boolean hasRemaining() {
+        return position < end;
+    }
+
+    public int peekMajorType() {
+        return peek() >>> 5;
+    }
+
+    public boolean peekNull() {
+        return peek() == ((MAJOR_TYPE_SIMPLE << 5) | SIMPLE_NULL);
+    }
+
+    /// @return the number of entries, or [#INDEFINITE_LENGTH]
+    public int readMapHeader() {
+        return readContainerHeader(MAJOR_TYPE_MAP);
+    }
+
+    /// @return the number of elements, or [#INDEFINITE_LENGTH]
+    public int readArrayHeader() {
+        return readContainerHeader(MAJOR_TYPE_ARRAY);
+    }
+
+    /// Loop condition for the entries of a container whose header returned `size`. For
+    /// indefinite-length containers this consumes the terminating break.
+    public boolean hasMoreEntries(int size, int index) {
+        if (size != INDEFINITE_LENGTH) {
+            return index < size;
+        }
+        if (peek() == BREAK) {
+            position++;
+            return false;
+        }
+        return true;
+    }
+
+    public long readTag() {
+        return readHead(MAJOR_TYPE_TAG);
+    }
+
+    /// Reads a tag if one is present and returns it, or returns -1 and consumes nothing.
+    public long readOptionalTag() {
+        return peekMajorType() == MAJOR_TYPE_TAG ? readTag() : -1;
+    }
+
+    public String readText() {
+        var length = readStringHeader(MAJOR_TYPE_TEXT_STRING);
+        var text = new String(data, position, length, StandardCharsets.UTF_8);
+        position += length;
+        return text;
+    }
+
+    /// Reads the header of a definite-length byte string and leaves the reader positioned at its
+    /// first content byte.
+    ///
+    /// @return the content length
+    public int readByteStringHeader() {
+        return readStringHeader(MAJOR_TYPE_BYTE_STRING);
+    }
+
+    /// Reads a definite-length byte string as a view of the input, without copying.
+    public ByteSlice readByteStringSlice() {
+        var length = readByteStringHeader();
+        var slice = new ByteSlice(data, position, length);
+        position += length;
+        return slice;
+    }
+
+    public byte[] readBytes() {
+        var length = readByteStringHeader();
+        var bytes = new byte[length];
+        System.arraycopy(data, position, bytes, 0, length);
+        position += length;
+        return bytes;
+    }
+
+    /// Advances over `length` bytes, typically the content of a byte string whose header was read
+    /// with [#readByteStringHeader()].
+    public void skipBytes(int length) {
+        require(length);
+        position += length;
+    }
+
+    /// @return the input consumed since `start`, a position previously returned by [#position()]
+    public ByteSlice sliceFrom(int start) {
+        return new ByteSlice(data, start, position - start);
+    }
+
+    public long readLong() {
+        var majorType = peekMajorType();
+        if (majorType != MAJOR_TYPE_UNSIGNED_INTEGER && majorType != MAJOR_TYPE_NEGATIVE_INTEGER) {
+            throw unexpected("an integer", majorType);
+        }
+        var value = readHead(majorType);
+        if (value < 0) {
+            throw new IllegalArgumentException("Integer at offset " + position + " does not fit in a long");
+        }
+        return majorType == MAJOR_TYPE_UNSIGNED_INTEGER ? value : -1 - value;
+    }
+
+    public int readInt() {
+        var value = readLong();
+        if (value != (int) value) {
+            throw new IllegalArgumentException("Integer " + value + " does not fit in an int");
+        }
+        return (int) value;
+    }
+
+    public boolean readBoolean() {
+        var initialByte = readByte();
+        if (initialByte == ((MAJOR_TYPE_SIMPLE << 5) | SIMPLE_TRUE)) {
+            return true;
+        }
+        if (initialByte == ((MAJOR_TYPE_SIMPLE << 5) | SIMPLE_FALSE)) {
+            return false;
+        }
+        position--;
+        throw unexpected("a boolean", initialByte >>> 5);
+    }
+
+    /// Skips one complete data item, including everything nested in it.
+    public void skip() {
+        var initialByte = readByte();
+        var majorType = initialByte >>> 5;
+        var additionalInfo = initialByte & 0x1f;
+
+        if (majorType == MAJOR_TYPE_SIMPLE) {
+            skipSimple(additionalInfo);
+            return;
+        }
+        var nested = majorType >= MAJOR_TYPE_ARRAY;
+        if (nested) {
+            enter();
+        }
+        if (additionalInfo == ADDITIONAL_INFO_INDEFINITE) {
+            skipIndefinite(majorType);
+        } else {
+            skipDefinite(majorType, readArgument(additionalInfo));
+        }
+        if (nested) {
+            depth--;
+        }
+    }
+
+    /// Reads one data item into plain Java objects, the same representation
+    /// `com.authlete.cbor.CBORParser` produces: `Integer`/`Long`/`BigInteger`, `byte[]`,
+    /// `String`, `List`, `Map`, `Boolean`, `Float`/`Double` and `null`. Tags are dropped and their
+    /// content returned.
+    public Object readValue() {
+        var majorType = peekMajorType();
+        switch (majorType) {
+            case MAJOR_TYPE_UNSIGNED_INTEGER, MAJOR_TYPE_NEGATIVE_INTEGER -> {
+                return readInteger(majorType);
+            }
+            case MAJOR_TYPE_BYTE_STRING -> {
+                return readBytes();
+            }
+            case MAJOR_TYPE_TEXT_STRING -> {
+                return readText();
+            }
+            case MAJOR_TYPE_ARRAY -> {
+                enter();
+                var size = readArrayHeader();
+                var list = new ArrayList<>(size == INDEFINITE_LENGTH ? 4 : size);
+                for (int i = 0; hasMoreEntries(size, i); i++) {
+                    list.add(readValue());
+                }
+                depth--;
+                return list;
+            }
+            case MAJOR_TYPE_MAP -> {
+                enter();
+                var size = readMapHeader();
+                var map = new LinkedHashMap<>();
+                for (int i = 0; hasMoreEntries(size, i); i++) {
+                    var key = readValue();
+                    map.put(key, readValue());
+                }
+                depth--;
+                return map;
+            }
+            case MAJOR_TYPE_TAG -> {
+                enter();
+                readTag();
+                var value = readValue();
+                depth--;
+                return value;
+            }
+            default -> {
+                return readSimple();
+            }
+        }
+    }
+
+    /// Casts the result of [#readValue()] for a caller that expects a map with string keys.
+    @SuppressWarnings("unchecked")
+    public Map<String, Object> readStringKeyedMap() {
+        if (peekMajorType() != MAJOR_TYPE_MAP) {
+            throw unexpected("a map", peekMajorType());
+        }
+        return (Map<String, Object>) readValue();
+    }
+
+    /// Casts the result of [#readValue()] for a caller that expects an array.
+    @SuppressWarnings("unchecked")
+    public List<Object> readList() {
+        if (peekMajorType() != MAJOR_TYPE_ARRAY) {
+            throw unexpected("an array", peekMajorType());
+        }
+        return (List<Object>) readValue();
+    }
+
+    private Object readInteger(int majorType) {
+        var value = readHead(majorType);
+        if (value >= 0) {
+            var signed = majorType == MAJOR_TYPE_UNSIGNED_INTEGER ? value : -1 - value;
+            if (signed == (int) signed) {
+                return (int) signed;
+            }
+            return signed;
+        }
+        var unsigned = new BigInteger(Long.toUnsignedString(value));
+        return majorType == MAJOR_TYPE_UNSIGNED_INTEGER ? unsigned : BigInteger.ONE.negate().subtract(unsigned);
+    }
+
+    private Object readSimple() {
+        var initialByte = readByte();
+        var additionalInfo = initialByte & 0x1f;
+        return switch (additionalInfo) {
+            case SIMPLE_FALSE -> Boolean.FALSE;
+            case SIMPLE_TRUE -> Boolean.TRUE;
+            case SIMPLE_NULL, SIMPLE_UNDEFINED -> null;
+            case 25 -> halfToFloat((int) readBigEndian(2));
+            case 26 -> Float.intBitsToFloat((int) readBigEndian(4));
+            case 27 -> Double.longBitsToDouble(readBigEndian(8));
+            default -> throw new IllegalArgumentException("Unsupported simple value " + additionalInfo + " at offset " + (position - 1));
+        };
+    }
+
+    private static float halfToFloat(int half) {
+        var exponent = (half >>> 10) & 0x1f;
+        var mantissa = half & 0x3ff;
+        var magnitude = exponent == 0 ? Math.scalb((float) mantissa, -24)
+                : exponent == 31 ? (mantissa == 0 ? Float.POSITIVE_INFINITY : Float.NaN)
+                : Math.scalb((float) (mantissa | 0x400), exponent - 25);
+        return (half & 0x8000) == 0 ? magnitude : -magnitude;
+    }
+
+    private void skipSimple(int additionalInfo) {
+        switch (additionalInfo) {
+            case 24 -> skipBytes(1);
+            case 25 -> skipBytes(2);
+            case 26 -> skipBytes(4);
+            case 27 -> skipBytes(8);
+            case ADDITIONAL_INFO_INDEFINITE -> throw new IllegalArgumentException("Unexpected break at offset " + (position - 1));
+            default -> {
+                if (additionalInfo > 27) {
+                    throw new IllegalArgumentException("Reserved additional information " + additionalInfo + " at offset " + (position - 1));
+                }
+            }
+        }
+    }
+
+    private void skipDefinite(int majorType, long argument) {
+        switch (majorType) {
+            case MAJOR_TYPE_UNSIGNED_INTEGER, MAJOR_TYPE_NEGATIVE_INTEGER -> {
+            }
+            case MAJOR_TYPE_BYTE_STRING, MAJOR_TYPE_TEXT_STRING -> skipBytes(checkedLength(argument));
+            case MAJOR_TYPE_ARRAY -> {
+                for (long i = checkedLength(argument); i > 0; i--) {
+                    skip();
+                }
+            }
+            case MAJOR_TYPE_MAP -> {
+                for (long i = checkedLength(argument); i > 0; i--) {
+                    skip();
+                    skip();
+                }
+            }
+            case MAJOR_TYPE_TAG -> skip();
+            default -> throw new IllegalStateException();
+        }
+    }
+
+    private void skipIndefinite(int majorType) {
+        switch (majorType) {
+            case MAJOR_TYPE_BYTE_STRING, MAJOR_TYPE_TEXT_STRING -> {
+                while (!consumeBreak()) {
+                    skipBytes(readStringHeader(majorType));
+                }
+            }
+            case MAJOR_TYPE_ARRAY -> {
+                while (!consumeBreak()) {
+                    skip();
+                }
+            }
+            case MAJOR_TYPE_MAP -> {
+                while (!consumeBreak()) {
+                    skip();
+                    skip();
+                }
+            }
+            default -> throw new IllegalArgumentException("Indefinite length not allowed for major type " + majorType);
+        }
+    }
+
+    private void enter() {
+        if (++depth > maxDepth) {
+            throw new IllegalArgumentException("Nesting deeper than " + maxDepth + " at offset " + position);
+        }
+    }
+
+    private boolean consumeBreak() {
+        if (peek() == BREAK) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private int readContainerHeader(int majorType) {
+        var initialByte = peek();
+        if (initialByte >>> 5 != majorType) {
+            throw unexpected(majorType == MAJOR_TYPE_MAP ? "a map" : "an array", initialByte >>> 5);
+        }
+        if ((initialByte & 0x1f) == ADDITIONAL_INFO_INDEFINITE) {
+            position++;
+            return INDEFINITE_LENGTH;
+        }
+        var length = checkedLength(readHead(majorType));
+        // Every entry takes at least one byte, so a larger count cannot be satisfied by the input.
+        if (length > end - position) {
+            throw new IllegalArgumentException("Container of " + length + " entries exceeds the remaining input");
+        }
+        return length;
+    }
+
+    private int readStringHeader(int majorType) {
+        if ((peek() & 0x1f) == ADDITIONAL_INFO_INDEFINITE) {
+            throw new IllegalArgumentException("Indefinite-length strings are not supported (offset " + position + ")");
+        }
+        var length = checkedLength(readHead(majorType));
+        require(length);
+        return length;
+    }
+
+    private long readHead(int expectedMajorType) {
+        var initialByte = peek();
+        if (initialByte >>> 5 != expectedMajorType) {
+            throw unexpected("major type " + expectedMajorType, initialByte >>> 5);
+        }
+        position++;
+        return readArgument(initialByte & 0x1f);
+    }
+
+    /// @return the argument; values above `Long.MAX_VALUE` come back negative
+    private long readArgument(int additionalInfo) {
+        if (additionalInfo < 24) {
+            return additionalInfo;
+        }
+        return switch (additionalInfo) {
+            case 24 -> readBigEndian(1);
+            case 25 -> readBigEndian(2);
+            case 26 -> readBigEndian(4);
+            case 27 -> readBigEndian(8);
+            default -> throw new IllegalArgumentException("Unexpected additional information " + additionalInfo + " at offset " + (position - 1));
+        };
+    }
+
+    private long readBigEndian(int length) {
+        require(length);
+        long value = 0;
+        for (int i = 0; i < length; i++) {
+            value = (value << 8) | (data[position++] & 0xff);
+        }
+        return value;
+    }
+
+    private int checkedLength(long length) {
+        if (length < 0 || length > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Length " + Long.toUnsignedString(length) + " at offset " + position + " is too large");
+        }
+        return (int) length;
+    }
+
+    private int readByte() {
+        require(1);
+        return data[position++] & 0xff;
+    }
+
+    private int peek() {
+        require(1);
+        return data[position] & 0xff;
+    }
+
+    private void require(int length) {
+        if (length > end - position) {
+            throw new IllegalArgumentException("Unexpected end of CBOR input at offset " + position);
+        }
+    }
+
+    private IllegalArgumentException unexpected(String expected, int majorType) {
+        return new IllegalArgumentException("Expected " + expected + " at offset " + position + ", but found major type " + majorType);
+    }
+}
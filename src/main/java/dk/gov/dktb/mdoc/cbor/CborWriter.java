@@ -0,0 +1,258 @@
+package dk.gov.dktb.mdoc.cbor;
+
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.temporal.ChronoUnit;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+/// Token-level CBOR writer, the counterpart of [CborReader].
+///
+/// Containers are written header first, and already encoded CBOR can be spliced in with
+/// [#writeRaw(byte[])], so a structure that embeds parts that were encoded earlier (or received)
+/// is written without decoding and re-encoding them:
+///
+/// ```
+/// var writer = new CborWriter();
+/// writer.writeArrayHeader(2);
+/// writer.writeText("DeviceAuthentication");
+/// writer.writeRaw(sessionTranscriptBytes);
+/// var encoded = writer.toByteArray();
+///```
+///
+/// Only definite-length items are written.
+public final class CborWriter {
+    private static final int TAG_DATE_TIME = 0;
+    private static final int TAG_FULL_DATE = 1004;
+
+    private byte[] buffer;
+    private int size;
+
+    public CborWriter() {
+        this(64);
+    }
+
+    public CborWriter(int initialCapacity) {
+        buffer = new byte[Math.max(initialCapacity, 16)];
+    }
+
+    public CborWriter writeMapHeader(int size) {
+        return writeHead(CborReader.MAJOR_TYPE_MAP, size);
+    }
+
+    public CborWriter writeArrayHeader(int size) {
+        return writeHead(CborReader.MAJOR_TYPE_ARRAY, size);
+    }
+
+    public CborWriter writeTag(long tag) {
+        return writeHead(CborReader.MAJOR_TYPE_TAG, tag);
+    }
+
+    public CborWriter writeLong(long value) {
+        return value >= 0
+                ? writeHead(CborReader.MAJOR_TYPE_UNSIGNED_INTEGER, value)
+                : writeHead(CborReader.MAJOR_TYPE_NEGATIVE_INTEGER, -1 - value);
+    }
+
+    public CborWriter writeBoolean(boolean value) {
+        return writeByte(value ? 0xf5 : 0xf4);
+    }
+
+    public CborWriter writeNull() {
+        return writeByte(0xf6);
+    }
+
+    public CborWriter writeDouble(double value) {
+        ensureCapacity(9);
+        buffer[size++] = (byte) 0xfb;
+        var bits = Double.doubleToLongBits(value);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (bits >>> shift);
+        }
+        return this;
+    }
+
+    public CborWriter writeText(String value) {
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeHead(CborReader.MAJOR_TYPE_TEXT_STRING, bytes.length);
+        return writeRaw(bytes);
+    }
+
+    public CborWriter writeBytes(byte[] value) {
+        writeByteStringHeader(value.length);
+        return writeRaw(value);
+    }
+
+    public CborWriter writeBytes(ByteSlice value) {
+        writeByteStringHeader(value.length());
+        return writeRaw(value);
+    }
+
+    /// Writes a value of one of the types [CborReader#readValue()] returns, as an mdoc element
+    /// value. Dates are written as mdoc defines them: a [LocalDate] as `full-date`
+    /// (`#6.1004(tstr)`) and an [Instant] as `tdate` (`#6.0(tstr)`) in whole seconds. A
+    /// [BigInteger] is written as a CBOR integer, so it must lie in `[-2^64, 2^64)` like the ones
+    /// `readValue()` returns.
+    ///
+    /// @throws IllegalArgumentException for a value of any other type, or a `BigInteger` out of range
+    public CborWriter writeValue(Object value) {
+        switch (value) {
+            case null -> writeNull();
+            case String text -> writeText(text);
+            case Boolean bool -> writeBoolean(bool);
+            case Integer number -> writeLong(number);
+            case Long number -> writeLong(number);
+            case Short number -> writeLong(number);
+            case Byte number -> writeLong(number);
+            case BigInteger number -> writeInteger(number);
+            case Double number -> writeDouble(number);
+            case Float number -> writeDouble(number);
+            case byte[] bytes -> writeBytes(bytes);
+            case ByteSlice bytes -> writeBytes(bytes);
+            case LocalDate date -> writeTag(TAG_FULL_DATE).writeText(date.toString());
+            case Instant instant -> writeTag(TAG_DATE_TIME).writeText(instant.truncatedTo(ChronoUnit.SECONDS).toString());
+            case List<?> list -> {
+                writeArrayHeader(list.size());
+                list.forEach(this::writeValue);
+            }
+            case Map<?, ?> map -> {
+                writeMapHeader(map.size());
+                map.forEach((key, entry) -> writeValue(key).writeValue(entry));
+            }
+            default -> throw new IllegalArgumentException("Cannot encode a " + value.getClass().getName() + " as CBOR");
+        }
+        return this;
+    }
+
+    private void writeInteger(BigInteger value) {
+        var negative = value.signum() < 0;
+        // A negative integer n is encoded as -1 - n
+        var argument = negative ? value.not() : value;
+        if (argument.bitLength() > 64) {
+            throw new IllegalArgumentException("Integer " + value + " does not fit in a CBOR integer");
+        }
+        writeHead(negative ? CborReader.MAJOR_TYPE_NEGATIVE_INTEGER : CborReader.MAJOR_TYPE_UNSIGNED_INTEGER, argument.longValue());
+    }
+
+    /// Writes the header of a byte string whose content the caller writes next.
+    public CborWriter writeByteStringHeader(long length) {
+        return writeHead(CborReader.MAJOR_TYPE_BYTE_STRING, length);
+    }
+
+    /// Writes already encoded CBOR (or the content of a string) as is.
+    public CborWriter writeRaw(byte[] encoded) {
+        return writeRaw(encoded, 0, encoded.length);
+    }
+
+    public CborWriter writeRaw(ByteSlice encoded) {
+        return writeRaw(encoded.array(), encoded.offset(), encoded.length());
+    }
+
+    public CborWriter writeRaw(byte[] encoded, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(encoded, offset, buffer, size, length);
+        size += length;
+        return this;
+    }
+
+    /// Writes the bytes written so far to `sink` and empties this writer, so it can be used as a
+    /// scratch buffer for the heads and keys between larger pieces written to the sink directly.
+    public CborWriter flushTo(ByteSink sink) {
+        sink.write(buffer, 0, size);
+        size = 0;
+        return this;
+    }
+
+    /// Empties this writer, so its buffer is reused for the next item.
+    public CborWriter reset() {
+        size = 0;
+        return this;
+    }
+
+    /// @return the number of bytes written so far
+    public int size() {
+        return size;
+    }
+
+    public byte[] toByteArray() {
+        return Arrays.copyOf(buffer, size);
+    }
+
+    /// @return a view of the bytes written so far; it is not affected by later writes, unless
+    /// the writer is flushed in between
+    public ByteSlice toByteSlice() {
+        return new ByteSlice(buffer, 0, size);
+    }
+
+    /// @param argument the length, value or tag, unsigned
+    /// @return the number of bytes of the head of an item with the given argument
+    public static int headLength(long argument) {
+        if (Long.compareUnsigned(argument, 24) < 0) {
+            return 1;
+        } else if (Long.compareUnsigned(argument, 0xff) <= 0) {
+            return 2;
+        } else if (Long.compareUnsigned(argument, 0xffff) <= 0) {
+            return 3;
+        } else if (Long.compareUnsigned(argument, 0xffffffffL) <= 0) {
+            return 5;
+        }
+        return 9;
+    }
+
+    /// @return the head of an item of the given major type and argument (length, value or tag)
+    public static byte[] head(int majorType, long argument) {
+        var length = headLength(argument);
+        var head = new byte[length];
+        var type = majorType << 5;
+        head[0] = (byte) (type | switch (length) {
+            case 1 -> (int) argument;
+            case 2 -> 24;
+            case 3 -> 25;
+            case 5 -> 26;
+            default -> 27;
+        });
+        for (int i = length - 1; i > 0; i--) {
+            head[i] = (byte) argument;
+            argument >>>= 8;
+        }
+        return head;
+    }
+
+    private CborWriter writeHead(int majorType, long argument) {
+        var length = headLength(argument);
+        ensureCapacity(length);
+        var type = majorType << 5;
+        if (length == 1) {
+            buffer[size++] = (byte) (type | argument);
+            return this;
+        }
+        buffer[size++] = (byte) (type | switch (length) {
+            case 2 -> 24;
+            case 3 -> 25;
+            case 5 -> 26;
+            default -> 27;
+        });
+        for (int shift = 8 * (length - 2); shift >= 0; shift -= 8) {
+            buffer[size++] = (byte) (argument >>> shift);
+        }
+        return this;
+    }
+
+    private CborWriter writeByte(int value) {
+        ensureCapacity(1);
+        buffer[size++] = (byte) value;
+        return this;
+    }
+
+    private void ensureCapacity(int additional) {
+        if (size + additional > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package dk.gov.dktb.mdoc.cose;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/// The COSE signature algorithms (RFC 9053) an mdoc may be signed with, with the JCA algorithm
+/// verifying the raw `r || s` signature format COSE uses for ECDSA.
+@Getter
+@RequiredArgsConstructor
+public enum CoseAlgorithm {
+    ES256(-7, "SHA256withECDSAinP1363Format"),
+    ES384(-35, "SHA384withECDSAinP1363Format"),
+    ES512(-36, "SHA512withECDSAinP1363Format");
+
+    private final int value;
+    private final String jcaName;
+
+    /// @param alg value of the COSE `alg` header parameter
+    /// @throws SecurityException if the algorithm is not supported
+    public static CoseAlgorithm from(Object alg) {
+        var algorithm = find(alg);
+        if (algorithm == null) {
+            throw new SecurityException("Unsupported COSE algorithm: " + alg);
+        }
+        return algorithm;
+    }
+
+    /// @return the algorithm, or null if it is not supported
+    public static CoseAlgorithm find(Object alg) {
+        if (alg instanceof Number number) {
+            for (var algorithm : values()) {
+                if (algorithm.value == number.intValue()) {
+                    return algorithm;
+                }
+            }
+        }
+        return null;
+    }
+}
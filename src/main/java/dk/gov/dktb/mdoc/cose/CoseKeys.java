@@ -0,0 +1,136 @@
+package dk.gov.dktb.mdoc.cose;
+
+import com.authlete.cbor.CBORByteArray;
+import com.authlete.cbor.CBORInteger;
+import com.authlete.cbor.CBORPair;
+import com.authlete.cose.COSEEC2Key;
+import com.authlete.cose.COSEKey;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import lombok.SneakyThrows;
+
+import java.math.BigInteger;
+import java.security.AlgorithmParameters;
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECFieldFp;
+import java.security.spec.ECGenParameterSpec;
+import java.security.spec.ECParameterSpec;
+import java.security.spec.ECPoint;
+import java.security.spec.ECPublicKeySpec;
+import java.security.spec.EllipticCurve;
+import java.security.spec.InvalidKeySpecException;
+import java.util.List;
+import java.util.Map;
+
+/// Converts between COSE keys and JCA public keys.
+///
+/// `COSEEC2Key.createPublicKey()` looks up the curve parameters and a `KeyFactory` on every call.
+/// Here the parameters of the supported curves are resolved once, and each thread keeps its own
+/// `KeyFactory`.
+public final class CoseKeys {
+    private static final int KTY = 1;
+    private static final int KTY_EC2 = 2;
+    private static final int CRV = -1;
+    private static final int X = -2;
+    private static final int Y = -3;
+    private static final int CRV_P256 = 1;
+    private static final int CRV_P384 = 2;
+    private static final int CRV_P521 = 3;
+
+    private static final Map<Integer, ECParameterSpec> CURVES = Map.of(
+            CRV_P256, curve("secp256r1"),
+            CRV_P384, curve("secp384r1"),
+            CRV_P521, curve("secp521r1"));
+
+    private static final ThreadLocal<KeyFactory> EC_KEY_FACTORY = ThreadLocal.withInitial(CoseKeys::ecKeyFactory);
+
+    private CoseKeys() {
+    }
+
+    /// @throws SecurityException if the key type or curve is not supported, or the key is not a
+    /// point on its curve
+    public static PublicKey toPublicKey(COSEKey key) {
+        if (!(key instanceof COSEEC2Key ec2Key)) {
+            throw new SecurityException("Unsupported COSE key type: " + (key == null ? null : key.getKty()));
+        }
+        var params = ec2Key.getCrv() instanceof Number crv ? CURVES.get(crv.intValue()) : null;
+        if (params == null) {
+            throw new SecurityException("Unsupported COSE curve: " + ec2Key.getCrv());
+        }
+        if (ec2Key.getX() == null || ec2Key.getY() == null) {
+            throw new SecurityException("COSE key has no " + (ec2Key.getX() == null ? "x" : "y") + " coordinate");
+        }
+        var point = new ECPoint(new BigInteger(1, ec2Key.getX()), new BigInteger(1, ec2Key.getY()));
+        // The SunEC KeyFactory accepts points that are not on the curve
+        if (!isOnCurve(point, params.getCurve())) {
+            throw new SecurityException("COSE key is not a point on curve " + ec2Key.getCrv());
+        }
+        try {
+            return EC_KEY_FACTORY.get().generatePublic(new ECPublicKeySpec(point, params));
+        } catch (InvalidKeySpecException e) {
+            throw new SecurityException("Invalid COSE key: " + e.getMessage(), e);
+        }
+    }
+
+    /// @throws SecurityException if the key is not an EC key on a supported curve
+    public static COSEEC2Key toCoseKey(PublicKey key) {
+        if (!(key instanceof ECPublicKey ecKey)) {
+            throw new SecurityException("Unsupported key type: " + (key == null ? null : key.getAlgorithm()));
+        }
+        var curve = ecKey.getParams().getCurve();
+        for (var entry : CURVES.entrySet()) {
+            if (entry.getValue().getCurve().equals(curve)) {
+                var length = (curve.getField().getFieldSize() + 7) / 8;
+                return new COSEEC2Key(List.of(
+                        new CBORPair(new CBORInteger(KTY), new CBORInteger(KTY_EC2)),
+                        new CBORPair(new CBORInteger(CRV), new CBORInteger(entry.getKey())),
+                        new CBORPair(new CBORInteger(X), new CBORByteArray(unsigned(ecKey.getW().getAffineX(), length))),
+                        new CBORPair(new CBORInteger(Y), new CBORByteArray(unsigned(ecKey.getW().getAffineY(), length)))));
+            }
+        }
+        throw new SecurityException("Unsupported EC curve: " + curve);
+    }
+
+    /// Writes `{1: 2, -1: crv, -2: x, -3: y}`, the COSE_Key of an EC2 public key.
+    public static void write(COSEEC2Key key, CborWriter out) {
+        out.writeMapHeader(4)
+                .writeLong(KTY).writeLong(KTY_EC2)
+                .writeLong(CRV).writeLong(((Number) key.getCrv()).longValue())
+                .writeLong(X).writeBytes(key.getX())
+                .writeLong(Y).writeBytes(key.getY());
+    }
+
+    /// @return whether `y^2 = x^3 + ax + b` holds modulo the field prime, with both coordinates in the field
+    private static boolean isOnCurve(ECPoint point, EllipticCurve curve) {
+        var p = ((ECFieldFp) curve.getField()).getP();
+        var x = point.getAffineX();
+        var y = point.getAffineY();
+        if (x.compareTo(p) >= 0 || y.compareTo(p) >= 0) {
+            return false;
+        }
+        var right = x.multiply(x).add(curve.getA()).multiply(x).add(curve.getB()).mod(p);
+        return y.multiply(y).mod(p).equals(right);
+    }
+
+    /// @return `value` big-endian in exactly `length` bytes, as COSE requires for EC2 coordinates
+    private static byte[] unsigned(BigInteger value, int length) {
+        var bytes = value.toByteArray();
+        var result = new byte[length];
+        var copied = Math.min(bytes.length, length);
+        System.arraycopy(bytes, bytes.length - copied, result, length - copied, copied);
+        return result;
+    }
+
+    @SneakyThrows
+    private static ECParameterSpec curve(String name) {
+        var parameters = AlgorithmParameters.getInstance("EC");
+        parameters.init(new ECGenParameterSpec(name));
+        return parameters.getParameterSpec(ECParameterSpec.class);
+    }
+
+    @SneakyThrows
+    private static KeyFactory ecKeyFactory() {
+        return KeyFactory.getInstance("EC");
+    }
+}
@@ -0,0 +1,64 @@
+package dk.gov.dktb.mdoc.cose;
+
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+/// Signs and writes COSE_Sign1 structures, untagged as mdoc embeds them:
+///
+/// ```
+/// COSE_Sign1 = [protected : bstr, unprotected : header_map, payload : bstr / nil, signature : bstr]
+///```
+///
+/// The protected header holds only `alg`; the unprotected header holds the x5chain of the
+/// [CoseSigner], if it has one.
+public final class CoseSign1Writer {
+    private static final int HEADER_ALG = 1;
+    private static final int HEADER_X5CHAIN = 33;
+
+    private CoseSign1Writer() {
+    }
+
+    /// Writes a COSE_Sign1 carrying `payload`, as issuerAuth does.
+    public static void write(CoseSigner signer, ByteSlice payload, CborWriter out) {
+        var protectedHeader = protectedHeader(signer.getAlgorithm());
+        var signature = signer.sign(SigStructure.of(protectedHeader, DetachedPayload.of(payload)));
+        writeHeaders(signer, protectedHeader, out);
+        out.writeBytes(payload);
+        out.writeBytes(signature);
+    }
+
+    /// Writes a COSE_Sign1 with a nil payload, as deviceSignature does; the verifier rebuilds the
+    /// payload (DeviceAuthenticationBytes) itself.
+    public static void writeDetached(CoseSigner signer, DetachedPayload payload, CborWriter out) {
+        var protectedHeader = protectedHeader(signer.getAlgorithm());
+        var signature = signer.sign(SigStructure.of(protectedHeader, payload));
+        writeHeaders(signer, protectedHeader, out);
+        out.writeNull();
+        out.writeBytes(signature);
+    }
+
+    private static void writeHeaders(CoseSigner signer, ByteSlice protectedHeader, CborWriter out) {
+        out.writeArrayHeader(4);
+        out.writeBytes(protectedHeader);
+        var chain = signer.getCertificateChain();
+        if (chain.isEmpty()) {
+            out.writeMapHeader(0);
+            return;
+        }
+        out.writeMapHeader(1).writeLong(HEADER_X5CHAIN);
+        if (chain.size() == 1) {
+            out.writeBytes(chain.getFirst());
+            return;
+        }
+        out.writeArrayHeader(chain.size());
+        chain.forEach(out::writeBytes);
+    }
+
+    private static ByteSlice protectedHeader(CoseAlgorithm algorithm) {
+        return new CborWriter(16)
+                .writeMapHeader(1)
+                .writeLong(HEADER_ALG)
+                .writeLong(algorithm.getValue())
+                .toByteSlice();
+    }
+}
@@ -0,0 +1,22 @@
+package dk.gov.dktb.mdoc.cose;
+
+import java.util.List;
+
+/// Creates the signature of a COSE_Sign1 written by [CoseSign1Writer]: with a local key
+/// ([JcaCoseSigner]), or by calling out to an HSM or a signing service.
+///
+/// A signer used for batch issuance is called from several threads at once.
+public interface CoseSigner {
+    CoseAlgorithm getAlgorithm();
+
+    /// @return the DER encoded certificates sent as x5chain, signing certificate first, or an
+    /// empty list to send none
+    default List<byte[]> getCertificateChain() {
+        return List.of();
+    }
+
+    /// @param toBeSigned the encoded Sig_structure, see [SigStructure]. A signer that needs it in
+    /// one piece can write it to a buffer of [DetachedPayload#length()] bytes.
+    /// @return the signature in COSE format, i.e. `r || s` for ECDSA
+    byte[] sign(DetachedPayload toBeSigned);
+}
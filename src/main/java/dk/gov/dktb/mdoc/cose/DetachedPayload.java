@@ -0,0 +1,27 @@
+package dk.gov.dktb.mdoc.cose;
+
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+/// A COSE payload that knows its length up front and writes itself on demand, so it can be fed
+/// into a [SigStructure] without being encoded into an array first.
+public interface DetachedPayload {
+    /// @return the number of bytes [#writeTo(ByteSink)] writes
+    int length();
+
+    void writeTo(ByteSink sink);
+
+    static DetachedPayload of(ByteSlice payload) {
+        return new DetachedPayload() {
+            @Override
+            public int length() {
+                return payload.length();
+            }
+
+            @Override
+            public void writeTo(ByteSink sink) {
+                sink.write(payload);
+            }
+        };
+    }
+}
@@ -0,0 +1,52 @@
+package dk.gov.dktb.mdoc.cose;
+
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.security.PrivateKey;
+import java.security.Signature;
+import java.security.cert.X509Certificate;
+import java.util.List;
+
+/// [CoseSigner] with a JCA private key. The Sig_structure is streamed into the [Signature], and
+/// each thread keeps its own `Signature` instance.
+public class JcaCoseSigner implements CoseSigner {
+    private final PrivateKey key;
+    @Getter
+    private final CoseAlgorithm algorithm;
+    @Getter
+    private final List<byte[]> certificateChain;
+    private final ThreadLocal<Signature> signature;
+
+    public JcaCoseSigner(PrivateKey key, CoseAlgorithm algorithm) {
+        this(key, algorithm, List.of());
+    }
+
+    /// @param certificateChain sent as x5chain, signing certificate first
+    public JcaCoseSigner(PrivateKey key, CoseAlgorithm algorithm, List<X509Certificate> certificateChain) {
+        this.key = key;
+        this.algorithm = algorithm;
+        this.certificateChain = certificateChain.stream().map(JcaCoseSigner::encoded).toList();
+        this.signature = ThreadLocal.withInitial(() -> newSignature(algorithm));
+    }
+
+    @Override
+    @SneakyThrows
+    public byte[] sign(DetachedPayload toBeSigned) {
+        var signer = signature.get();
+        signer.initSign(key);
+        toBeSigned.writeTo(ByteSink.of(signer));
+        return signer.sign();
+    }
+
+    @SneakyThrows
+    private static Signature newSignature(CoseAlgorithm algorithm) {
+        return Signature.getInstance(algorithm.getJcaName());
+    }
+
+    @SneakyThrows
+    private static byte[] encoded(X509Certificate certificate) {
+        return certificate.getEncoded();
+    }
+}
@@ -0,0 +1,75 @@
+package dk.gov.dktb.mdoc.cose;
+
+import dk.gov.dktb.mdoc.cbor.CborReader;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+import java.security.Signature;
+
+/// Feeds the COSE_Sign1 signature input to a [Signature] without building it in memory:
+///
+/// ```
+/// Sig_structure = [
+///   context : "Signature1",
+///   body_protected : empty_or_serialized_map,
+///   external_aad : bstr,
+///   payload : bstr
+/// ]
+///```
+///
+/// mdoc signatures never use external AAD, so it is always the empty byte string. The payload
+/// can be a [DetachedPayload] that is written straight into the signature, such as
+/// DeviceAuthenticationBytes.
+public final class SigStructure {
+    private static final byte[] PREFIX = prefix();
+    private static final byte[] EMPTY_EXTERNAL_AAD = {0x40};
+
+    private SigStructure() {
+    }
+
+    /// @param protectedHeader the serialized protected header, the content of the byte string
+    /// @param payload the payload, attached or detached
+    public static void update(Signature signature, ByteSlice protectedHeader, ByteSlice payload) {
+        write(ByteSink.of(signature), protectedHeader, DetachedPayload.of(payload));
+    }
+
+    public static void update(Signature signature, ByteSlice protectedHeader, DetachedPayload payload) {
+        write(ByteSink.of(signature), protectedHeader, payload);
+    }
+
+    public static void write(ByteSink sink, ByteSlice protectedHeader, DetachedPayload payload) {
+        sink.write(PREFIX);
+        sink.write(CborWriter.head(CborReader.MAJOR_TYPE_BYTE_STRING, protectedHeader.length()));
+        sink.write(protectedHeader);
+        sink.write(EMPTY_EXTERNAL_AAD);
+        sink.write(CborWriter.head(CborReader.MAJOR_TYPE_BYTE_STRING, payload.length()));
+        payload.writeTo(sink);
+    }
+
+    /// @return the encoded Sig_structure, written on demand, e.g. for a [CoseSigner]
+    public static DetachedPayload of(ByteSlice protectedHeader, DetachedPayload payload) {
+        var length = PREFIX.length
+                + CborWriter.headLength(protectedHeader.length()) + protectedHeader.length()
+                + EMPTY_EXTERNAL_AAD.length
+                + CborWriter.headLength(payload.length()) + payload.length();
+        return new DetachedPayload() {
+            @Override
+            public int length() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(ByteSink sink) {
+                write(sink, protectedHeader, payload);
+            }
+        };
+    }
+
+    private static byte[] prefix() {
+        return new CborWriter(16)
+                .writeArrayHeader(4)
+                .writeText("Signature1")
+                .toByteArray();
+    }
+}
@@ -0,0 +1,44 @@
+package dk.gov.dktb.mdoc.issuance;
+
+import dk.gov.dktb.mdoc.model.IssuerSignedItemExt;
+import dk.gov.dktb.mdoc.model.ValueDigestsExt;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.utilities.DigestAlgorithm;
+import lombok.Getter;
+
+import java.util.List;
+import java.util.Map;
+
+/// The IssuerNameSpaces of an mdoc, encoded once together with the ValueDigests over its items,
+/// so any number of MSOs can be signed over them without encoding or hashing the items again.
+/// Created by [MdocIssuer#encode(Map)].
+@Getter
+public final class EncodedNameSpaces {
+    private final DigestAlgorithm digestAlgorithm;
+
+    /**
+     * The items by namespace, in the order they are encoded
+     */
+    private final Map<String, List<IssuerSignedItemExt>> items;
+
+    private final ValueDigestsExt valueDigests;
+
+    /**
+     * {@code IssuerNameSpaces = { + NameSpace => [ + IssuerSignedItemBytes ] }}
+     */
+    private final ByteSlice encoded;
+
+    /**
+     * {@code ValueDigests = { + NameSpace => DigestIDs }}, as embedded in the MSO
+     */
+    private final ByteSlice encodedValueDigests;
+
+    EncodedNameSpaces(DigestAlgorithm digestAlgorithm, Map<String, List<IssuerSignedItemExt>> items, ValueDigestsExt valueDigests,
+                      ByteSlice encoded, ByteSlice encodedValueDigests) {
+        this.digestAlgorithm = digestAlgorithm;
+        this.items = items;
+        this.valueDigests = valueDigests;
+        this.encoded = encoded;
+        this.encodedValueDigests = encodedValueDigests;
+    }
+}
@@ -0,0 +1,19 @@
+package dk.gov.dktb.mdoc.issuance;
+
+import dk.gov.dktb.mdoc.model.DeviceResponseDecoder;
+import dk.gov.dktb.mdoc.model.IssuerSignedExt;
+import dk.gov.dktb.mdoc.model.MobileSecurityObjectExt;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+/// An mdoc as issued by [MdocIssuer]: what a wallet stores and presents as the issuerSigned part
+/// of a Document.
+///
+/// @param mobileSecurityObject the MSO that was signed; `encode()` writes it as signed
+/// @param issuerSigned the encoded IssuerSigned, `{"nameSpaces": ..., "issuerAuth": ...}`
+/// @param issuerAuth the encoded COSE_Sign1 over the MSO, a view of `issuerSigned`
+public record IssuedDocument(String docType, MobileSecurityObjectExt mobileSecurityObject, ByteSlice issuerSigned, ByteSlice issuerAuth) {
+    /// Decodes [#issuerSigned()], e.g. to verify it or to read the items back as a verifier would.
+    public IssuerSignedExt decode(DeviceResponseDecoder decoder) {
+        return decoder.decodeIssuerSigned(issuerSigned);
+    }
+}
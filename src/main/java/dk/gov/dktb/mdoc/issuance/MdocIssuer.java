@@ -0,0 +1,235 @@
+package dk.gov.dktb.mdoc.issuance;
+
+import com.authlete.mdoc.DigestIDs;
+import com.authlete.mdoc.DigestIDsEntry;
+import com.authlete.mdoc.ValueDigestsEntry;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.cose.CoseKeys;
+import dk.gov.dktb.mdoc.cose.CoseSign1Writer;
+import dk.gov.dktb.mdoc.cose.CoseSigner;
+import dk.gov.dktb.mdoc.model.DeviceKeyInfoExt;
+import dk.gov.dktb.mdoc.model.IssuerSignedItemExt;
+import dk.gov.dktb.mdoc.model.MobileSecurityObjectExt;
+import dk.gov.dktb.mdoc.model.ValidityInfoExt;
+import dk.gov.dktb.mdoc.model.ValueDigestsExt;
+import dk.gov.dktb.mdoc.utilities.BoundedParallel;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.utilities.DigestAlgorithm;
+import lombok.Setter;
+
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/// Issues mdocs: encodes the data elements as IssuerSignedItems with random salts, signs an MSO
+/// over their digests and the holder's device key with a [CoseSigner], and returns the encoded
+/// IssuerSigned.
+///
+/// ```
+/// var issuer = new MdocIssuer(new JcaCoseSigner(issuerKey, CoseAlgorithm.ES256, List.of(issuerCertificate)));
+/// var document = issuer.issue("eu.europa.ec.eudi.pid.1", Map.of("eu.europa.ec.eudi.pid.1", elements), deviceKey);
+///```
+///
+/// A batch ([#issueBatch(String, Map, List)]) encodes and hashes the namespaces once and signs an
+/// MSO per device key on [#executor], the common [java.util.concurrent.ForkJoinPool] by default,
+/// whose threads keep their [CoseSigner] state between batches. All mdocs of a batch then carry
+/// the same salts and digests, so verifiers that compare notes can link them; issue them one by
+/// one where that matters.
+///
+/// The output decodes with [dk.gov.dktb.mdoc.model.DeviceResponseDecoder#decodeIssuerSigned] and
+/// verifies with [dk.gov.dktb.mdoc.verification.MdocVerifier], which also makes the issuer a
+/// source of realistic fixtures for load tests.
+@Setter
+public class MdocIssuer {
+    private static final String MSO_VERSION = "1.0";
+    private static final int TAG_ENCODED_CBOR = 24;
+    private static final int TAG_DATE_TIME = 0;
+    private static final int SALT_LENGTH = 32;
+
+    private CoseSigner signer;
+
+    private DigestAlgorithm digestAlgorithm = DigestAlgorithm.SHA_256;
+
+    private SecureRandom random = new SecureRandom();
+
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * How long an mdoc is valid from when it is signed
+     */
+    private Duration validity = Duration.ofDays(30);
+
+    /**
+     * When set, the MSO tells the holder to expect an update this long after signing
+     */
+    private Duration expectedUpdate;
+
+    /**
+     * Executor signing the MSOs of a batch, see {@link BoundedParallel#map}
+     */
+    private Executor executor;
+
+    /**
+     * Upper bound on the number of MSOs signed at the same time
+     */
+    private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+
+    public MdocIssuer(CoseSigner signer) {
+        this.signer = signer;
+    }
+
+    /// Encodes data elements as IssuerSignedItems, each with a fresh salt and a digestID that
+    /// does not reveal its position, and computes their value digests.
+    ///
+    /// @param elements the element values by element identifier, by namespace; see
+    /// [CborWriter#writeValue(Object)] for the supported value types
+    public EncodedNameSpaces encode(Map<String, ? extends Map<String, ?>> elements) {
+        var items = new LinkedHashMap<String, List<IssuerSignedItemExt>>();
+        var digestEntries = new ArrayList<ValueDigestsEntry>(elements.size());
+        var digests = new CborWriter().writeMapHeader(elements.size());
+        var nameSpaces = new CborWriter(1024).writeMapHeader(elements.size());
+        var item = new CborWriter(256);
+
+        for (var nameSpace : elements.entrySet()) {
+            var digestIds = shuffledDigestIds(nameSpace.getValue().size());
+            var nameSpaceItems = new ArrayList<IssuerSignedItemExt>(digestIds.size());
+            var nameSpaceDigests = new ArrayList<DigestIDsEntry>(digestIds.size());
+            nameSpaces.writeText(nameSpace.getKey()).writeArrayHeader(digestIds.size());
+            digests.writeText(nameSpace.getKey()).writeMapHeader(digestIds.size());
+
+            var index = 0;
+            for (var element : nameSpace.getValue().entrySet()) {
+                var digestId = digestIds.get(index++);
+                var salt = new byte[SALT_LENGTH];
+                random.nextBytes(salt);
+                var encodedItem = item.writeMapHeader(4)
+                        .writeText("digestID").writeLong(digestId)
+                        .writeText("random").writeBytes(salt)
+                        .writeText("elementIdentifier").writeText(element.getKey())
+                        .writeText("elementValue").writeValue(element.getValue())
+                        .toByteSlice();
+
+                var start = nameSpaces.size();
+                nameSpaces.writeTag(TAG_ENCODED_CBOR).writeBytes(encodedItem);
+                var digest = digestAlgorithm.digest(nameSpaces.toByteSlice().slice(start, nameSpaces.size() - start));
+                item.reset();
+
+                digests.writeLong(digestId).writeBytes(digest);
+                nameSpaceDigests.add(new DigestIDsEntry(digestId, digest));
+                nameSpaceItems.add(new IssuerSignedItemExt(digestId, salt, element.getKey(), element.getValue()));
+            }
+            items.put(nameSpace.getKey(), Collections.unmodifiableList(nameSpaceItems));
+            digestEntries.add(new ValueDigestsEntry(nameSpace.getKey(), new DigestIDs(nameSpaceDigests)));
+        }
+        return new EncodedNameSpaces(digestAlgorithm, Collections.unmodifiableMap(items), new ValueDigestsExt(digestEntries),
+                ByteSlice.of(nameSpaces.toByteArray()), ByteSlice.of(digests.toByteArray()));
+    }
+
+    public IssuedDocument issue(String docType, Map<String, ? extends Map<String, ?>> elements, PublicKey deviceKey) {
+        return issue(docType, encode(elements), deviceKey);
+    }
+
+    public IssuedDocument issue(String docType, EncodedNameSpaces nameSpaces, PublicKey deviceKey) {
+        return sign(docType, nameSpaces, validity(clock.instant()), deviceKey);
+    }
+
+    /// Issues one mdoc per device key, all with the same elements, salts and validity.
+    ///
+    /// @return the mdocs in the order of `deviceKeys`
+    public List<IssuedDocument> issueBatch(String docType, Map<String, ? extends Map<String, ?>> elements, List<? extends PublicKey> deviceKeys) {
+        return issueBatch(docType, encode(elements), deviceKeys);
+    }
+
+    /// @see #issueBatch(String, Map, List)
+    public List<IssuedDocument> issueBatch(String docType, EncodedNameSpaces nameSpaces, List<? extends PublicKey> deviceKeys) {
+        var validityInfo = validity(clock.instant());
+        return BoundedParallel.map(deviceKeys, deviceKey -> sign(docType, nameSpaces, validityInfo, deviceKey),
+                executor, maxConcurrency);
+    }
+
+    /// ```
+    /// MobileSecurityObject = {
+    ///   "version" : tstr,
+    ///   "digestAlgorithm" : tstr,
+    ///   "valueDigests" : ValueDigests,
+    ///   "deviceKeyInfo" : DeviceKeyInfo,
+    ///   "docType" : tstr,
+    ///   "validityInfo" : ValidityInfo
+    /// }
+    ///```
+    private IssuedDocument sign(String docType, EncodedNameSpaces nameSpaces, Validity validityInfo, PublicKey deviceKey) {
+        var coseKey = CoseKeys.toCoseKey(deviceKey);
+        var mso = new CborWriter(nameSpaces.getEncodedValueDigests().length() + validityInfo.encoded().length() + 256)
+                .writeMapHeader(6)
+                .writeText("version").writeText(MSO_VERSION)
+                .writeText("digestAlgorithm").writeText(nameSpaces.getDigestAlgorithm().getJcaName())
+                .writeText("valueDigests").writeRaw(nameSpaces.getEncodedValueDigests())
+                .writeText("deviceKeyInfo").writeMapHeader(1).writeText("deviceKey");
+        CoseKeys.write(coseKey, mso);
+        mso.writeText("docType").writeText(docType)
+                .writeText("validityInfo").writeRaw(validityInfo.encoded());
+
+        // MobileSecurityObjectBytes = #6.24(bstr .cbor MobileSecurityObject)
+        var payload = new CborWriter(mso.size() + 8).writeTag(TAG_ENCODED_CBOR).writeBytes(mso.toByteSlice()).toByteSlice();
+
+        var issuerSigned = new CborWriter(nameSpaces.getEncoded().length() + payload.length() + 1024)
+                .writeMapHeader(2)
+                .writeText("nameSpaces").writeRaw(nameSpaces.getEncoded())
+                .writeText("issuerAuth");
+        var issuerAuthStart = issuerSigned.size();
+        CoseSign1Writer.write(signer, payload, issuerSigned);
+        var encoded = ByteSlice.of(issuerSigned.toByteArray());
+
+        var mobileSecurityObject = new MobileSecurityObjectExt(MSO_VERSION, nameSpaces.getDigestAlgorithm().getJcaName(),
+                nameSpaces.getValueDigests(), new DeviceKeyInfoExt(coseKey, null, null), docType, validityInfo.info(),
+                ByteSlice.of(mso.toByteArray()));
+        return new IssuedDocument(docType, mobileSecurityObject, encoded,
+                encoded.slice(issuerAuthStart, encoded.length() - issuerAuthStart));
+    }
+
+    /// @param encoded `ValidityInfo = {"signed": tdate, "validFrom": tdate, "validUntil": tdate, ? "expectedUpdate": tdate}`
+    private record Validity(ValidityInfoExt info, ByteSlice encoded) {
+    }
+
+    private Validity validity(Instant now) {
+        var signed = now.truncatedTo(ChronoUnit.SECONDS);
+        var validUntil = signed.plus(validity);
+        var update = expectedUpdate != null ? signed.plus(expectedUpdate) : null;
+
+        var encoded = new CborWriter().writeMapHeader(update != null ? 4 : 3);
+        writeDateTime(encoded.writeText("signed"), signed);
+        writeDateTime(encoded.writeText("validFrom"), signed);
+        writeDateTime(encoded.writeText("validUntil"), validUntil);
+        if (update != null) {
+            writeDateTime(encoded.writeText("expectedUpdate"), update);
+        }
+        var info = new ValidityInfoExt(signed.atZone(ZoneOffset.UTC), signed.atZone(ZoneOffset.UTC), validUntil.atZone(ZoneOffset.UTC),
+                update != null ? update.atZone(ZoneOffset.UTC) : null);
+        return new Validity(info, encoded.toByteSlice());
+    }
+
+    private static void writeDateTime(CborWriter writer, Instant instant) {
+        // tdate = #6.0(tstr), without fractional seconds
+        writer.writeTag(TAG_DATE_TIME).writeText(instant.toString());
+    }
+
+    /// @return `0 .. count - 1` in random order, so a digestID does not tell where its item was
+    private List<Integer> shuffledDigestIds(int count) {
+        var digestIds = new ArrayList<Integer>(count);
+        for (int i = 0; i < count; i++) {
+            digestIds.add(i);
+        }
+        Collections.shuffle(digestIds, random);
+        return digestIds;
+    }
+}
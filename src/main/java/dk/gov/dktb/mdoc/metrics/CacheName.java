@@ -0,0 +1,11 @@
+package dk.gov.dktb.mdoc.metrics;
+
+/// The caches whose hits and misses are recorded.
+public enum CacheName {
+    /// Issuer keys by signing certificate, in `MdocVerifier`.
+    ISSUER_KEY,
+    /// Validated x5chains, in `IssuerChainValidator`.
+    ISSUER_CHAIN,
+    /// Verified issuerAuths, `VerifiedIssuerCache`.
+    VERIFIED_ISSUER
+}
@@ -0,0 +1,121 @@
+package dk.gov.dktb.mdoc.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/// [MetricsRecorder] that keeps latency [Histogram]s and counters in memory, to be read by a
+/// scraper or logged:
+///
+/// ```
+/// var metrics = new InMemoryMetrics();
+/// Metrics.setRecorder(metrics);
+/// ...
+/// var p99 = metrics.getLatency(Stage.DEVICE_SIGNATURE).getValueAtPercentile(99);
+///```
+///
+/// Latencies are in nanoseconds. Counters only grow until [#reset()].
+public class InMemoryMetrics implements MetricsRecorder {
+    private final Map<Stage, Histogram> latencies = new EnumMap<>(Stage.class);
+    private final Map<CacheName, LongAdder> cacheHits = new EnumMap<>(CacheName.class);
+    private final Map<CacheName, LongAdder> cacheMisses = new EnumMap<>(CacheName.class);
+    private final Map<Rejection, LongAdder> rejections = new EnumMap<>(Rejection.class);
+    private final LongAdder bytesDecoded = new LongAdder();
+    private final LongAdder elementsDecoded = new LongAdder();
+
+    public InMemoryMetrics() {
+        // Filled once, so the maps are only read afterwards and need no synchronization
+        for (var stage : Stage.values()) {
+            latencies.put(stage, new Histogram());
+        }
+        for (var cache : CacheName.values()) {
+            cacheHits.put(cache, new LongAdder());
+            cacheMisses.put(cache, new LongAdder());
+        }
+        for (var reason : Rejection.values()) {
+            rejections.put(reason, new LongAdder());
+        }
+    }
+
+    @Override
+    public void recordLatency(Stage stage, long nanos) {
+        latencies.get(stage).record(nanos);
+    }
+
+    @Override
+    public void recordBytesDecoded(int bytes) {
+        bytesDecoded.add(bytes);
+    }
+
+    @Override
+    public void recordElementsDecoded(int count) {
+        elementsDecoded.add(count);
+    }
+
+    @Override
+    public void recordCacheLookup(CacheName cache, boolean hit) {
+        (hit ? cacheHits : cacheMisses).get(cache).increment();
+    }
+
+    @Override
+    public void recordRejection(Rejection reason) {
+        rejections.get(reason).increment();
+    }
+
+    public Histogram getLatency(Stage stage) {
+        return latencies.get(stage);
+    }
+
+    public long getBytesDecoded() {
+        return bytesDecoded.sum();
+    }
+
+    public long getElementsDecoded() {
+        return elementsDecoded.sum();
+    }
+
+    public long getCacheHits(CacheName cache) {
+        return cacheHits.get(cache).sum();
+    }
+
+    public long getCacheMisses(CacheName cache) {
+        return cacheMisses.get(cache).sum();
+    }
+
+    public long getRejections(Rejection reason) {
+        return rejections.get(reason).sum();
+    }
+
+    public void reset() {
+        latencies.values().forEach(Histogram::reset);
+        cacheHits.values().forEach(LongAdder::reset);
+        cacheMisses.values().forEach(LongAdder::reset);
+        rejections.values().forEach(LongAdder::reset);
+        bytesDecoded.reset();
+        elementsDecoded.reset();
+    }
+
+    /// One line per stage, cache and rejection reason that has been recorded.
+    @Override
+    public String toString() {
+        var text = new StringBuilder();
+        latencies.forEach((stage, histogram) -> {
+            if (histogram.getCount() > 0) {
+                text.append("latency.").append(stage).append(' ').append(histogram).append('\n');
+            }
+        });
+        for (var cache : CacheName.values()) {
+            if (getCacheHits(cache) + getCacheMisses(cache) > 0) {
+                text.append("cache.").append(cache).append(" hits=").append(getCacheHits(cache))
+                        .append(" misses=").append(getCacheMisses(cache)).append('\n');
+            }
+        }
+        rejections.forEach((reason, count) -> {
+            if (count.sum() > 0) {
+                text.append("rejected.").append(reason).append(' ').append(count.sum()).append('\n');
+            }
+        });
+        text.append("decoded bytes=").append(getBytesDecoded()).append(" elements=").append(getElementsDecoded()).append('\n');
+        return text.toString();
+    }
+}
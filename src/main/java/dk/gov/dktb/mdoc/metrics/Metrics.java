@@ -0,0 +1,61 @@
+package dk.gov.dktb.mdoc.metrics;
+
+/// Where the library reports its measurements: to the [MetricsRecorder] installed here, which
+/// is [MetricsRecorder#NOOP] until one is set.
+///
+/// Instrumented code times a stage with
+///
+/// ```
+/// var start = Metrics.start();
+/// try {
+///     ...
+/// } finally {
+///     Metrics.stop(Stage.DECODE, start);
+/// }
+///```
+///
+/// With the no-op recorder that is a volatile read and a comparison; the clock is not read.
+public final class Metrics {
+    private static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private static volatile MetricsRecorder recorder = MetricsRecorder.NOOP;
+
+    private Metrics() {
+    }
+
+    /// @param recorder the recorder for all verifiers and decoders, or null to stop recording
+    public static void setRecorder(MetricsRecorder recorder) {
+        Metrics.recorder = recorder != null ? recorder : MetricsRecorder.NOOP;
+    }
+
+    public static MetricsRecorder getRecorder() {
+        return recorder;
+    }
+
+    /// @return the start time for [#stop(Stage, long)]
+    public static long start() {
+        return recorder == MetricsRecorder.NOOP ? NOT_TIMED : System.nanoTime();
+    }
+
+    public static void stop(Stage stage, long start) {
+        if (start != NOT_TIMED) {
+            recorder.recordLatency(stage, System.nanoTime() - start);
+        }
+    }
+
+    public static void bytesDecoded(int bytes) {
+        recorder.recordBytesDecoded(bytes);
+    }
+
+    public static void elementsDecoded(int count) {
+        recorder.recordElementsDecoded(count);
+    }
+
+    public static void cacheLookup(CacheName cache, boolean hit) {
+        recorder.recordCacheLookup(cache, hit);
+    }
+
+    public static void rejected(Rejection reason) {
+        recorder.recordRejection(reason);
+    }
+}
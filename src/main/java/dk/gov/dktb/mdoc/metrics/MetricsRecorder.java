@@ -0,0 +1,31 @@
+package dk.gov.dktb.mdoc.metrics;
+
+/// Receives measurements from the decoding and verification stages; install one with
+/// [Metrics#setRecorder(MetricsRecorder)] to export them to a metrics library.
+///
+/// Every method has an empty default, so an implementation overrides what it exports. The methods
+/// are called on the verifying threads, so they must be thread safe and cheap. See
+/// [InMemoryMetrics] for an implementation that keeps everything in memory.
+public interface MetricsRecorder {
+    /// Records nothing; while it is installed, stages are not even timed.
+    MetricsRecorder NOOP = new MetricsRecorder() {
+    };
+
+    /// Called when a stage completes, whether it succeeded or not.
+    default void recordLatency(Stage stage, long nanos) {
+    }
+
+    /// Called for each DeviceResponse or Document decoded, with the size of its CBOR.
+    default void recordBytesDecoded(int bytes) {
+    }
+
+    /// Called for each namespace decoded, with the number of IssuerSignedItems in it.
+    default void recordElementsDecoded(int count) {
+    }
+
+    default void recordCacheLookup(CacheName cache, boolean hit) {
+    }
+
+    default void recordRejection(Rejection reason) {
+    }
+}
@@ -0,0 +1,18 @@
+package dk.gov.dktb.mdoc.metrics;
+
+/// Why a presentation was rejected.
+public enum Rejection {
+    /// The input could not be decoded or exceeded the decoding limits.
+    MALFORMED,
+    /// The issuer certificate chain is missing, invalid or not issued by a trust anchor.
+    UNTRUSTED_ISSUER,
+    ISSUER_SIGNATURE,
+    VALUE_DIGEST,
+    DEVICE_SIGNATURE,
+    /// A Signed QR code is expired, not yet valid, or valid for longer than allowed.
+    VALIDITY,
+    /// A Signed QR code document is larger than allowed.
+    TOO_LARGE,
+    /// A Signed QR code was presented before.
+    REPLAYED
+}
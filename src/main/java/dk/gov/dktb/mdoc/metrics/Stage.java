@@ -0,0 +1,15 @@
+package dk.gov.dktb.mdoc.metrics;
+
+/// The stages of decoding and verification whose latency is recorded.
+public enum Stage {
+    /// Decoding a DeviceResponse or Document from CBOR.
+    DECODE,
+    /// Validating the issuer key and verifying the issuerAuth signature.
+    ISSUER_SIGNATURE,
+    /// Checking the disclosed items against the value digests of the MSO.
+    VALUE_DIGESTS,
+    /// Verifying the device signature over DeviceAuthentication.
+    DEVICE_SIGNATURE,
+    /// All checks of a Signed QR code, including decoding its document and its device signature.
+    SIGNED_QR
+}
@@ -2,17 +2,22 @@ package dk.gov.dktb.mdoc.model;
 
 import com.authlete.cbor.CBORByteArray;
 import com.authlete.cbor.CBORItem;
+import com.authlete.cbor.CBORItemList;
 import com.authlete.cbor.CBORPair;
 import com.authlete.cbor.CBORParser;
+import com.authlete.cbor.CBORValue;
 import com.authlete.cbor.CBORizer;
 import com.authlete.cose.COSEProtectedHeader;
 import com.authlete.cose.COSESign1;
 import com.authlete.cose.COSEUnprotectedHeader;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
 import lombok.Getter;
 import lombok.SneakyThrows;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -22,11 +27,16 @@ public class COSESign1Ext extends COSESign1 {
     private static final int UNPROTECTED_HEADER_INDEX = 1;
     private static final int PAYLOAD_INDEX = 2;
     private static final int SIGNATURE_INDEX = 3;
+    private static final int X5CHAIN_LABEL = 33;
 
-    private COSEProtectedHeader protectedHeader;
-    private COSEUnprotectedHeader unprotectedHeader;
-    private CBORItem payload;
-    private CBORByteArray signature;
+    private final COSEProtectedHeader protectedHeader;
+    private final COSEUnprotectedHeader unprotectedHeader;
+    private final CBORItem payload;
+    private final CBORByteArray signature;
+    private final ByteSlice encoded;
+    private final ByteSlice protectedHeaderBytes;
+    private final ByteSlice payloadBytes;
+    private final ByteSlice signatureBytes;
 
     /**
      * A constructor with a protected header, an unprotected header, a
@@ -39,11 +49,21 @@ public class COSESign1Ext extends COSESign1 {
      * @param signature         A signature. Must not be null.
      */
     public COSESign1Ext(COSEProtectedHeader protectedHeader, COSEUnprotectedHeader unprotectedHeader, CBORItem payload, CBORByteArray signature) {
+        this(protectedHeader, unprotectedHeader, payload, signature, null, ByteSlice.of(protectedHeader.getValue()),
+                payload instanceof CBORByteArray bytes ? ByteSlice.of(bytes.getValue()) : null, ByteSlice.of(signature.getValue()));
+    }
+
+    COSESign1Ext(COSEProtectedHeader protectedHeader, COSEUnprotectedHeader unprotectedHeader, CBORItem payload, CBORByteArray signature,
+                 ByteSlice encoded, ByteSlice protectedHeaderBytes, ByteSlice payloadBytes, ByteSlice signatureBytes) {
         super(protectedHeader, unprotectedHeader, payload, signature);
         this.protectedHeader = protectedHeader;
         this.unprotectedHeader = unprotectedHeader;
         this.payload = payload;
         this.signature = signature;
+        this.encoded = encoded;
+        this.protectedHeaderBytes = protectedHeaderBytes;
+        this.payloadBytes = payloadBytes;
+        this.signatureBytes = signatureBytes;
     }
 
     @SneakyThrows
@@ -78,7 +98,45 @@ public class COSESign1Ext extends COSESign1 {
         return unprotectedHeader.getX5Chain().getFirst();
     }
 
-    public void setPayload(byte[] payload) {
-        this.payload = new CBORByteArray(payload);
+    /// @return the DER encoding of the first x5chain certificate in the unprotected header, or
+    /// null if the header has no x5chain
+    public byte[] getSigningCertificateBytes() {
+        var chain = getCertificateChainBytes();
+        return chain.isEmpty() ? null : chain.getFirst();
+    }
+
+    /// @return the DER encodings of the x5chain certificates in the unprotected header, signing
+    /// certificate first, or an empty list if the header has no x5chain
+    public List<byte[]> getCertificateChainBytes() {
+        for (CBORPair pair : unprotectedHeader.getPairs()) {
+            if (pair.getKey() instanceof CBORValue<?> key && key.getValue() instanceof Number label && label.intValue() == X5CHAIN_LABEL) {
+                var items = pair.getValue() instanceof CBORItemList list ? list.getItems() : List.of(pair.getValue());
+                var chain = new ArrayList<byte[]>(items.size());
+                for (var item : items) {
+                    if (!(item instanceof CBORByteArray certificate)) {
+                        throw new IllegalArgumentException("x5chain must contain byte strings");
+                    }
+                    chain.add(certificate.getValue());
+                }
+                return chain;
+            }
+        }
+        return List.of();
+    }
+
+    /// Writes the COSE_Sign1 as decoded, tag included if it had one. Re-encoding would rebuild the
+    /// unprotected header from its pairs, which need not reproduce the input.
+    @Override
+    public void encode(OutputStream outputStream) throws IOException {
+        if (encoded == null) {
+            super.encode(outputStream);
+        } else {
+            encoded.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public byte[] encode() {
+        return encoded == null ? super.encode() : encoded.toByteArray();
     }
 }
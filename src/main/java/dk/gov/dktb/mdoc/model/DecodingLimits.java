@@ -0,0 +1,48 @@
+package dk.gov.dktb.mdoc.model;
+
+import lombok.With;
+
+/// Bounds on untrusted input, enforced by [DeviceResponseDecoder] and [SignedQRPayload] while
+/// decoding, so an oversized or deeply nested input is rejected after work proportional to the
+/// limit rather than to what the input claims.
+///
+/// Start from [#DEFAULT] and adjust single limits:
+///
+/// ```
+/// decoder.setLimits(DecodingLimits.DEFAULT.withMaxElementsPerNameSpace(64));
+///```
+///
+/// Exceeding a limit is reported as [IllegalArgumentException], like other malformed input.
+///
+/// @param maxInputSize the largest encoded DeviceResponse, Document or (reassembled) QR payload, in bytes
+/// @param maxDepth how deeply arrays, maps and tags may be nested in generically decoded values
+/// @param maxDocuments documents in a DeviceResponse
+/// @param maxNameSpaces namespaces in IssuerNameSpaces, DeviceNameSpaces and valueDigests
+/// @param maxElementsPerNameSpace items or digests per namespace
+/// @param maxCertificateChainLength certificates in an x5chain
+/// @param maxParts parts of a multi-part QR payload
+@With
+public record DecodingLimits(
+        int maxInputSize,
+        int maxDepth,
+        int maxDocuments,
+        int maxNameSpaces,
+        int maxElementsPerNameSpace,
+        int maxCertificateChainLength,
+        int maxParts) {
+
+    public static final DecodingLimits DEFAULT = new DecodingLimits(1 << 20, 16, 16, 32, 1024, 8, 64);
+
+    void checkInputSize(int size) {
+        if (size > maxInputSize) {
+            throw new IllegalArgumentException("Input of " + size + " bytes exceeds the limit of " + maxInputSize);
+        }
+    }
+
+    /// Checks the `index`th entry of a container, which also covers indefinite-length containers.
+    static void checkCount(int index, int limit, String what) {
+        if (index >= limit) {
+            throw new IllegalArgumentException("More than " + limit + " " + what);
+        }
+    }
+}
@@ -1,36 +1,93 @@
 package dk.gov.dktb.mdoc.model;
 
-import com.authlete.cbor.CBORByteArray;
-import com.authlete.cbor.CBORItemList;
 import com.authlete.cbor.CBORPairList;
-import com.authlete.cbor.CBORString;
-import com.authlete.cbor.CBORTaggedItem;
 import com.authlete.mdoc.Document;
-import lombok.RequiredArgsConstructor;
+import dk.gov.dktb.mdoc.cbor.CborReader;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.cose.DetachedPayload;
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
 import lombok.val;
 
 /**
  *  Implements the intermediate structure for DeviceAuthentication.
  *  This structure is not transferred, only computed.
+ *
+ *  <pre>
+ *  DeviceAuthenticationBytes = #6.24(bstr .cbor DeviceAuthentication)
+ *
+ *  DeviceAuthentication = [
+ *      "DeviceAuthentication",
+ *      SessionTranscript,
+ *      DocType,
+ *      DeviceNameSpacesBytes
+ *  ]
+ *  </pre>
+ *
+ *  The encoded session transcript ({@link SessionTranscript#encode()}) and, for decoded documents,
+ *  the DeviceNameSpacesBytes as received are spliced in as is. As a {@link DetachedPayload} the
+ *  DeviceAuthenticationBytes are written straight into a signature, without being encoded in memory.
  */
-@RequiredArgsConstructor
-public class DeviceAuthentication
+public class DeviceAuthentication implements DetachedPayload
 {
-    private final SessionTranscript sessionTranscript;
-    private final Document document;
+    private static final int TAG_ENCODED_CBOR = 24;
+    private static final int DEVICE_AUTHENTICATION_LENGTH = 4;
+    private static final byte[] TAG_HEAD = CborWriter.head(CborReader.MAJOR_TYPE_TAG, TAG_ENCODED_CBOR);
+    private static final byte[] PREFIX = new CborWriter(32)
+            .writeArrayHeader(DEVICE_AUTHENTICATION_LENGTH)
+            .writeText("DeviceAuthentication")
+            .toByteArray();
 
+    private final byte[] sessionTranscript;
+    private final byte[] docType;
+    private final ByteSlice nameSpaces;
+    private final int contentLength;
+
+    public DeviceAuthentication(SessionTranscript sessionTranscript, Document document) {
+        this(sessionTranscript.encode(), document.findByKey("docType").getValue().encode(), deviceNameSpacesBytes(document));
+    }
+
+    /// For the device side, which signs a document it is about to encode.
+    ///
+    /// @param deviceNameSpacesBytes `#6.24(bstr .cbor DeviceNameSpaces)`, as it will be sent
+    public DeviceAuthentication(SessionTranscript sessionTranscript, String docType, ByteSlice deviceNameSpacesBytes) {
+        this(sessionTranscript.encode(), new CborWriter().writeText(docType).toByteArray(), deviceNameSpacesBytes);
+    }
+
+    private DeviceAuthentication(byte[] sessionTranscript, byte[] docType, ByteSlice nameSpaces) {
+        this.sessionTranscript = sessionTranscript;
+        this.docType = docType;
+        this.nameSpaces = nameSpaces;
+        this.contentLength = PREFIX.length + sessionTranscript.length + docType.length + nameSpaces.length();
+    }
+
+    @Override
+    public int length() {
+        return TAG_HEAD.length + CborWriter.headLength(contentLength) + contentLength;
+    }
+
+    @Override
+    public void writeTo(ByteSink sink) {
+        sink.write(TAG_HEAD);
+        sink.write(CborWriter.head(CborReader.MAJOR_TYPE_BYTE_STRING, contentLength));
+        sink.write(PREFIX);
+        sink.write(sessionTranscript);
+        sink.write(docType);
+        sink.write(nameSpaces);
+    }
+
+    /// @return the DeviceAuthenticationBytes
     public byte[] encode() {
+        val writer = new CborWriter(length());
+        writeTo(writer::writeRaw);
+        return writer.toByteArray();
+    }
 
-        val docType = document.findByKey("docType").getValue();
+    private static ByteSlice deviceNameSpacesBytes(Document document) {
+        if (document instanceof DocumentExt documentExt && documentExt.getDeviceSigned() != null) {
+            return documentExt.getDeviceSigned().getNameSpacesBytes();
+        }
         val deviceSigned = (CBORPairList)document.findByKey("deviceSigned").getValue();
-        val nameSpaces = deviceSigned.findByKey("nameSpaces").getValue();
-
-        val cbor = new CBORItemList(
-                new CBORString("DeviceAuthentication"),
-                sessionTranscript.asCBOR(),
-                docType,
-                nameSpaces
-        );
-        return new CBORTaggedItem(24, new CBORByteArray(cbor.encode())).encode();
+        return ByteSlice.of(deviceSigned.findByKey("nameSpaces").getValue().encode());
     }
 }
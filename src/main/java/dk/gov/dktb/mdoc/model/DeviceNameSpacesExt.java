@@ -0,0 +1,141 @@
+package dk.gov.dktb.mdoc.model;
+
+import com.authlete.mdoc.DeviceNameSpaces;
+import com.authlete.mdoc.DeviceNameSpacesEntry;
+import com.authlete.mdoc.DeviceSignedItem;
+import com.authlete.mdoc.DeviceSignedItems;
+import dk.gov.dktb.mdoc.cbor.CborReader;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// DeviceNameSpaces with lookup of device-signed elements by namespace and element identifier,
+/// the counterpart of [IssuerNameSpacesExt]:
+///
+/// ```
+/// DeviceNameSpacesBytes = #6.24(bstr .cbor DeviceNameSpaces)
+///
+/// DeviceNameSpaces = { * NameSpace => DeviceSignedItems }
+/// DeviceSignedItems = { + DataElementIdentifier => DataElementValue }
+///```
+///
+/// When decoded, [#getEncoded()] holds the DeviceNameSpacesBytes as received, which is what
+/// [DeviceAuthentication] covers, so they are never re-encoded.
+public class DeviceNameSpacesExt extends DeviceNameSpaces {
+    private static final int TAG_ENCODED_CBOR = 24;
+
+    /// `#6.24(bstr .cbor {})`
+    static final DeviceNameSpacesExt EMPTY =
+            new DeviceNameSpacesExt(Map.of(), ByteSlice.of(new byte[]{(byte) 0xd8, 0x18, 0x41, (byte) 0xa0}));
+
+    private final Map<String, Map<String, Object>> elements;
+    private final ByteSlice encoded;
+
+    /// For the device side; the elements are encoded with [CborWriter#writeValue(Object)].
+    ///
+    /// @param elements the element values by element identifier, by namespace
+    public DeviceNameSpacesExt(Map<String, ? extends Map<String, ?>> elements) {
+        this(copy(elements), null);
+    }
+
+    DeviceNameSpacesExt(Map<String, Map<String, Object>> elements, ByteSlice encoded) {
+        super(entries(elements));
+        this.elements = elements;
+        this.encoded = encoded != null ? encoded : encode(elements);
+    }
+
+    /// Decodes DeviceNameSpacesBytes within [DecodingLimits#DEFAULT]. The result keeps `encoded`
+    /// as [#getEncoded()]; if the tag is missing, it is added.
+    public static DeviceNameSpacesExt from(ByteSlice encoded) {
+        var limits = DecodingLimits.DEFAULT;
+        return from(new CborReader(encoded).maxDepth(limits.maxDepth()), limits);
+    }
+
+    /// Reads DeviceNameSpacesBytes from `reader`, within `limits`.
+    static DeviceNameSpacesExt from(CborReader reader, DecodingLimits limits) {
+        var start = reader.position();
+        var tag = reader.readOptionalTag();
+        if (tag != -1 && tag != TAG_ENCODED_CBOR) {
+            throw new IllegalArgumentException("Expected tag " + TAG_ENCODED_CBOR + " but found " + tag);
+        }
+        var nameSpaces = reader.reader(reader.readByteStringSlice());
+
+        var elements = new LinkedHashMap<String, Map<String, Object>>();
+        var size = nameSpaces.readMapHeader();
+        for (int i = 0; nameSpaces.hasMoreEntries(size, i); i++) {
+            DecodingLimits.checkCount(i, limits.maxNameSpaces(), "device-signed namespaces");
+            var nameSpace = nameSpaces.readText();
+            var items = new LinkedHashMap<String, Object>();
+            var itemCount = nameSpaces.readMapHeader();
+            for (int j = 0; nameSpaces.hasMoreEntries(itemCount, j); j++) {
+                DecodingLimits.checkCount(j, limits.maxElementsPerNameSpace(), "device-signed elements in namespace " + nameSpace);
+                items.put(nameSpaces.readText(), nameSpaces.readValue());
+            }
+            elements.put(nameSpace, Collections.unmodifiableMap(items));
+        }
+        var encoded = reader.sliceFrom(start);
+        if (tag == -1) {
+            encoded = new CborWriter(encoded.length() + 2).writeTag(TAG_ENCODED_CBOR).writeRaw(encoded).toByteSlice();
+        }
+        return new DeviceNameSpacesExt(Collections.unmodifiableMap(elements), encoded);
+    }
+
+    public Set<String> getNameSpaceNames() {
+        return elements.keySet();
+    }
+
+    /// @return the element identifiers of a namespace, or an empty set if it is not present
+    public Set<String> getElementIdentifiers(String nameSpace) {
+        var items = elements.get(nameSpace);
+        return items == null ? Set.of() : items.keySet();
+    }
+
+    /// @return the element values by element identifier, or an empty map if the namespace is not present
+    public Map<String, Object> getElements(String nameSpace) {
+        return elements.getOrDefault(nameSpace, Map.of());
+    }
+
+    /// @return the element value, or null if the namespace does not contain the element
+    public Object getElementValue(String nameSpace, String elementIdentifier) {
+        return getElements(nameSpace).get(elementIdentifier);
+    }
+
+    public boolean isEmpty() {
+        return elements.isEmpty();
+    }
+
+    /// @return the DeviceNameSpacesBytes, as received if decoded
+    public ByteSlice getEncoded() {
+        return encoded;
+    }
+
+    private static Map<String, Map<String, Object>> copy(Map<String, ? extends Map<String, ?>> elements) {
+        var result = new LinkedHashMap<String, Map<String, Object>>();
+        elements.forEach((nameSpace, items) -> result.put(nameSpace, Collections.unmodifiableMap(new LinkedHashMap<>(items))));
+        return Collections.unmodifiableMap(result);
+    }
+
+    private static ByteSlice encode(Map<String, Map<String, Object>> elements) {
+        var nameSpaces = new CborWriter().writeValue(elements).toByteSlice();
+        return new CborWriter(nameSpaces.length() + 8)
+                .writeTag(TAG_ENCODED_CBOR)
+                .writeBytes(nameSpaces)
+                .toByteSlice();
+    }
+
+    private static List<DeviceNameSpacesEntry> entries(Map<String, Map<String, Object>> elements) {
+        var entries = new ArrayList<DeviceNameSpacesEntry>(elements.size());
+        elements.forEach((nameSpace, items) -> {
+            var signedItems = new ArrayList<DeviceSignedItem>(items.size());
+            items.forEach((identifier, value) -> signedItems.add(new DeviceSignedItem(identifier, value)));
+            entries.add(new DeviceNameSpacesEntry(nameSpace, new DeviceSignedItems(signedItems)));
+        });
+        return entries;
+    }
+}
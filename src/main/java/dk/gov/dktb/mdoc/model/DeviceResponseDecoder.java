@@ -0,0 +1,480 @@
+package dk.gov.dktb.mdoc.model;
+
+import com.authlete.cbor.CBORByteArray;
+import com.authlete.cbor.CBORInteger;
+import com.authlete.cbor.CBORItem;
+import com.authlete.cbor.CBORItemList;
+import com.authlete.cbor.CBORLong;
+import com.authlete.cbor.CBORNull;
+import com.authlete.cbor.CBORPair;
+import com.authlete.cbor.CBORString;
+import com.authlete.cbor.CBORizer;
+import com.authlete.cose.COSEEC2Key;
+import com.authlete.cose.COSEProtectedHeader;
+import com.authlete.cose.COSEUnprotectedHeader;
+import com.authlete.mdoc.DigestIDs;
+import com.authlete.mdoc.DigestIDsEntry;
+import com.authlete.mdoc.Document;
+import com.authlete.mdoc.IssuerNameSpacesEntry;
+import com.authlete.mdoc.IssuerSignedItemBytes;
+import com.authlete.mdoc.ValueDigestsEntry;
+import dk.gov.dktb.mdoc.cbor.CborReader;
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.verification.VerifiedIssuerCache;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/// Decodes a DeviceResponse (or a single Document) in one pass over the encoded bytes.
+///
+/// The model is built directly from CBOR tokens instead of going through the generic
+/// `Map`/`List` representation of `CBORParser`: the embedded MSO and IssuerSignedItems are
+/// decoded where they sit inside their byte strings, and COSE headers are turned into CBOR items
+/// without a round trip through `CBORizer`. Each decoded structure records the region of the
+/// input it was decoded from ([DocumentExt#getEncoded()], [COSESign1Ext#getEncoded()], ...).
+///
+/// Embedded byte strings (the MSO inside `issuerAuth`, each `IssuerSignedItemBytes`) are kept as
+/// [ByteSlice] views of the input rather than copied, so the model refers to one copy of the
+/// response. The only copies made are the byte arrays the authlete base classes require
+/// (COSE protected header, payload and signature, and the values of eagerly decoded items).
+///
+/// Input is bounded by [#limits] while it is decoded, see [DecodingLimits].
+///
+/// Configure an instance before sharing it; decoding itself keeps no state, so a configured
+/// instance can be used from many threads.
+@Getter
+@Setter
+public class DeviceResponseDecoder {
+    private static final int TAG_ENCODED_CBOR = 24;
+    private static final int TAG_COSE_SIGN1 = 18;
+    private static final int COSE_SIGN1_LENGTH = 4;
+    private static final int HEADER_X5CHAIN = 33;
+
+    /**
+     * Keep IssuerSignedItems encoded and decode them on lookup, see {@link IssuerNameSpacesExt}.
+     * Saves most of the decoding work when only a few elements of a document are read.
+     */
+    private boolean lazyNameSpaces;
+
+    /**
+     * Bounds on the size and structure of the input
+     */
+    private DecodingLimits limits = DecodingLimits.DEFAULT;
+
+    /**
+     * When set, the MSO of an issuerAuth found in the cache is reused instead of decoded again
+     */
+    private VerifiedIssuerCache issuerCache;
+
+    public DeviceResponseExt decode(byte[] cbor) {
+        return decode(ByteSlice.of(cbor));
+    }
+
+    public DeviceResponseExt decode(ByteSlice cbor) {
+        return measure(cbor, this::readDeviceResponse);
+    }
+
+    public DocumentExt decodeDocument(byte[] cbor) {
+        return decodeDocument(ByteSlice.of(cbor));
+    }
+
+    public DocumentExt decodeDocument(ByteSlice cbor) {
+        return measure(cbor, this::readDocument);
+    }
+
+    /// Decodes an IssuerSigned on its own, as a wallet stores it between presentations.
+    public IssuerSignedExt decodeIssuerSigned(ByteSlice cbor) {
+        return measure(cbor, this::readIssuerSigned);
+    }
+
+    /// Decodes `cbor` with `read`, which must consume all of it, reporting the time taken and the
+    /// outcome to [Metrics].
+    private <T> T measure(ByteSlice cbor, Function<CborReader, T> read) {
+        var start = Metrics.start();
+        try {
+            limits.checkInputSize(cbor.length());
+            var reader = reader(cbor);
+            var decoded = read.apply(reader);
+            if (reader.hasRemaining()) {
+                throw new IllegalArgumentException("Unexpected data after the CBOR item at offset " + reader.position());
+            }
+            Metrics.bytesDecoded(cbor.length());
+            return decoded;
+        } catch (RuntimeException e) {
+            Metrics.rejected(Rejection.MALFORMED);
+            throw e;
+        } finally {
+            Metrics.stop(Stage.DECODE, start);
+        }
+    }
+
+    private DeviceResponseExt readDeviceResponse(CborReader reader) {
+        var start = reader.position();
+        String version = null;
+        List<Document> documents = List.of();
+        var status = 0;
+
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            switch (reader.readText()) {
+                case "version" -> version = reader.readText();
+                case "documents" -> documents = readDocuments(reader);
+                case "status" -> status = reader.readInt();
+                default -> reader.skip();
+            }
+        }
+        return new DeviceResponseExt(version, documents, null, status, reader.sliceFrom(start));
+    }
+
+    private List<Document> readDocuments(CborReader reader) {
+        var size = reader.readArrayHeader();
+        var documents = new ArrayList<Document>(Math.max(Math.min(size, limits.maxDocuments()), 1));
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            DecodingLimits.checkCount(i, limits.maxDocuments(), "documents");
+            documents.add(readDocument(reader));
+        }
+        return documents;
+    }
+
+    private DocumentExt readDocument(CborReader reader) {
+        var start = reader.position();
+        String docType = null;
+        IssuerSignedExt issuerSigned = null;
+        DeviceSignedExt deviceSigned = null;
+
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            switch (reader.readText()) {
+                case "docType" -> docType = reader.readText();
+                case "issuerSigned" -> issuerSigned = readIssuerSigned(reader);
+                case "deviceSigned" -> deviceSigned = readDeviceSigned(reader);
+                default -> reader.skip();
+            }
+        }
+        return new DocumentExt(
+                required(docType, "docType"),
+                required(issuerSigned, "issuerSigned"),
+                required(deviceSigned, "deviceSigned"),
+                null,
+                reader.sliceFrom(start));
+    }
+
+    private IssuerSignedExt readIssuerSigned(CborReader reader) {
+        var start = reader.position();
+        IssuerNameSpacesExt nameSpaces = null;
+        COSESign1Ext issuerAuth = null;
+
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            switch (reader.readText()) {
+                case "nameSpaces" -> nameSpaces = readIssuerNameSpaces(reader);
+                case "issuerAuth" -> issuerAuth = readCoseSign1(reader);
+                default -> reader.skip();
+            }
+        }
+        required(issuerAuth, "issuerAuth");
+        if (issuerAuth.getPayloadBytes() == null) {
+            throw new IllegalArgumentException("issuerAuth has no payload");
+        }
+        var cached = issuerCache != null ? issuerCache.get(issuerAuth.getEncoded()) : null;
+        var mso = cached != null ? cached.mobileSecurityObject() : readMobileSecurityObject(issuerAuth.getPayloadBytes());
+
+        return new IssuerSignedExt(
+                nameSpaces != null ? nameSpaces : new IssuerNameSpacesExt(List.of()),
+                issuerAuth,
+                mso,
+                reader.sliceFrom(start));
+    }
+
+    private IssuerNameSpacesExt readIssuerNameSpaces(CborReader reader) {
+        var start = reader.position();
+        var entries = new ArrayList<IssuerNameSpacesEntry>();
+        var encodedItems = new LinkedHashMap<String, List<ByteSlice>>();
+        var decodedItems = new LinkedHashMap<String, List<IssuerSignedItemExt>>();
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            DecodingLimits.checkCount(i, limits.maxNameSpaces(), "namespaces");
+            var nameSpace = reader.readText();
+            var itemCount = reader.readArrayHeader();
+            var encoded = new ArrayList<ByteSlice>(Math.max(Math.min(itemCount, limits.maxElementsPerNameSpace()), 1));
+            for (int j = 0; reader.hasMoreEntries(itemCount, j); j++) {
+                DecodingLimits.checkCount(j, limits.maxElementsPerNameSpace(), "elements in namespace " + nameSpace);
+                encoded.add(readEmbeddedSlice(reader));
+            }
+            encodedItems.put(nameSpace, encoded);
+            Metrics.elementsDecoded(encoded.size());
+
+            if (!lazyNameSpaces) {
+                var items = new ArrayList<IssuerSignedItemBytes>(encoded.size());
+                var decoded = new ArrayList<IssuerSignedItemExt>(encoded.size());
+                for (var item : encoded) {
+                    var decodedItem = IssuerSignedItemExt.from(item, limits.maxDepth());
+                    decoded.add(decodedItem);
+                    items.add(new IssuerSignedItemBytes(decodedItem));
+                }
+                entries.add(new IssuerNameSpacesEntry(nameSpace, items));
+                decodedItems.put(nameSpace, decoded);
+            }
+        }
+        var encoded = reader.sliceFrom(start);
+        return lazyNameSpaces
+                ? IssuerNameSpacesExt.lazy(encodedItems, encoded, limits.maxDepth())
+                : new IssuerNameSpacesExt(entries, encodedItems, decodedItems, encoded);
+    }
+
+    private MobileSecurityObjectExt readMobileSecurityObject(ByteSlice payload) {
+        var mso = readEmbedded(reader(payload));
+        var start = mso.position();
+        String version = null;
+        String digestAlgorithm = null;
+        ValueDigestsExt valueDigests = null;
+        DeviceKeyInfoExt deviceKeyInfo = null;
+        String docType = null;
+        ValidityInfoExt validityInfo = null;
+
+        var size = mso.readMapHeader();
+        for (int i = 0; mso.hasMoreEntries(size, i); i++) {
+            switch (mso.readText()) {
+                case "version" -> version = mso.readText();
+                case "digestAlgorithm" -> digestAlgorithm = mso.readText();
+                case "valueDigests" -> valueDigests = readValueDigests(mso);
+                case "deviceKeyInfo" -> deviceKeyInfo = readDeviceKeyInfo(mso);
+                case "docType" -> docType = mso.readText();
+                case "validityInfo" -> validityInfo = readValidityInfo(mso);
+                default -> mso.skip();
+            }
+        }
+        return new MobileSecurityObjectExt(version, digestAlgorithm, required(valueDigests, "valueDigests"),
+                required(deviceKeyInfo, "deviceKeyInfo"), docType, required(validityInfo, "validityInfo"), mso.sliceFrom(start));
+    }
+
+    private ValueDigestsExt readValueDigests(CborReader reader) {
+        var entries = new ArrayList<ValueDigestsEntry>();
+        var digests = new LinkedHashMap<String, Map<Integer, byte[]>>();
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            DecodingLimits.checkCount(i, limits.maxNameSpaces(), "namespaces in valueDigests");
+            var nameSpace = reader.readText();
+            var digestCount = reader.readMapHeader();
+            var digestIds = new ArrayList<DigestIDsEntry>(Math.max(Math.min(digestCount, limits.maxElementsPerNameSpace()), 1));
+            var nameSpaceDigests = new HashMap<Integer, byte[]>();
+            for (int j = 0; reader.hasMoreEntries(digestCount, j); j++) {
+                DecodingLimits.checkCount(j, limits.maxElementsPerNameSpace(), "value digests in namespace " + nameSpace);
+                var digestId = reader.readInt();
+                var digest = reader.readBytes();
+                digestIds.add(new DigestIDsEntry(digestId, digest));
+                nameSpaceDigests.put(digestId, digest);
+            }
+            entries.add(new ValueDigestsEntry(nameSpace, new DigestIDs(digestIds)));
+            digests.put(nameSpace, nameSpaceDigests);
+        }
+        return new ValueDigestsExt(entries, digests);
+    }
+
+    private DeviceKeyInfoExt readDeviceKeyInfo(CborReader reader) {
+        List<CBORPair> deviceKey = null;
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            if ("deviceKey".equals(reader.readText())) {
+                deviceKey = readIntegerKeyedPairs(reader);
+            } else {
+                reader.skip();
+            }
+        }
+        return new DeviceKeyInfoExt(new COSEEC2Key(required(deviceKey, "deviceKey")), null, null);
+    }
+
+    private ValidityInfoExt readValidityInfo(CborReader reader) {
+        String signed = null;
+        String validFrom = null;
+        String validUntil = null;
+        String expectedUpdate = null;
+
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            switch (reader.readText()) {
+                case "signed" -> signed = readDateTime(reader);
+                case "validFrom" -> validFrom = readDateTime(reader);
+                case "validUntil" -> validUntil = readDateTime(reader);
+                case "expectedUpdate" -> expectedUpdate = readDateTime(reader);
+                default -> reader.skip();
+            }
+        }
+        return new ValidityInfoExt(
+                ValidityInfoExt.asZonedDateTime(signed),
+                ValidityInfoExt.asZonedDateTime(validFrom),
+                ValidityInfoExt.asZonedDateTime(validUntil),
+                ValidityInfoExt.asZonedDateTime(expectedUpdate));
+    }
+
+    private static String readDateTime(CborReader reader) {
+        // tdate = #6.0(tstr)
+        reader.readOptionalTag();
+        return reader.readText();
+    }
+
+    private DeviceSignedExt readDeviceSigned(CborReader reader) {
+        var start = reader.position();
+        DeviceAuthExt deviceAuth = null;
+        // Holds the DeviceNameSpacesBytes as received, they are part of the DeviceAuthentication the device signed
+        var deviceNameSpaces = DeviceNameSpacesExt.EMPTY;
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            switch (reader.readText()) {
+                case "deviceAuth" -> deviceAuth = readDeviceAuth(reader);
+                case "nameSpaces" -> deviceNameSpaces = DeviceNameSpacesExt.from(reader, limits);
+                default -> reader.skip();
+            }
+        }
+        return new DeviceSignedExt(deviceNameSpaces, required(deviceAuth, "deviceAuth"), reader.sliceFrom(start));
+    }
+
+    private DeviceAuthExt readDeviceAuth(CborReader reader) {
+        DeviceAuthExt deviceAuth = null;
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            switch (reader.readText()) {
+                case "deviceSignature" -> deviceAuth = new DeviceAuthExt(readCoseSign1(reader));
+                case "deviceMac" -> throw new IllegalArgumentException("deviceMac is not supported");
+                default -> reader.skip();
+            }
+        }
+        return required(deviceAuth, "deviceSignature");
+    }
+
+    /// COSE_Sign1 = [protected : bstr, unprotected : header_map, payload : bstr / nil, signature : bstr],
+    /// optionally tagged 18.
+    private COSESign1Ext readCoseSign1(CborReader reader) {
+        var start = reader.position();
+        var tag = reader.readOptionalTag();
+        if (tag != -1 && tag != TAG_COSE_SIGN1) {
+            throw new IllegalArgumentException("Unexpected tag " + tag + " on COSE_Sign1");
+        }
+        if (reader.readArrayHeader() != COSE_SIGN1_LENGTH) {
+            throw new IllegalArgumentException("COSE_Sign1 must be an array of " + COSE_SIGN1_LENGTH + " elements");
+        }
+
+        var protectedHeaderBytes = reader.readByteStringSlice();
+        var protectedHeaderPairs = protectedHeaderBytes.isEmpty()
+                ? List.<CBORPair>of()
+                : readHeaderPairs(reader(protectedHeaderBytes));
+        var protectedHeader = new COSEProtectedHeader(protectedHeaderBytes.toByteArray(), protectedHeaderPairs);
+        var unprotectedHeader = new COSEUnprotectedHeader(readHeaderPairs(reader));
+
+        ByteSlice payloadBytes = null;
+        CBORItem payload = CBORNull.INSTANCE;
+        if (reader.peekNull()) {
+            reader.skip();
+        } else {
+            payloadBytes = reader.readByteStringSlice();
+            payload = new CBORByteArray(payloadBytes.toByteArray());
+        }
+        var signatureBytes = reader.readByteStringSlice();
+
+        return new COSESign1Ext(protectedHeader, unprotectedHeader, payload, new CBORByteArray(signatureBytes.toByteArray()),
+                reader.sliceFrom(start), protectedHeaderBytes, payloadBytes, signatureBytes);
+    }
+
+    private List<CBORPair> readHeaderPairs(CborReader reader) {
+        var pairs = new ArrayList<CBORPair>();
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            var label = readItem(reader, 0);
+            var value = label instanceof CBORInteger integer && integer.getValue() == HEADER_X5CHAIN
+                    ? readCertificateChain(reader)
+                    : readItem(reader, 0);
+            pairs.add(new CBORPair(label, value));
+        }
+        return pairs;
+    }
+
+    /// x5chain is a single certificate, or an array of them, signing certificate first.
+    private CBORItem readCertificateChain(CborReader reader) {
+        if (reader.peekMajorType() != CborReader.MAJOR_TYPE_ARRAY) {
+            return new CBORByteArray(reader.readBytes());
+        }
+        var size = reader.readArrayHeader();
+        var certificates = new ArrayList<CBORItem>();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            DecodingLimits.checkCount(i, limits.maxCertificateChainLength(), "certificates in x5chain");
+            certificates.add(new CBORByteArray(reader.readBytes()));
+        }
+        return new CBORItemList(certificates.toArray(new CBORItem[0]));
+    }
+
+    private List<CBORPair> readIntegerKeyedPairs(CborReader reader) {
+        var pairs = new ArrayList<CBORPair>();
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            pairs.add(new CBORPair(new CBORInteger(reader.readInt()), readItem(reader, 0)));
+        }
+        return pairs;
+    }
+
+    /// Builds the CBOR item for the common header and key value types directly; anything else
+    /// goes through [CBORizer] as before.
+    private CBORItem readItem(CborReader reader, int depth) {
+        switch (reader.peekMajorType()) {
+            case CborReader.MAJOR_TYPE_UNSIGNED_INTEGER, CborReader.MAJOR_TYPE_NEGATIVE_INTEGER -> {
+                var value = reader.readLong();
+                return value == (int) value ? new CBORInteger((int) value) : new CBORLong(value);
+            }
+            case CborReader.MAJOR_TYPE_BYTE_STRING -> {
+                return new CBORByteArray(reader.readBytes());
+            }
+            case CborReader.MAJOR_TYPE_TEXT_STRING -> {
+                return new CBORString(reader.readText());
+            }
+            case CborReader.MAJOR_TYPE_ARRAY -> {
+                if (depth >= limits.maxDepth()) {
+                    throw new IllegalArgumentException("Nesting deeper than " + limits.maxDepth() + " at offset " + reader.position());
+                }
+                var size = reader.readArrayHeader();
+                var items = new ArrayList<CBORItem>();
+                for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+                    items.add(readItem(reader, depth + 1));
+                }
+                return new CBORItemList(items.toArray(new CBORItem[0]));
+            }
+            default -> {
+                return new CBORizer().cborize(reader.readValue());
+            }
+        }
+    }
+
+    /// Skips over `#6.24(bstr)` and returns the complete encoding, tag included.
+    private static ByteSlice readEmbeddedSlice(CborReader reader) {
+        var start = reader.position();
+        readEmbedded(reader);
+        return reader.sliceFrom(start);
+    }
+
+    /// Reads `#6.24(bstr)` (the tag is optional) and returns a reader over the embedded encoding.
+    private static CborReader readEmbedded(CborReader reader) {
+        var tag = reader.readOptionalTag();
+        if (tag != -1 && tag != TAG_ENCODED_CBOR) {
+            throw new IllegalArgumentException("Expected tag " + TAG_ENCODED_CBOR + " but found " + tag);
+        }
+        return reader.reader(reader.readByteStringSlice());
+    }
+
+    private CborReader reader(ByteSlice cbor) {
+        return new CborReader(cbor).maxDepth(limits.maxDepth());
+    }
+
+    private static <T> T required(T value, String name) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing required element: " + name);
+        }
+        return value;
+    }
+}
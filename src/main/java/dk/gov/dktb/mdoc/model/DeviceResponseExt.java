@@ -1,22 +1,26 @@
 package dk.gov.dktb.mdoc.model;
 
-import com.authlete.cbor.CBORParser;
 import com.authlete.mdoc.DeviceResponse;
 import com.authlete.mdoc.Document;
 import com.authlete.mdoc.DocumentError;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
 import lombok.Getter;
-import lombok.SneakyThrows;
 import lombok.val;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.List;
 import java.util.Map;
 
 @Getter
 public class DeviceResponseExt extends DeviceResponse {
+    private static final DeviceResponseDecoder DECODER = new DeviceResponseDecoder();
+
     private String version;
     private List<Document> documents;
     private List<DocumentError> errors;
     private int status;
+    private ByteSlice encoded;
 
     public DeviceResponseExt(List<Document> documents) {
         super(documents);
@@ -31,6 +35,11 @@ public class DeviceResponseExt extends DeviceResponse {
         this.status = status;
     }
 
+    DeviceResponseExt(String version, List<Document> documents, List<DocumentError> documentErrors, int status, ByteSlice encoded) {
+        this(version, documents, documentErrors, status);
+        this.encoded = encoded;
+    }
+
     public DocumentExt getDocument(int index) {
         return (DocumentExt) documents.get(index);
     }
@@ -43,11 +52,22 @@ public class DeviceResponseExt extends DeviceResponse {
         return new DeviceResponseExt((String) version, docs, null, (Integer) status);
     }
 
-    @SneakyThrows
     public static DeviceResponseExt from(byte[] cbor) {
-        val parser = new CBORParser(cbor);
-        val list = parser.all();
-        return DeviceResponseExt.from((Map<String, Object>) list.get(0));
+        return DECODER.decode(cbor);
     }
 
+    /// A decoded response is written as it was received; one built in code is encoded from the model.
+    @Override
+    public void encode(OutputStream outputStream) throws IOException {
+        if (encoded == null) {
+            super.encode(outputStream);
+        } else {
+            encoded.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public byte[] encode() {
+        return encoded == null ? super.encode() : encoded.toByteArray();
+    }
 }
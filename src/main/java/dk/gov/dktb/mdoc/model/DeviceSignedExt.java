@@ -1,13 +1,15 @@
 package dk.gov.dktb.mdoc.model;
 
 import com.authlete.mdoc.DeviceAuth;
-import com.authlete.mdoc.DeviceNameSpaces;
 import com.authlete.mdoc.DeviceNameSpacesBytes;
 import com.authlete.mdoc.DeviceSigned;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
 import lombok.Getter;
 import lombok.val;
 
-import java.util.List;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 
 @Getter
@@ -15,20 +17,69 @@ public class DeviceSignedExt extends DeviceSigned {
     private DeviceNameSpacesBytes nameSpaces;
     private DeviceAuth deviceAuth;
 
+    /// The device-signed elements, or null if this was built from a DeviceNameSpacesBytes of
+    /// another kind
+    private DeviceNameSpacesExt deviceNameSpaces;
+
+    /// The DeviceNameSpacesBytes, as received if decoded
+    private ByteSlice nameSpacesBytes;
+
+    private ByteSlice encoded;
+
     public DeviceSignedExt(DeviceNameSpacesBytes nameSpaces, DeviceAuth deviceAuth) {
+        this(nameSpaces, deviceAuth, null, ByteSlice.of(nameSpaces.encode()), null);
+    }
+
+    public DeviceSignedExt(DeviceNameSpacesExt deviceNameSpaces, DeviceAuth deviceAuth) {
+        this(deviceNameSpaces, deviceAuth, null);
+    }
+
+    DeviceSignedExt(DeviceNameSpacesExt deviceNameSpaces, DeviceAuth deviceAuth, ByteSlice encoded) {
+        this(new DeviceNameSpacesBytes(deviceNameSpaces), deviceAuth, deviceNameSpaces, deviceNameSpaces.getEncoded(), encoded);
+    }
+
+    private DeviceSignedExt(DeviceNameSpacesBytes nameSpaces, DeviceAuth deviceAuth, DeviceNameSpacesExt deviceNameSpaces,
+                            ByteSlice nameSpacesBytes, ByteSlice encoded) {
         super(nameSpaces, deviceAuth);
         this.nameSpaces = nameSpaces;
         this.deviceAuth = deviceAuth;
+        this.deviceNameSpaces = deviceNameSpaces;
+        this.nameSpacesBytes = nameSpacesBytes;
+        this.encoded = encoded;
     }
 
     public static DeviceSignedExt from(Map<String, Object> cbor) {
-        //note: we don't support deviceNameSpaces parsing
-        val deviceNameSpaces = new DeviceNameSpaces(List.of());
+        // The parser unwraps #6.24(bstr) to the content of the byte string
+        val nameSpaces = cbor.get("nameSpaces");
+        val deviceNameSpaces = nameSpaces instanceof byte[] bytes
+                ? DeviceNameSpacesExt.from(new CborWriter(bytes.length + 8).writeBytes(bytes).toByteSlice())
+                : DeviceNameSpacesExt.EMPTY;
         val deviceAuth = DeviceAuthExt.from((Map<String, Object>) cbor.get("deviceAuth"));
-        return new DeviceSignedExt(new DeviceNameSpacesBytes(deviceNameSpaces), deviceAuth);
+        return new DeviceSignedExt(deviceNameSpaces, deviceAuth);
+    }
+
+    /// @return the value of a device-signed element, or null if the device did not sign it
+    public Object getElementValue(String nameSpace, String elementIdentifier) {
+        return deviceNameSpaces == null ? null : deviceNameSpaces.getElementValue(nameSpace, elementIdentifier);
     }
 
     public COSESign1Ext getDeviceSignature() {
         return (COSESign1Ext) ((DeviceAuthExt) deviceAuth).getSignature();
     }
+
+    /// A decoded DeviceSigned is written as received, so the DeviceNameSpacesBytes the device
+    /// signature covers are never re-encoded.
+    @Override
+    public void encode(OutputStream outputStream) throws IOException {
+        if (encoded == null) {
+            super.encode(outputStream);
+        } else {
+            encoded.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public byte[] encode() {
+        return encoded == null ? super.encode() : encoded.toByteArray();
+    }
 }
@@ -1,35 +1,54 @@
 package dk.gov.dktb.mdoc.model;
 
-import com.authlete.cose.COSEVerifier;
 import com.authlete.mdoc.DeviceSigned;
 import com.authlete.mdoc.Document;
 import com.authlete.mdoc.Errors;
 import com.authlete.mdoc.IssuerSigned;
-import lombok.Setter;
-import lombok.SneakyThrows;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.verification.MdocVerifier;
 import lombok.val;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
 import java.util.Map;
 
-@Setter
+/// A Document of a DeviceResponse.
+///
+/// Instances are not modified after construction, and verification does not modify them either,
+/// so a decoded document can be cached and verified from several threads at once, also against
+/// different session transcripts.
 public class DocumentExt extends Document {
-    private String docType;
-    private IssuerSigned issuerSigned;
-    private DeviceSigned deviceSigned;
-    private Errors errors;
+    private static final MdocVerifier VERIFIER = new MdocVerifier();
+
+    private final String docType;
+    private final IssuerSigned issuerSigned;
+    private final DeviceSigned deviceSigned;
+    private final Errors errors;
+    private final ByteSlice encoded;
 
     public DocumentExt(String docType, IssuerSigned issuerSigned) {
         super(docType, issuerSigned);
         this.docType = docType;
         this.issuerSigned = issuerSigned;
+        this.deviceSigned = null;
+        this.errors = null;
+        this.encoded = null;
     }
 
     public DocumentExt(String docType, IssuerSigned issuerSigned, DeviceSigned deviceSigned, Errors errors) {
+        this(docType, issuerSigned, deviceSigned, errors, null);
+    }
+
+    DocumentExt(String docType, IssuerSigned issuerSigned, DeviceSigned deviceSigned, Errors errors, ByteSlice encoded) {
         super(docType, issuerSigned, deviceSigned, errors);
         this.docType = docType;
         this.issuerSigned = issuerSigned;
         this.deviceSigned = deviceSigned;
         this.errors = errors;
+        this.encoded = encoded;
     }
 
     public static DocumentExt from(Map<String, Object> cbor) {
@@ -47,22 +66,78 @@ public class DocumentExt extends Document {
         return (DeviceSignedExt) deviceSigned;
     }
 
-    @SneakyThrows
-    public void assertSignatureValid(SessionTranscript sessionTranscript) {
-        var signature = getDeviceSigned().getDeviceSignature();
-        var deviceKeyInfo = (DeviceKeyInfoExt) getIssuerSigned().getMobileSecurityObject().getDeviceKeyInfo();
-        var verifier = new COSEVerifier(deviceKeyInfo.getDeviceKey().createPublicKey());
+    /// @return the value of an issuer-signed element, or null if it is not disclosed
+    public Object getIssuerSignedValue(String nameSpace, String elementIdentifier) {
+        return ((IssuerNameSpacesExt) getIssuerSigned().getNameSpaces()).getElementValue(nameSpace, elementIdentifier);
+    }
 
-        var deviceAuthentication = new DeviceAuthentication(sessionTranscript, this);
+    /// Device-signed elements are vouched for by the device key only, not by the issuer, so they
+    /// are kept apart from [#getIssuerSignedValue(String, String)].
+    ///
+    /// @return the value of a device-signed element, or null if the device did not sign it
+    public Object getDeviceSignedValue(String nameSpace, String elementIdentifier) {
+        return deviceSigned == null ? null : getDeviceSigned().getElementValue(nameSpace, elementIdentifier);
+    }
 
-        final byte[] encode = deviceAuthentication.encode();
-        signature.setPayload(encode);
-        var result = verifier.verify(signature);
+    /// @return the region of the input this document was decoded from, or null if it was not
+    /// decoded by [DeviceResponseDecoder]
+    public ByteSlice getEncoded() {
+        return encoded;
+    }
 
-        if (!result) {
-            throw new SecurityException("Device signature invalid");
+    /// Verifies the device signature over DeviceAuthentication, the detached payload, which is
+    /// computed from `sessionTranscript` and this document; see [MdocVerifier#verifyDeviceSignature].
+    public void assertSignatureValid(SessionTranscript sessionTranscript) {
+        VERIFIER.verifyDeviceSignature(this, sessionTranscript);
+    }
+
+    /// Writes this document disclosing only the requested elements, see
+    /// [IssuerSignedExt#writeDisclosed(Map, ByteSink)]. deviceSigned is copied as is: the device
+    /// signature does not cover the issuer-signed items, so it stays valid.
+    ///
+    /// @param elements the element identifiers to disclose, by namespace
+    public void writeDisclosed(Map<String, ? extends Collection<String>> elements, ByteSink sink) {
+        var writer = new CborWriter()
+                .writeMapHeader(deviceSigned == null ? 2 : 3)
+                .writeText("docType").writeText(docType)
+                .writeText("issuerSigned")
+                .flushTo(sink);
+        getIssuerSigned().writeDisclosed(elements, sink);
+        if (deviceSigned != null) {
+            writer.writeText("deviceSigned").flushTo(sink);
+            var deviceSignedBytes = getDeviceSigned().getEncoded();
+            sink.write(deviceSignedBytes != null ? deviceSignedBytes : ByteSlice.of(deviceSigned.encode()));
         }
     }
 
+    /// Writes a DeviceResponse holding only this document, reduced by [#writeDisclosed(Map, ByteSink)]:
+    ///
+    /// ```
+    /// document.writeDisclosedResponse(Map.of(nameSpace, Set.of("age_over_18")), ByteSink.of(outputStream));
+    ///```
+    public void writeDisclosedResponse(Map<String, ? extends Collection<String>> elements, ByteSink sink) {
+        var writer = new CborWriter()
+                .writeMapHeader(3)
+                .writeText("version").writeText("1.0")
+                .writeText("documents").writeArrayHeader(1)
+                .flushTo(sink);
+        writeDisclosed(elements, sink);
+        writer.writeText("status").writeLong(0).flushTo(sink);
+    }
 
+    /// A decoded document is written as it was received, so forwarding or storing it after
+    /// verification copies bytes instead of re-encoding.
+    @Override
+    public void encode(OutputStream outputStream) throws IOException {
+        if (encoded == null) {
+            super.encode(outputStream);
+        } else {
+            encoded.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public byte[] encode() {
+        return encoded == null ? super.encode() : encoded.toByteArray();
+    }
 }
@@ -3,41 +3,281 @@ package dk.gov.dktb.mdoc.model;
 import com.authlete.cbor.CBORParser;
 import com.authlete.mdoc.IssuerNameSpaces;
 import com.authlete.mdoc.IssuerNameSpacesEntry;
-import com.authlete.mdoc.IssuerSignedItem;
 import com.authlete.mdoc.IssuerSignedItemBytes;
+import dk.gov.dktb.mdoc.cbor.CborReader;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
 import lombok.SneakyThrows;
 import lombok.val;
 
 import java.io.IOException;
+import java.io.OutputStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+/// IssuerNameSpaces with lookup of items by namespace and element identifier.
+///
+/// When decoded in lazy mode ([DeviceResponseDecoder#setLazyNameSpaces(boolean)]) only the raw
+/// IssuerSignedItemBytes are kept: an index from element identifier to encoded item is built on
+/// the first lookup, and an item is decoded only when it is looked up. In lazy mode the authlete
+/// view of this object (`getPairs()`) is empty; use [#getItem(String, String)],
+/// [#getItems(String)] or [#getEncodedItems(String)] instead.
+///
+/// When decoded, `encode()` writes the IssuerNameSpaces as received, in either mode.
 public class IssuerNameSpacesExt extends IssuerNameSpaces {
+    private static final int TAG_ENCODED_CBOR = 24;
+
+    private final Map<String, List<ByteSlice>> encodedItems;
+    private final Map<String, List<IssuerSignedItemExt>> decodedItems;
+    private final ByteSlice encoded;
+    private final int maxDepth;
+    private volatile Map<String, NameSpaceIndex> index;
+
     public IssuerNameSpacesExt(List<? extends IssuerNameSpacesEntry> entries) {
+        this(entries, Map.of(), Map.of(), null);
+    }
+
+    IssuerNameSpacesExt(List<? extends IssuerNameSpacesEntry> entries, Map<String, List<ByteSlice>> encodedItems,
+                        Map<String, List<IssuerSignedItemExt>> decodedItems, ByteSlice encoded) {
+        this(entries, encodedItems, decodedItems, encoded, CborReader.DEFAULT_MAX_DEPTH);
+    }
+
+    private IssuerNameSpacesExt(List<? extends IssuerNameSpacesEntry> entries, Map<String, List<ByteSlice>> encodedItems,
+                                Map<String, List<IssuerSignedItemExt>> decodedItems, ByteSlice encoded, int maxDepth) {
         super(entries);
+        this.encodedItems = encodedItems;
+        this.decodedItems = decodedItems;
+        this.encoded = encoded;
+        this.maxDepth = maxDepth;
+    }
+
+    /// Creates a lazily decoded instance holding only the encoded items, which are scanned and
+    /// decoded with at most `maxDepth` levels of nesting.
+    static IssuerNameSpacesExt lazy(Map<String, List<ByteSlice>> encodedItems, ByteSlice encoded, int maxDepth) {
+        return new IssuerNameSpacesExt(List.of(), encodedItems, Map.of(), encoded, maxDepth);
     }
 
     @SneakyThrows
     public static IssuerNameSpacesExt from(Map<String, Object> nameSpaces) {
         val result = new ArrayList<IssuerNameSpacesEntry>();
+        val decoded = new LinkedHashMap<String, List<IssuerSignedItemExt>>();
         for (Map.Entry<String, Object> entry : nameSpaces.entrySet()) {
             val vals = new ArrayList<IssuerSignedItemBytes>();
+            val items = new ArrayList<IssuerSignedItemExt>();
             val values = (List<byte[]>) entry.getValue();
             for (val value : values) {
                 try {
                     val parser = new CBORParser(value);
                     val next = (Map<String, Object>) parser.next();
-                    val item = new IssuerSignedItem((Integer) next.get("digestID"), (byte[]) next.get("random"), (String) next.get("elementIdentifier"), next.get("elementValue"));
+                    val item = new IssuerSignedItemExt((Integer) next.get("digestID"), (byte[]) next.get("random"), (String) next.get("elementIdentifier"), next.get("elementValue"));
                     vals.add(new IssuerSignedItemBytes(item));
+                    items.add(item);
                 } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
             }
 
             result.add(new IssuerNameSpacesEntry(entry.getKey(), vals));
+            decoded.put(entry.getKey(), items);
         }
-        return new IssuerNameSpacesExt(result);
+        return new IssuerNameSpacesExt(result, Map.of(), decoded, null);
     }
 
+    /// @return true if items are decoded on lookup rather than up front
+    public boolean isLazy() {
+        return decodedItems.isEmpty() && !encodedItems.isEmpty();
+    }
+
+    public Set<String> getNameSpaceNames() {
+        var names = new LinkedHashSet<>(encodedItems.keySet());
+        names.addAll(decodedItems.keySet());
+        return Collections.unmodifiableSet(names);
+    }
+
+    /// The IssuerSignedItemBytes (`#6.24(bstr .cbor IssuerSignedItem)`) of a namespace exactly as
+    /// they appeared in the decoded input. Only available when decoded by [DeviceResponseDecoder].
+    ///
+    /// @return views of the encoded items, or an empty list if the namespace is not present
+    public List<ByteSlice> getEncodedItems(String nameSpace) {
+        return encodedItems.getOrDefault(nameSpace, List.of());
+    }
+
+    /// Looks up an item, decoding it if this has not happened yet.
+    ///
+    /// @return the item, or null if the namespace does not contain the element
+    public IssuerSignedItemExt getItem(String nameSpace, String elementIdentifier) {
+        var entries = getIndex().get(nameSpace);
+        var entry = entries == null ? null : entries.byIdentifier().get(elementIdentifier);
+        return entry == null ? null : entry.item();
+    }
+
+    /// @return the element value, or null if the namespace does not contain the element
+    public Object getElementValue(String nameSpace, String elementIdentifier) {
+        var item = getItem(nameSpace, elementIdentifier);
+        return item == null ? null : item.getElementValue();
+    }
+
+    /// @return all items of a namespace in their original order, decoding them if necessary
+    public List<IssuerSignedItemExt> getItems(String nameSpace) {
+        var decoded = decodedItems.get(nameSpace);
+        if (decoded != null) {
+            return decoded;
+        }
+        var entries = getIndex().get(nameSpace);
+        if (entries == null) {
+            return List.of();
+        }
+        return entries.items().stream().map(IndexEntry::item).toList();
+    }
+
+    /// The digestID and IssuerSignedItemBytes of every item of a namespace in their original
+    /// order, without decoding any element value. This is what value digest verification needs.
+    ///
+    /// Items that were not decoded by [DeviceResponseDecoder] have no original encoding; for those
+    /// the encoding is recreated.
+    ///
+    /// @return the items, or an empty list if the namespace is not present
+    public List<EncodedItem> getDigestedItems(String nameSpace) {
+        var entries = getIndex().get(nameSpace);
+        if (entries == null) {
+            return List.of();
+        }
+        return entries.items().stream()
+                .map(entry -> new EncodedItem(entry.digestId, entry.elementIdentifier, entry.encoded))
+                .toList();
+    }
+
+    /// @return the element identifiers of a namespace, without decoding any element value
+    public Set<String> getElementIdentifiers(String nameSpace) {
+        var entries = getIndex().get(nameSpace);
+        return entries == null ? Set.of() : Collections.unmodifiableSet(entries.byIdentifier().keySet());
+    }
+
+    private Map<String, NameSpaceIndex> getIndex() {
+        var result = index;
+        if (result == null) {
+            synchronized (this) {
+                result = index;
+                if (result == null) {
+                    result = buildIndex();
+                    index = result;
+                }
+            }
+        }
+        return result;
+    }
+
+    private Map<String, NameSpaceIndex> buildIndex() {
+        var result = new LinkedHashMap<String, NameSpaceIndex>();
+        for (var nameSpace : getNameSpaceNames()) {
+            var items = new ArrayList<IndexEntry>();
+            var decoded = decodedItems.get(nameSpace);
+            if (decoded != null) {
+                for (var item : decoded) {
+                    var encoded = item.getEncoded() != null
+                            ? item.getEncoded()
+                            : ByteSlice.of(new IssuerSignedItemBytes(item).encode());
+                    items.add(new IndexEntry(encoded, item.getDigestID(), item));
+                }
+            } else {
+                for (var encoded : encodedItems.get(nameSpace)) {
+                    items.add(scan(encoded, maxDepth));
+                }
+            }
+            var byIdentifier = new LinkedHashMap<String, IndexEntry>();
+            for (var entry : items) {
+                byIdentifier.putIfAbsent(entry.elementIdentifier, entry);
+            }
+            result.put(nameSpace, new NameSpaceIndex(List.copyOf(items), Collections.unmodifiableMap(byIdentifier)));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /// Reads digestID and elementIdentifier of an encoded item, skipping over everything else.
+    private static IndexEntry scan(ByteSlice encoded, int maxDepth) {
+        var reader = new CborReader(encoded).maxDepth(maxDepth);
+        var tag = reader.readOptionalTag();
+        if (tag != -1 && tag != TAG_ENCODED_CBOR) {
+            throw new IllegalArgumentException("Expected tag " + TAG_ENCODED_CBOR + " but found " + tag);
+        }
+        var item = reader.reader(reader.readByteStringSlice());
+
+        var digestId = -1;
+        String elementIdentifier = null;
+        var size = item.readMapHeader();
+        for (int i = 0; item.hasMoreEntries(size, i); i++) {
+            switch (item.readText()) {
+                case "digestID" -> digestId = item.readInt();
+                case "elementIdentifier" -> elementIdentifier = item.readText();
+                default -> item.skip();
+            }
+        }
+        if (elementIdentifier == null) {
+            throw new IllegalArgumentException("IssuerSignedItem without elementIdentifier");
+        }
+        return new IndexEntry(encoded, digestId, elementIdentifier, maxDepth);
+    }
+
+    /// @return the region of the input this was decoded from, or null if it was not decoded by
+    /// [DeviceResponseDecoder]
+    public ByteSlice getEncoded() {
+        return encoded;
+    }
+
+    @Override
+    public void encode(OutputStream outputStream) throws IOException {
+        if (encoded == null) {
+            super.encode(outputStream);
+        } else {
+            encoded.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public byte[] encode() {
+        return encoded == null ? super.encode() : encoded.toByteArray();
+    }
+
+    /// An IssuerSignedItem as it is covered by a value digest.
+    ///
+    /// @param encoded the IssuerSignedItemBytes, `#6.24(bstr .cbor IssuerSignedItem)`
+    public record EncodedItem(int digestId, String elementIdentifier, ByteSlice encoded) {
+    }
+
+    private record NameSpaceIndex(List<IndexEntry> items, Map<String, IndexEntry> byIdentifier) {
+    }
+
+    private static final class IndexEntry {
+        private final ByteSlice encoded;
+        private final int digestId;
+        private final String elementIdentifier;
+        private final int maxDepth;
+        private volatile IssuerSignedItemExt item;
+
+        IndexEntry(ByteSlice encoded, int digestId, String elementIdentifier, int maxDepth) {
+            this.encoded = encoded;
+            this.digestId = digestId;
+            this.elementIdentifier = elementIdentifier;
+            this.maxDepth = maxDepth;
+        }
+
+        IndexEntry(ByteSlice encoded, int digestId, IssuerSignedItemExt item) {
+            this(encoded, digestId, item.getElementIdentifier(), CborReader.DEFAULT_MAX_DEPTH);
+            this.item = item;
+        }
+
+        IssuerSignedItemExt item() {
+            var result = item;
+            if (result == null) {
+                // Decoding is idempotent, so concurrent first lookups may both decode.
+                result = IssuerSignedItemExt.from(encoded, maxDepth);
+                item = result;
+            }
+            return result;
+        }
+    }
 }
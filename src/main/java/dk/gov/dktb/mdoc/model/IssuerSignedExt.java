@@ -1,29 +1,42 @@
 package dk.gov.dktb.mdoc.model;
 
 import com.authlete.cose.COSESign1;
-import com.authlete.cose.COSEVerifier;
 import com.authlete.mdoc.IssuerNameSpaces;
 import com.authlete.mdoc.IssuerSigned;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.verification.MdocVerifier;
+import dk.gov.dktb.mdoc.verification.ValueDigestVerifier;
 import lombok.Getter;
-import lombok.Setter;
-import lombok.SneakyThrows;
 
-import java.security.Key;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 @Getter
-@Setter
 public class IssuerSignedExt extends IssuerSigned {
-    private IssuerNameSpaces nameSpaces;
-    private COSESign1 issuerAuth;
-    private MobileSecurityObjectExt mobileSecurityObject;
+    private static final MdocVerifier VERIFIER = new MdocVerifier();
+    private static final ValueDigestVerifier VALUE_DIGEST_VERIFIER = new ValueDigestVerifier();
+
+    private final IssuerNameSpaces nameSpaces;
+    private final COSESign1 issuerAuth;
+    private final MobileSecurityObjectExt mobileSecurityObject;
+    private final ByteSlice encoded;
 
     public IssuerSignedExt(IssuerNameSpaces nameSpaces, COSESign1 issuerAuth) {
+        this(nameSpaces, issuerAuth, MobileSecurityObjectExt.fromCbor(issuerAuth.getPayload()), null);
+    }
+
+    IssuerSignedExt(IssuerNameSpaces nameSpaces, COSESign1 issuerAuth, MobileSecurityObjectExt mobileSecurityObject, ByteSlice encoded) {
         super(nameSpaces, issuerAuth);
         this.nameSpaces = nameSpaces;
         this.issuerAuth = issuerAuth;
-        this.mobileSecurityObject = MobileSecurityObjectExt.fromCbor(issuerAuth.getPayload());
+        this.mobileSecurityObject = mobileSecurityObject;
+        this.encoded = encoded;
     }
 
     public static IssuerSignedExt from(Map<String, Object> cbor) {
@@ -32,19 +45,66 @@ public class IssuerSignedExt extends IssuerSigned {
         return new IssuerSignedExt(issuerNameSpaces, issuerAuth);
     }
 
-    @SneakyThrows
     public void assertSignatureValid() {
-        var verifier = new COSEVerifier(getSigningKey());
+        VERIFIER.verifyIssuerSignature(this);
+    }
+
+    /// Checks the disclosed items against the value digests of the MSO, see [ValueDigestVerifier].
+    public void assertValueDigestsValid() {
+        VALUE_DIGEST_VERIFIER.verify(this);
+    }
 
-        if (issuerAuth.getUnprotectedHeader().getAlg() == null && issuerAuth.getProtectedHeader().getAlg() == null) {
+    /// Writes an IssuerSigned disclosing only the requested elements. Their IssuerSignedItemBytes
+    /// and issuerAuth are copied byte for byte, so the value digests and the issuer signature
+    /// still verify for the recipient. Namespaces without any requested element are left out.
+    ///
+    /// @param elements the element identifiers to disclose, by namespace
+    /// @throws IllegalStateException if the namespaces are not an [IssuerNameSpacesExt], which
+    /// holds the original IssuerSignedItemBytes; a re-encoded item would not match its digest
+    public void writeDisclosed(Map<String, ? extends Collection<String>> elements, ByteSink sink) {
+        if (!(nameSpaces instanceof IssuerNameSpacesExt issuerNameSpaces)) {
+            throw new IllegalStateException("Selective disclosure needs a decoded IssuerSigned");
+        }
+        var disclosed = new LinkedHashMap<String, List<ByteSlice>>();
+        for (var nameSpace : issuerNameSpaces.getNameSpaceNames()) {
+            var requested = elements.get(nameSpace);
+            if (requested == null) {
+                continue;
+            }
+            var items = issuerNameSpaces.getDigestedItems(nameSpace).stream()
+                    .filter(item -> requested.contains(item.elementIdentifier()))
+                    .map(IssuerNameSpacesExt.EncodedItem::encoded)
+                    .toList();
+            if (!items.isEmpty()) {
+                disclosed.put(nameSpace, items);
+            }
         }
-        if(!verifier.verify(issuerAuth)) {
-            throw new SecurityException("Issuer signature is invalid");
+
+        var writer = new CborWriter().writeMapHeader(disclosed.isEmpty() ? 1 : 2);
+        if (!disclosed.isEmpty()) {
+            writer.writeText("nameSpaces").writeMapHeader(disclosed.size());
+            for (var entry : disclosed.entrySet()) {
+                writer.writeText(entry.getKey()).writeArrayHeader(entry.getValue().size()).flushTo(sink);
+                entry.getValue().forEach(sink::write);
+            }
         }
+        writer.writeText("issuerAuth").flushTo(sink);
+        var issuerAuthBytes = issuerAuth instanceof COSESign1Ext sign1 ? sign1.getEncoded() : null;
+        sink.write(issuerAuthBytes != null ? issuerAuthBytes : ByteSlice.of(issuerAuth.encode()));
     }
 
-    private Key getSigningKey() {
-        return ((COSESign1Ext) issuerAuth).getSigningCertificate().getPublicKey();
+    /// Writes the original encoding when decoded, reproducing nameSpaces and issuerAuth byte for byte.
+    @Override
+    public void encode(OutputStream outputStream) throws IOException {
+        if (encoded == null) {
+            super.encode(outputStream);
+        } else {
+            encoded.writeTo(outputStream);
+        }
     }
 
+    @Override
+    public byte[] encode() {
+        return encoded == null ? super.encode() : encoded.toByteArray();
+    }
 }
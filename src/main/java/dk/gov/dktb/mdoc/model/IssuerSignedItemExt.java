@@ -0,0 +1,76 @@
+package dk.gov.dktb.mdoc.model;
+
+import com.authlete.mdoc.IssuerSignedItem;
+import dk.gov.dktb.mdoc.cbor.CborReader;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import lombok.Getter;
+
+/// ```
+/// IssuerSignedItemBytes = #6.24(bstr .cbor IssuerSignedItem)
+///
+/// IssuerSignedItem = {
+///   "digestID" : uint,
+///   "random" : bstr,
+///   "elementIdentifier" : DataElementIdentifier,
+///   "elementValue" : DataElementValue
+/// }
+///```
+@Getter
+public class IssuerSignedItemExt extends IssuerSignedItem {
+    private static final int TAG_ENCODED_CBOR = 24;
+
+    private final int digestID;
+    private final byte[] random;
+    private final String elementIdentifier;
+    private final Object elementValue;
+    private final ByteSlice encoded;
+
+    public IssuerSignedItemExt(int digestID, byte[] random, String elementIdentifier, Object elementValue) {
+        this(digestID, random, elementIdentifier, elementValue, null);
+    }
+
+    IssuerSignedItemExt(int digestID, byte[] random, String elementIdentifier, Object elementValue, ByteSlice encoded) {
+        super(digestID, random, elementIdentifier, elementValue);
+        this.digestID = digestID;
+        this.random = random;
+        this.elementIdentifier = elementIdentifier;
+        this.elementValue = elementValue;
+        this.encoded = encoded;
+    }
+
+    /// Decodes an item from its IssuerSignedItemBytes encoding. The result keeps `encoded` as
+    /// [#getEncoded()].
+    public static IssuerSignedItemExt from(ByteSlice encoded) {
+        return from(encoded, CborReader.DEFAULT_MAX_DEPTH);
+    }
+
+    /// @param maxDepth the nesting allowed in the element value, see [CborReader#maxDepth(int)]
+    static IssuerSignedItemExt from(ByteSlice encoded, int maxDepth) {
+        var reader = new CborReader(encoded).maxDepth(maxDepth);
+        var tag = reader.readOptionalTag();
+        if (tag != -1 && tag != TAG_ENCODED_CBOR) {
+            throw new IllegalArgumentException("Expected tag " + TAG_ENCODED_CBOR + " but found " + tag);
+        }
+        var item = reader.reader(reader.readByteStringSlice());
+
+        Integer digestId = null;
+        byte[] random = null;
+        String elementIdentifier = null;
+        Object elementValue = null;
+
+        var size = item.readMapHeader();
+        for (int i = 0; item.hasMoreEntries(size, i); i++) {
+            switch (item.readText()) {
+                case "digestID" -> digestId = item.readInt();
+                case "random" -> random = item.readBytes();
+                case "elementIdentifier" -> elementIdentifier = item.readText();
+                case "elementValue" -> elementValue = item.readValue();
+                default -> item.skip();
+            }
+        }
+        if (digestId == null || random == null || elementIdentifier == null) {
+            throw new IllegalArgumentException("IssuerSignedItem must contain digestID, random and elementIdentifier");
+        }
+        return new IssuerSignedItemExt(digestId, random, elementIdentifier, elementValue, encoded);
+    }
+}
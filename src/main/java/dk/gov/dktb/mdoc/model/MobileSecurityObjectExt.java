@@ -7,10 +7,13 @@ import com.authlete.mdoc.DeviceKeyInfo;
 import com.authlete.mdoc.MobileSecurityObject;
 import com.authlete.mdoc.ValidityInfo;
 import com.authlete.mdoc.ValueDigests;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
 import lombok.Getter;
 import lombok.SneakyThrows;
 import lombok.val;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.util.Map;
 
 @Getter
@@ -25,6 +28,7 @@ public class MobileSecurityObjectExt extends MobileSecurityObject {
     private ValueDigests valueDigests;
     private String version;
     private String digestAlgorithm;
+    private ByteSlice encoded;
 
     public MobileSecurityObjectExt(ValueDigests valueDigests, DeviceKeyInfo deviceKeyInfo, String docType, ValidityInfo validityInfo) {
         super(valueDigests, deviceKeyInfo, docType, validityInfo);
@@ -44,6 +48,12 @@ public class MobileSecurityObjectExt extends MobileSecurityObject {
         this.digestAlgorithm = digestAlgorithm;
     }
 
+    /// @param encoded the MobileSecurityObject as it was signed, written by [#encode(OutputStream)]
+    public MobileSecurityObjectExt(String version, String digestAlgorithm, ValueDigests valueDigests, DeviceKeyInfo deviceKeyInfo, String docType, ValidityInfo validityInfo, ByteSlice encoded) {
+        this(version, digestAlgorithm, valueDigests, deviceKeyInfo, docType, validityInfo);
+        this.encoded = encoded;
+    }
+
     @SneakyThrows
     public static MobileSecurityObjectExt fromCbor(CBORItem payload) {
         val parser = new CBORParser(((CBORByteArray) payload).getValue());
@@ -57,4 +67,29 @@ public class MobileSecurityObjectExt extends MobileSecurityObject {
                 (String) map.get("docType"),
                 ValidityInfoExt.from((Map<String, Object>) map.get(VALIDITY_INFO)));
     }
+
+    /// @return this MSO with its own copy of the encoding, so it does not keep the input it was
+    /// decoded from alive, or this MSO if it was not decoded
+    public MobileSecurityObjectExt withCopiedEncoding() {
+        if (encoded == null) {
+            return this;
+        }
+        return new MobileSecurityObjectExt(version, digestAlgorithm, valueDigests, deviceKeyInfo, docType, validityInfo,
+                ByteSlice.of(encoded.toByteArray()));
+    }
+
+    /// Writes the MobileSecurityObject exactly as it was signed when it was decoded.
+    @Override
+    public void encode(OutputStream outputStream) throws IOException {
+        if (encoded == null) {
+            super.encode(outputStream);
+        } else {
+            encoded.writeTo(outputStream);
+        }
+    }
+
+    @Override
+    public byte[] encode() {
+        return encoded == null ? super.encode() : encoded.toByteArray();
+    }
 }
@@ -1,12 +1,12 @@
 package dk.gov.dktb.mdoc.model;
 
-import com.authlete.cbor.CBORByteArray;
 import com.authlete.cbor.CBORItem;
 import com.authlete.cbor.CBORItemList;
 import com.authlete.cbor.CBORLong;
 import com.authlete.cbor.CBORNull;
 import com.authlete.cbor.CBORString;
-import dk.gov.dktb.mdoc.utilities.SHA256;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
@@ -19,10 +19,19 @@ import java.time.Instant;
 public class SessionTranscript {
     private CBORItem handOver;
 
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private volatile byte[] encoded;
+
     public SessionTranscript(CBORItem handOver) {
         this.handOver = handOver;
     }
 
+    SessionTranscript(CBORItem handOver, byte[] encoded) {
+        this.handOver = handOver;
+        this.encoded = encoded;
+    }
+
 
     /// Build session transcript for OID4VP with the following syntax:
     ///
@@ -69,26 +78,12 @@ public class SessionTranscript {
     /// @return session transcript object used for validating device signature.
     public static SessionTranscript forOid4VP(String clientId, String responseUri, String nonce,
                                               String mdocGeneratedNonce) {
+        return SessionTranscriptTemplate.forOid4VP(clientId, responseUri).transcript(nonce, mdocGeneratedNonce);
+    }
 
-        var clientIdToHash = new CBORItemList(
-                new CBORString(clientId),
-                new CBORString(mdocGeneratedNonce)
-        );
-        var clientIdHash = SHA256.digest(clientIdToHash.encode());
-
-        var responseUriToHash = new CBORItemList(
-                new CBORString(responseUri),
-                new CBORString(mdocGeneratedNonce)
-        );
-        var responseUriHash = SHA256.digest(responseUriToHash.encode());
-
-        var handover = new CBORItemList(
-                new CBORByteArray(clientIdHash),
-                new CBORByteArray(responseUriHash),
-                new CBORString(nonce)
-        );
-
-        return new SessionTranscript(handover);
+    public void setHandOver(CBORItem handOver) {
+        this.handOver = handOver;
+        this.encoded = null;
     }
 
     public CBORItem asCBOR() {
@@ -99,6 +94,19 @@ public class SessionTranscript {
         );
     }
 
+    /// The encoded transcript, computed once. Transcripts created by [SessionTranscriptTemplate],
+    /// [#forOid4VP] and [#forSignedQR] are encoded when they are created.
+    ///
+    /// @return the encoding; it must not be modified
+    public byte[] encode() {
+        var result = encoded;
+        if (result == null) {
+            result = asCBOR().encode();
+            encoded = result;
+        }
+        return result;
+    }
+
     /// ```
     /// SessionTranscript = [
     ///    DeviceEngagementBytes : bstr,  // always nil for signed QR presentations
@@ -118,7 +126,16 @@ public class SessionTranscript {
                 new CBORLong(validFrom.getEpochSecond()),
                 new CBORLong(validTo.getEpochSecond())
         );
+        var encoded = new CborWriter()
+                .writeArrayHeader(3)
+                .writeNull()
+                .writeNull()
+                .writeArrayHeader(3)
+                .writeText(mdocGeneratedNonce)
+                .writeLong(validFrom.getEpochSecond())
+                .writeLong(validTo.getEpochSecond())
+                .toByteArray();
 
-        return new SessionTranscript(handover);
+        return new SessionTranscript(handover, encoded);
     }
 }
@@ -0,0 +1,88 @@
+package dk.gov.dktb.mdoc.model;
+
+import com.authlete.cbor.CBORByteArray;
+import com.authlete.cbor.CBORItemList;
+import com.authlete.cbor.CBORString;
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.SneakyThrows;
+
+import java.security.MessageDigest;
+
+/// The parts of an OID4VP session transcript that are fixed for one verifier configuration,
+/// precomputed once. See [SessionTranscript#forOid4VP] for the structure.
+///
+/// Both hashes in the handover cover `[value, mdocGeneratedNonce]` where only the nonce differs
+/// between presentations to the same verifier. The template keeps SHA-256 states that have
+/// already consumed the array header and `clientId` respectively `responseUri`, so a transcript
+/// only hashes the nonce, and the transcript is encoded directly rather than via CBOR items.
+///
+/// Create one template per clientId/responseUri and share it; [#transcript] is thread-safe.
+@Getter
+public final class SessionTranscriptTemplate {
+    private static final int TO_HASH_LENGTH = 2;
+    private static final int HANDOVER_LENGTH = 3;
+    private static final int TRANSCRIPT_LENGTH = 3;
+
+    private final String clientId;
+    private final String responseUri;
+    @Getter(AccessLevel.NONE)
+    private final MessageDigest clientIdDigest;
+    @Getter(AccessLevel.NONE)
+    private final MessageDigest responseUriDigest;
+
+    private SessionTranscriptTemplate(String clientId, String responseUri) {
+        this.clientId = clientId;
+        this.responseUri = responseUri;
+        this.clientIdDigest = prefixedDigest(clientId);
+        this.responseUriDigest = prefixedDigest(responseUri);
+    }
+
+    public static SessionTranscriptTemplate forOid4VP(String clientId, String responseUri) {
+        return new SessionTranscriptTemplate(clientId, responseUri);
+    }
+
+    /// @param nonce              client nonce, as defined in the authentication request
+    /// @param mdocGeneratedNonce Wallet generated nonce, passed in response as "apu" header.
+    /// @return session transcript object used for validating device signature, with its encoding
+    public SessionTranscript transcript(String nonce, String mdocGeneratedNonce) {
+        var encodedNonce = new CborWriter().writeText(mdocGeneratedNonce).toByteArray();
+        var clientIdHash = digest(clientIdDigest, encodedNonce);
+        var responseUriHash = digest(responseUriDigest, encodedNonce);
+
+        var handover = new CBORItemList(
+                new CBORByteArray(clientIdHash),
+                new CBORByteArray(responseUriHash),
+                new CBORString(nonce)
+        );
+        var encoded = new CborWriter(96 + nonce.length())
+                .writeArrayHeader(TRANSCRIPT_LENGTH)
+                .writeNull()
+                .writeNull()
+                .writeArrayHeader(HANDOVER_LENGTH)
+                .writeBytes(clientIdHash)
+                .writeBytes(responseUriHash)
+                .writeText(nonce)
+                .toByteArray();
+
+        return new SessionTranscript(handover, encoded);
+    }
+
+    /// @return SHA-256 after consuming `[value, ` of `[value, mdocGeneratedNonce]`
+    @SneakyThrows
+    private static MessageDigest prefixedDigest(String value) {
+        var digest = MessageDigest.getInstance("SHA-256");
+        digest.update(new CborWriter()
+                .writeArrayHeader(TO_HASH_LENGTH)
+                .writeText(value)
+                .toByteArray());
+        return digest;
+    }
+
+    @SneakyThrows
+    private static byte[] digest(MessageDigest prefix, byte[] rest) {
+        var digest = (MessageDigest) prefix.clone();
+        return digest.digest(rest);
+    }
+}
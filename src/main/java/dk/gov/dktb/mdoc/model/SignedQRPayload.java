@@ -1,17 +1,19 @@
 package dk.gov.dktb.mdoc.model;
 
-import com.authlete.cbor.CBORParser;
+import dk.gov.dktb.mdoc.cbor.CborReader;
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.verification.MdocVerifier;
+import dk.gov.dktb.mdoc.verification.NonceStore;
+import dk.gov.dktb.mdoc.verification.VerificationResult;
 import lombok.Setter;
-import lombok.SneakyThrows;
 
-import java.io.IOException;
 import java.time.Clock;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /// Signed QR payload:
 ///
@@ -33,6 +35,11 @@ import java.util.Map;
 ///   "p": bstr           ; Part p_i
 ///}
 ///```
+///
+/// Only the outer fields are decoded on construction; the document is decoded when it is first
+/// needed. [#assertValid()] runs the cheap checks (lifetime, validity period, document size)
+/// before decoding the document and verifying its signature, so stale or oversized codes are
+/// rejected without that work.
 public class SignedQRPayload {
     public static final String MDOC_GENERATED_NONCE_LABEL = "m";
     public static final String VALID_FROM_LABEL = "f";
@@ -42,11 +49,16 @@ public class SignedQRPayload {
     public static final String NUMBER_OF_PARTS_LABEL = "n";
     public static final String PART_LABEL = "p";
 
+    private static final DeviceResponseDecoder DOCUMENT_DECODER = new DeviceResponseDecoder();
+    private static final MdocVerifier VERIFIER = new MdocVerifier();
+
 
     private final String mdocGeneratedNonce;
     private final Instant validFrom;
     private final Instant validTo;
-    private final DocumentExt document;
+    private final ByteSlice documentBytes;
+    private final DecodingLimits limits;
+    private DocumentExt document;
 
     @Setter
     private Clock clock = Clock.systemUTC();
@@ -63,43 +75,126 @@ public class SignedQRPayload {
     @Setter
     private Duration allowedClockSkew = Duration.ofSeconds(60);
 
+    /**
+     * Encoded documents larger than this are rejected before they are decoded
+     */
+    @Setter
+    private int maxDocumentSize = 16 * 1024;
+
+    /**
+     * Remembers the mdocGeneratedNonce of accepted QR codes, so a code is accepted only once. When null,
+     * replays are not detected.
+     */
+    @Setter
+    private NonceStore nonceStore;
+
     /**
      * Construct from single QR payload
      *
      * @param payload data from QR code
      */
-    @SneakyThrows
     public SignedQRPayload(byte[] payload) {
-        final var map = asMap(payload);
+        this(ByteSlice.of(payload));
+    }
+
+    /**
+     * Construct from single QR payload held in a larger buffer. The embedded document is decoded
+     * directly from the buffer, without copying it out first, when it is first needed.
+     *
+     * @param payload data from QR code
+     */
+    public SignedQRPayload(ByteSlice payload) {
+        this(payload, DecodingLimits.DEFAULT);
+    }
+
+    /**
+     * Construct from single QR payload, decoding within the given limits
+     *
+     * @param payload data from QR code
+     */
+    public SignedQRPayload(ByteSlice payload, DecodingLimits limits) {
+        limits.checkInputSize(payload.length());
+        this.limits = limits;
+        String nonce = null;
+        Instant from = null;
+        Instant to = null;
+        ByteSlice document = null;
+
+        var reader = new CborReader(payload).maxDepth(limits.maxDepth());
+        var size = reader.readMapHeader();
+        for (int i = 0; reader.hasMoreEntries(size, i); i++) {
+            switch (reader.readText()) {
+                case MDOC_GENERATED_NONCE_LABEL -> nonce = reader.readText();
+                case VALID_FROM_LABEL -> from = readInstant(reader, VALID_FROM_LABEL);
+                case VALID_TO_LABEL -> to = readInstant(reader, VALID_TO_LABEL);
+                case DOCUMENT_LABEL -> document = reader.readByteStringSlice();
+                default -> reader.skip();
+            }
+        }
 
-        mdocGeneratedNonce = (String) map.get(MDOC_GENERATED_NONCE_LABEL);
-        validFrom = asEpochSecond(map.get(VALID_FROM_LABEL));
-        validTo = asEpochSecond(map.get(VALID_TO_LABEL));
-        document = DocumentExt.from(asMap((byte[]) map.get(DOCUMENT_LABEL)));
+        mdocGeneratedNonce = required(nonce, MDOC_GENERATED_NONCE_LABEL);
+        validFrom = required(from, VALID_FROM_LABEL);
+        validTo = required(to, VALID_TO_LABEL);
+        documentBytes = required(document, DOCUMENT_LABEL);
 
         if (!validTo.isAfter(validFrom)) {
             throw new IllegalArgumentException("ValidFrom is after validTo");
         }
     }
 
-    @SneakyThrows
     public static SignedQRPayload fromMultipleParts(List<byte[]> payloads) {
+        return fromMultipleParts(payloads, DecodingLimits.DEFAULT);
+    }
+
+    public static SignedQRPayload fromMultipleParts(List<byte[]> payloads, DecodingLimits limits) {
         var count = payloads.size();
-        var parts = new ArrayList<byte[]>(Collections.nCopies(count, null));
+        DecodingLimits.checkCount(count - 1, limits.maxParts(), "parts");
+        var parts = new ByteSlice[count];
         for (byte[] payload : payloads) {
-            final var map = asMap(payload);
-            var i = (Integer) map.get(CURRENT_PART_LABEL);
-            if (i < 0 || i >= count) {
-                throw new IllegalArgumentException("Invalid part number: " + i);
+            var part = Part.parse(ByteSlice.of(payload), limits);
+            if (part.index() >= count) {
+                throw new IllegalArgumentException("Invalid part number: " + part.index());
             }
-            var n = (Integer) map.get(NUMBER_OF_PARTS_LABEL);
-            if (n != count) {
+            if (part.count() != count) {
                 throw new IllegalArgumentException("Number of parts (n) in CBOR structure must be the same as the number of parts passed to constructor.");
             }
-            var p = (byte[]) map.get(PART_LABEL);
-            parts.set(i, p);
+            parts[part.index()] = part.content();
+        }
+        return new SignedQRPayload(ByteSlice.of(concatenate(parts, limits)), limits);
+    }
+
+    /// One part of a multi-part payload, see [SignedQRReassembler].
+    ///
+    /// @param index the number of this part ("i")
+    /// @param count the number of parts in total ("n")
+    /// @param content the part ("p")
+    record Part(int index, int count, ByteSlice content) {
+        static Part parse(ByteSlice payload, DecodingLimits limits) {
+            limits.checkInputSize(payload.length());
+            Integer i = null;
+            Integer n = null;
+            ByteSlice p = null;
+
+            var reader = new CborReader(payload).maxDepth(limits.maxDepth());
+            var size = reader.readMapHeader();
+            for (int entry = 0; reader.hasMoreEntries(size, entry); entry++) {
+                switch (reader.readText()) {
+                    case CURRENT_PART_LABEL -> i = reader.readInt();
+                    case NUMBER_OF_PARTS_LABEL -> n = reader.readInt();
+                    case PART_LABEL -> p = reader.readByteStringSlice();
+                    default -> reader.skip();
+                }
+            }
+
+            if (required(n, NUMBER_OF_PARTS_LABEL) < 1) {
+                throw new IllegalArgumentException("Invalid number of parts: " + n);
+            }
+            DecodingLimits.checkCount(n - 1, limits.maxParts(), "parts");
+            if (required(i, CURRENT_PART_LABEL) < 0 || i >= n) {
+                throw new IllegalArgumentException("Invalid part number: " + i);
+            }
+            return new Part(i, n, required(p, PART_LABEL));
         }
-        return new SignedQRPayload(concatenate(parts));
     }
 
     public static byte[] concatenate(List<byte[]> arrays) {
@@ -114,57 +209,159 @@ public class SignedQRPayload {
         return result;
     }
 
+    private static byte[] concatenate(ByteSlice[] parts, DecodingLimits limits) {
+        var totalLength = 0L;
+        for (int i = 0; i < parts.length; i++) {
+            if (parts[i] == null) {
+                throw new IllegalArgumentException("Missing part number: " + i);
+            }
+            totalLength += parts[i].length();
+        }
+        limits.checkInputSize((int) Math.min(totalLength, Integer.MAX_VALUE));
+
+        var result = new byte[(int) totalLength];
+        int currentPos = 0;
+        for (ByteSlice part : parts) {
+            currentPos += part.copyTo(result, currentPos);
+        }
+        return result;
+    }
 
-    private static Map<String, Object> asMap(byte[] decoded) throws IOException {
-        var parser = new CBORParser(decoded);
-        final Object next = parser.next();
-        if (!(next instanceof Map)) {
-            throw new IllegalArgumentException("Expected a Map, but got " + next.getClass().getSimpleName());
+    /// Reads epoch seconds, which must lie within the range of [Instant].
+    private static Instant readInstant(CborReader reader, String label) {
+        var epochSecond = reader.readLong();
+        if (epochSecond < Instant.MIN.getEpochSecond() || epochSecond > Instant.MAX.getEpochSecond()) {
+            throw new IllegalArgumentException("Invalid \"" + label + "\" in QR payload: " + epochSecond);
         }
-        //noinspection unchecked
-        return (Map<String, Object>) next;
+        return Instant.ofEpochSecond(epochSecond);
     }
 
-    private static Instant asEpochSecond(Object value) {
-        if (value instanceof Integer) {
-            return Instant.ofEpochSecond((Integer) value);
-        } else if (value instanceof Long) {
-            return Instant.ofEpochSecond((Long) value);
-        } else {
-            throw new IllegalArgumentException("Cannot convert " + value + " to a valid epoch second");
+    private static <T> T required(T value, String label) {
+        if (value == null) {
+            throw new IllegalArgumentException("Missing \"" + label + "\" in QR payload");
         }
+        return value;
     }
 
     public void assertNotExpiredOrNotYetValid() {
+        VerificationResult.firstFailureOf(this::checkValidityPeriod).throwIfInvalid();
+    }
+
+    public void assertTimeToLiveValid() {
+        VerificationResult.firstFailureOf(this::checkTimeToLive).throwIfInvalid();
+    }
+
+    public void assertDocumentSizeValid() {
+        VerificationResult.firstFailureOf(this::checkDocumentSize).throwIfInvalid();
+    }
+
+    /// Checks from cheapest to most expensive, so the first failing check is the only one paid for.
+    public void assertValid() {
+        check(new VerificationResult.Builder(false)).throwIfInvalid();
+    }
+
+    /// Runs the checks of [#assertValid()] and returns every failure, without throwing.
+    ///
+    /// The device signature is not checked when the document is too large to decode, and the
+    /// nonce is only recorded (see [#nonceStore]) when everything else is valid.
+    public VerificationResult check() {
+        return check(new VerificationResult.Builder(true));
+    }
+
+    private VerificationResult check(VerificationResult.Builder result) {
+        var start = Metrics.start();
+        try {
+            checkTimeToLive(result);
+            checkValidityPeriod(result);
+            checkDocumentSize(result);
+            if (!result.hasFailure(Rejection.TOO_LARGE)) {
+                checkDeviceSignature(result);
+            }
+            if (result.isValid()) {
+                checkNotReplayed(result);
+            }
+            return result.build();
+        } finally {
+            Metrics.stop(Stage.SIGNED_QR, start);
+        }
+    }
+
+    private void checkValidityPeriod(VerificationResult.Builder result) {
         if (allowedClockSkew.isNegative()) throw new IllegalArgumentException("The clock skew cannot be negative");
+        if (result.isDone()) {
+            return;
+        }
         var skewSeconds = allowedClockSkew.getSeconds();
         var now = clock.instant();
 
         var validToWithSkew = validTo.plusSeconds(skewSeconds);
         if (now.isAfter(validToWithSkew)) {
-            throw new SecurityException("QR code has expired at " + validTo);
+            result.fail(Stage.SIGNED_QR, Rejection.VALIDITY, "QR code has expired at " + validTo);
         }
 
         var validFromWithSkew = validFrom.minusSeconds(skewSeconds);
         if (now.isBefore(validFromWithSkew)) {
-            throw new SecurityException("QR code is not valid until " + validFrom);
+            result.fail(Stage.SIGNED_QR, Rejection.VALIDITY, "QR code is not valid until " + validFrom);
         }
     }
 
-    public void assertTimeToLiveValid() {
-        if (validTo.minus(maxAllowedTimeToLive).isAfter(validFrom)) {
-            throw new SecurityException("QR code lifetime is longer than " + maxAllowedTimeToLive.getSeconds() + " seconds");
+    private void checkTimeToLive(VerificationResult.Builder result) {
+        if (!result.isDone() && validTo.minus(maxAllowedTimeToLive).isAfter(validFrom)) {
+            result.fail(Stage.SIGNED_QR, Rejection.VALIDITY, "QR code lifetime is longer than " + maxAllowedTimeToLive.getSeconds() + " seconds");
         }
     }
 
-    public void assertValid() {
-        assertTimeToLiveValid();
-        assertNotExpiredOrNotYetValid();
-        assertDeviceSignatureValid();
+    private void checkDocumentSize(VerificationResult.Builder result) {
+        if (!result.isDone() && documentBytes.length() > maxDocumentSize) {
+            result.fail(Stage.SIGNED_QR, Rejection.TOO_LARGE, "QR code document is larger than " + maxDocumentSize + " bytes");
+        }
     }
 
-    private void assertDeviceSignatureValid() {
+    /// @return the document, decoded on the first call
+    public DocumentExt getDocument() {
+        if (document == null) {
+            var decoder = DOCUMENT_DECODER;
+            if (limits != DecodingLimits.DEFAULT) {
+                decoder = new DeviceResponseDecoder();
+                decoder.setLimits(limits);
+            }
+            document = decoder.decodeDocument(documentBytes);
+        }
+        return document;
+    }
+
+    private void checkDeviceSignature(VerificationResult.Builder result) {
+        if (result.isDone()) {
+            return;
+        }
+        DocumentExt document;
+        try {
+            document = getDocument();
+        } catch (IllegalArgumentException e) {
+            // Reported to Metrics by the decoder
+            result.add(new VerificationResult.Failure(Stage.DECODE, Rejection.MALFORMED, e.getMessage()));
+            return;
+        }
         var transcript = SessionTranscript.forSignedQR(validFrom, validTo, mdocGeneratedNonce);
-        document.assertSignatureValid(transcript);
+        VERIFIER.checkDeviceSignature(document, transcript, result);
+    }
+
+    /// Checked last, so only a QR code that is otherwise valid uses up its nonce. A nonce that
+    /// cannot be recorded, e.g. because the store is full during a replay flood, is rejected like a
+    /// replay.
+    private void checkNotReplayed(VerificationResult.Builder result) {
+        if (nonceStore == null) {
+            return;
+        }
+        boolean firstSeen;
+        try {
+            firstSeen = nonceStore.markSeen(mdocGeneratedNonce, validTo.plus(allowedClockSkew));
+        } catch (SecurityException e) {
+            result.fail(Stage.SIGNED_QR, Rejection.REPLAYED, e.getMessage());
+            return;
+        }
+        if (!firstSeen) {
+            result.fail(Stage.SIGNED_QR, Rejection.REPLAYED, "QR code has already been presented");
+        }
     }
 }
@@ -0,0 +1,172 @@
+package dk.gov.dktb.mdoc.model;
+
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import lombok.Setter;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// Reassembles multi-part Signed QR payloads from parts as they are scanned, for many scanning
+/// sessions at once.
+///
+/// Unlike [SignedQRPayload#fromMultipleParts(java.util.List)], parts are accepted one at a time,
+/// in any order and any number of times:
+///
+/// ```
+/// var payload = reassembler.accept(scannerId, scannedBytes);
+/// payload.ifPresent(this::verify);
+///```
+///
+/// Each part is checked against the parts already received in its session and copied into a
+/// buffer of `n` slots allocated on the first part. The [SignedQRPayload] is decoded from that
+/// buffer as soon as the last missing part arrives, and the session ends.
+///
+/// A part that contradicts the session (a different number of parts, or different content for a
+/// part number already received) ends the session with an [IllegalArgumentException], so the next
+/// scan starts over. Sessions that are not completed within [#sessionTimeToLive] are evicted.
+///
+/// @param <K> the session id, e.g. the scanner or the connection the parts arrive on
+@Setter
+public class SignedQRReassembler<K> {
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Sessions are evicted when they have not completed this long after their first part
+     */
+    private Duration sessionTimeToLive = Duration.ofSeconds(30);
+
+    /**
+     * Bounds the number of parts and the size of the reassembled payload
+     */
+    private DecodingLimits limits = DecodingLimits.DEFAULT;
+
+    private final Map<K, Session> sessions = new ConcurrentHashMap<>();
+
+    private volatile Instant nextEviction = Instant.MIN;
+
+    public Optional<SignedQRPayload> accept(K sessionId, byte[] payload) {
+        return accept(sessionId, ByteSlice.of(payload));
+    }
+
+    /// Adds one scanned part to the session.
+    ///
+    /// @param payload a PartialQRPayload
+    /// @return the reassembled payload if this was the last missing part, otherwise empty
+    /// @throws IllegalArgumentException if the part is malformed or contradicts the session
+    public Optional<SignedQRPayload> accept(K sessionId, ByteSlice payload) {
+        var now = clock.instant();
+        evictExpired(now);
+
+        var part = SignedQRPayload.Part.parse(payload, limits);
+        var session = sessions.compute(sessionId, (id, existing) ->
+                existing == null || existing.isExpired(now) ? new Session(part.count(), now.plus(sessionTimeToLive), limits) : existing);
+        ByteSlice complete;
+        try {
+            complete = session.add(part);
+        } catch (IllegalArgumentException e) {
+            sessions.remove(sessionId, session);
+            throw e;
+        }
+        if (complete == null) {
+            return Optional.empty();
+        }
+        sessions.remove(sessionId, session);
+        return Optional.of(new SignedQRPayload(complete, limits));
+    }
+
+    /// Discards the parts received in a session, e.g. when the scanner is reset.
+    public void cancel(K sessionId) {
+        sessions.remove(sessionId);
+    }
+
+    /// @return the number of sessions waiting for parts
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    private void evictExpired(Instant now) {
+        if (now.isBefore(nextEviction)) {
+            return;
+        }
+        nextEviction = now.plus(sessionTimeToLive);
+        sessions.values().removeIf(session -> session.isExpired(now));
+    }
+
+    /// The parts received so far. Part `i` is kept at `i * slotSize` until all have arrived, then
+    /// the parts are moved together at the start of the buffer.
+    private static final class Session {
+        private final int count;
+        private final Instant expiresAt;
+        private final DecodingLimits limits;
+        private final int[] lengths;
+        private int received;
+        private int slotSize;
+        private byte[] buffer;
+
+        Session(int count, Instant expiresAt, DecodingLimits limits) {
+            this.count = count;
+            this.expiresAt = expiresAt;
+            this.limits = limits;
+            this.lengths = new int[count];
+            Arrays.fill(lengths, -1);
+        }
+
+        boolean isExpired(Instant now) {
+            return !now.isBefore(expiresAt);
+        }
+
+        /// @return the concatenated parts if this was the last missing part, otherwise null
+        synchronized ByteSlice add(SignedQRPayload.Part part) {
+            if (received == count) {
+                // Completed by another thread, this is a repeated scan
+                return null;
+            }
+            if (part.count() != count) {
+                throw new IllegalArgumentException("Part " + part.index() + " is one of " + part.count() + " parts, expected " + count);
+            }
+            var index = part.index();
+            var content = part.content();
+            if (lengths[index] >= 0) {
+                if (!content.equals(new ByteSlice(buffer, index * slotSize, lengths[index]))) {
+                    throw new IllegalArgumentException("Part " + index + " differs from the part received before");
+                }
+                return null;
+            }
+
+            if (buffer == null || content.length() > slotSize) {
+                resize(content.length());
+            }
+            content.copyTo(buffer, index * slotSize);
+            lengths[index] = content.length();
+            if (++received < count) {
+                return null;
+            }
+
+            var position = 0;
+            for (int i = 0; i < count; i++) {
+                System.arraycopy(buffer, i * slotSize, buffer, position, lengths[i]);
+                position += lengths[i];
+            }
+            return new ByteSlice(buffer, 0, position);
+        }
+
+        /// Parts are usually of the same size, so this normally happens once, on the first part.
+        private void resize(int newSlotSize) {
+            var size = (long) count * newSlotSize;
+            limits.checkInputSize((int) Math.min(size, Integer.MAX_VALUE));
+            var newBuffer = new byte[(int) size];
+            for (int i = 0; i < count; i++) {
+                if (lengths[i] >= 0) {
+                    System.arraycopy(buffer, i * slotSize, newBuffer, i * newSlotSize, lengths[i]);
+                }
+            }
+            buffer = newBuffer;
+            slotSize = newSlotSize;
+        }
+    }
+}
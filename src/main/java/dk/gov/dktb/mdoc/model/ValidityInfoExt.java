@@ -39,7 +39,7 @@ public class ValidityInfoExt extends ValidityInfo {
         );
     }
 
-    private static ZonedDateTime asZonedDateTime(Object date) {
+    static ZonedDateTime asZonedDateTime(Object date) {
         if (date == null) return null;
         Instant instant = Instant.parse((String) date);
         return instant.atZone(ZoneId.of("UTC")); // or any other zone
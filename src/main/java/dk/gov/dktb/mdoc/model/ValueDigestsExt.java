@@ -1,5 +1,10 @@
 package dk.gov.dktb.mdoc.model;
 
+import com.authlete.cbor.CBORByteArray;
+import com.authlete.cbor.CBORPair;
+import com.authlete.cbor.CBORPairList;
+import com.authlete.cbor.CBORString;
+import com.authlete.cbor.CBORValue;
 import com.authlete.mdoc.DigestIDs;
 import com.authlete.mdoc.DigestIDsEntry;
 import com.authlete.mdoc.ValueDigests;
@@ -7,19 +12,30 @@ import com.authlete.mdoc.ValueDigestsEntry;
 import lombok.Getter;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
 @Getter
 public class ValueDigestsExt extends ValueDigests {
     private List<? extends ValueDigestsEntry> entries;
+    private final Map<String, Map<Integer, byte[]>> digests;
+
     public ValueDigestsExt(List<? extends ValueDigestsEntry> entries) {
+        this(entries, index(entries));
+    }
+
+    ValueDigestsExt(List<? extends ValueDigestsEntry> entries, Map<String, Map<Integer, byte[]>> digests) {
         super(entries);
         this.entries = entries;
+        this.digests = Collections.unmodifiableMap(digests);
     }
 
     public static ValueDigestsExt from(Map<String, Object> cbor) {
         var entries = new ArrayList<ValueDigestsEntry>();
+        var digests = new LinkedHashMap<String, Map<Integer, byte[]>>();
         for (Map.Entry<String, Object> entry : cbor.entrySet()) {
             var digestIds = new ArrayList<DigestIDsEntry>();
             var values = (Map<Integer, byte[]>)entry.getValue();
@@ -27,7 +43,31 @@ public class ValueDigestsExt extends ValueDigests {
                 digestIds.add(new DigestIDsEntry(id, values.get(id)));
             }
             entries.add(new ValueDigestsEntry(entry.getKey(), new DigestIDs(digestIds)));
+            digests.put(entry.getKey(), new HashMap<>(values));
+        }
+        return new ValueDigestsExt(entries, digests);
+    }
+
+    /// @return the digest the issuer signed for an item, or null if there is none
+    public byte[] getDigest(String nameSpace, int digestId) {
+        var nameSpaceDigests = digests.get(nameSpace);
+        return nameSpaceDigests == null ? null : nameSpaceDigests.get(digestId);
+    }
+
+    public boolean hasNameSpace(String nameSpace) {
+        return digests.containsKey(nameSpace);
+    }
+
+    private static Map<String, Map<Integer, byte[]>> index(List<? extends ValueDigestsEntry> entries) {
+        var result = new LinkedHashMap<String, Map<Integer, byte[]>>();
+        for (var entry : entries) {
+            var nameSpaceDigests = new HashMap<Integer, byte[]>();
+            for (CBORPair pair : ((CBORPairList) entry.getValue()).getPairs()) {
+                var digestId = ((Number) ((CBORValue<?>) pair.getKey()).getValue()).intValue();
+                nameSpaceDigests.put(digestId, ((CBORByteArray) pair.getValue()).getValue());
+            }
+            result.put(((CBORString) entry.getKey()).getValue(), nameSpaceDigests);
         }
-        return new ValueDigestsExt(entries);
+        return result;
     }
 }
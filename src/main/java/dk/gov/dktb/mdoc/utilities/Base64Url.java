@@ -1,14 +1,469 @@
 package dk.gov.dktb.mdoc.utilities;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Base64;
 
+/// Base64url (RFC 4648 section 5), as used for vp_tokens and other mdoc values in JSON and URLs.
+///
+/// Besides the `String` conversions, input can be decoded from a [CharSequence], a `byte[]` range
+/// or a [ByteBuffer] into a buffer the caller provides. Tokens that arrive as bytes, such as an HTTP
+/// body, do not need a `String` at all; they can even be decoded in place and handed to the CBOR
+/// decoder:
+///
+/// ```
+/// var deviceResponse = decoder.decode(Base64Url.decodeInPlace(body, 0, length));
+///```
+///
+/// Tokens too large to hold encoded and decoded at once are decoded chunk by chunk with a
+/// [Decoder]. In the other direction, an [Encoder] encodes bytes as they are written, e.g. a
+/// DeviceResponse being encoded into a vp_token.
+///
+/// Decoding accepts input with or without `=` padding, the same in every method: padding may
+/// only complete the final group of 4 characters (`==` after 2 characters, `=` after 3), and the
+/// bits of the last character that do not make up a byte must be zero. Other padding, characters
+/// outside the base64url alphabet and non-zero trailing bits are rejected with an
+/// [IllegalArgumentException]. Encoding into a buffer or an [Encoder] writes no padding, as JOSE
+/// and OID4VP expect.
 public class Base64Url {
+    private static final byte[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+            .getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        Arrays.fill(VALUES, (byte) -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            VALUES[ALPHABET[i]] = (byte) i;
+        }
+    }
+
     public static String encode(byte[] bytes) {
         return new String(Base64.getUrlEncoder().encode(bytes), StandardCharsets.UTF_8);
     }
 
     public static byte[] decode(String base64) {
-        return Base64.getUrlDecoder().decode(base64);
+        var end = withoutPadding(base64, 0, base64.length());
+        var output = new byte[decodedLength(end)];
+        decode(base64, 0, end, output, 0);
+        return output;
+    }
+
+    /// @return the number of characters `length` bytes encode to, without padding
+    public static int encodedLength(int length) {
+        var tail = length % 3;
+        return length / 3 * 4 + (tail == 0 ? 0 : tail + 1);
+    }
+
+    /// Encodes `input[offset, offset + length)` without padding into `output` from `outputOffset`.
+    ///
+    /// @return the number of characters written
+    public static int encode(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+        var encodedLength = encodedLength(length);
+        if (outputOffset < 0 || outputOffset > output.length - encodedLength) {
+            throw new IllegalArgumentException("Output has room for fewer than " + encodedLength + " characters");
+        }
+        var tail = offset + length - length % 3;
+        var position = encodeGroups(input, offset, tail, output, outputOffset);
+        encodeTail(input, tail, length % 3, output, position);
+        return encodedLength;
+    }
+
+    /// @return the number of bytes `length` characters of base64url without padding decode to
+    /// @throws IllegalArgumentException if no input has that length
+    public static int decodedLength(int length) {
+        if ((length & 3) == 1) {
+            throw new IllegalArgumentException("Base64url input of " + length + " characters is truncated");
+        }
+        return length / 4 * 3 + Math.max((length & 3) - 1, 0);
+    }
+
+    /// Decodes `input[start, end)` into `output` from `offset`.
+    ///
+    /// `output` may be `input` itself, as long as `offset` is not after `start`.
+    ///
+    /// @return the number of bytes written
+    public static int decode(byte[] input, int start, int end, byte[] output, int offset) {
+        end = withoutPadding(input, start, end);
+        var length = checkOutput(end - start, output, offset);
+        var tail = end - ((end - start) & 3);
+        var position = decodeGroups(input, start, tail, output, offset, 0);
+
+        var bits = 0;
+        for (int i = tail; i < end; i++) {
+            bits = bits << 6 | value(input[i]);
+        }
+        decodeTail(bits, end - tail, output, position, tail - start);
+        return length;
+    }
+
+    /// Decodes `input[start, end)` into `output` from `offset`.
+    ///
+    /// @return the number of bytes written
+    public static int decode(CharSequence input, int start, int end, byte[] output, int offset) {
+        end = withoutPadding(input, start, end);
+        var length = checkOutput(end - start, output, offset);
+        var tail = end - ((end - start) & 3);
+        var position = offset;
+        for (int i = start; i < tail; i += 4) {
+            var bits = value(input.charAt(i)) << 18 | value(input.charAt(i + 1)) << 12
+                    | value(input.charAt(i + 2)) << 6 | value(input.charAt(i + 3));
+            if (bits < 0) {
+                throw invalidCharacter(i - start);
+            }
+            output[position++] = (byte) (bits >> 16);
+            output[position++] = (byte) (bits >> 8);
+            output[position++] = (byte) bits;
+        }
+
+        var bits = 0;
+        for (int i = tail; i < end; i++) {
+            bits = bits << 6 | value(input.charAt(i));
+        }
+        decodeTail(bits, end - tail, output, position, tail - start);
+        return length;
+    }
+
+    /// Decodes the remaining bytes of `input` into `output`, advancing both positions.
+    ///
+    /// @throws BufferOverflowException if `output` has too little room
+    public static void decode(ByteBuffer input, ByteBuffer output) {
+        if (input.hasArray() && output.hasArray()) {
+            var start = input.arrayOffset() + input.position();
+            var end = withoutPadding(input.array(), start, input.arrayOffset() + input.limit());
+            if (decodedLength(end - start) > output.remaining()) {
+                throw new BufferOverflowException();
+            }
+            var written = decode(input.array(), start, end, output.array(), output.arrayOffset() + output.position());
+            input.position(input.limit());
+            output.position(output.position() + written);
+            return;
+        }
+
+        var decoder = new Decoder(ByteSink.of(output));
+        var chunk = new byte[Math.min(input.remaining(), Decoder.BLOCK_SIZE)];
+        while (input.hasRemaining()) {
+            var length = Math.min(chunk.length, input.remaining());
+            input.get(chunk, 0, length);
+            decoder.update(chunk, 0, length);
+        }
+        decoder.finish();
+    }
+
+    /// Decodes `buffer[offset, offset + length)` over itself, so no second buffer is needed.
+    ///
+    /// @return the decoded bytes, a view of `buffer` starting at `offset`
+    public static ByteSlice decodeInPlace(byte[] buffer, int offset, int length) {
+        return new ByteSlice(buffer, offset, decode(buffer, offset, offset + length, buffer, offset));
+    }
+
+    /// Decodes base64url that arrives in chunks, e.g. read from a stream, and writes the bytes to a
+    /// [ByteSink] in blocks. Chunks may be split anywhere, also inside a group of 4 characters or
+    /// the padding.
+    ///
+    /// ```
+    /// var decoder = new Base64Url.Decoder(ByteSink.of(out));
+    /// while ((read = in.read(chunk)) > 0) {
+    ///     decoder.update(chunk, 0, read);
+    /// }
+    /// decoder.finish();
+    ///```
+    ///
+    /// A decoder is not thread safe, and is done after [#finish()].
+    public static final class Decoder {
+        static final int BLOCK_SIZE = 6144;
+
+        private final ByteSink sink;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] pending = new byte[4];
+        private int pendingCount;
+        private int position;
+        private long consumed;
+        private int padding;
+        private boolean finished;
+
+        public Decoder(ByteSink sink) {
+            this.sink = sink;
+        }
+
+        public void update(byte[] input, int offset, int length) {
+            if (finished) {
+                throw new IllegalStateException("Decoder is finished");
+            }
+            var end = offset + length;
+            var i = offset;
+            while (i < end) {
+                if (pendingCount == 0 && padding == 0) {
+                    // Whole groups straight from the input, except one that may hold the padding
+                    var groups = Math.min((end - i) / 4, (block.length - position) / 3);
+                    if (groups > 0 && isPadded(input, i + 4 * (groups - 1))) {
+                        groups--;
+                    }
+                    if (groups > 0) {
+                        position = decodeGroups(input, i, i + 4 * groups, block, position, consumed + i - offset);
+                        i += 4 * groups;
+                        if (block.length - position < 3) {
+                            flush();
+                        }
+                        continue;
+                    }
+                }
+                accept(input[i], consumed + i - offset);
+                i++;
+            }
+            consumed += length;
+        }
+
+        public void update(byte[] input) {
+            update(input, 0, input.length);
+        }
+
+        /// Decodes the last incomplete group, if any, and writes what is left to the sink.
+        ///
+        /// @throws IllegalArgumentException if the input is truncated
+        public void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            if (padding > 0 && pendingCount + padding != 4) {
+                throw invalidCharacter(consumed - padding);
+            }
+            if (block.length - position < 3) {
+                flush();
+            }
+            var bits = 0;
+            for (int i = 0; i < pendingCount; i++) {
+                bits = bits << 6 | value(pending[i]);
+            }
+            position = decodeTail(bits, pendingCount, block, position, consumed - padding - pendingCount);
+            flush();
+        }
+
+        private void accept(byte symbol, long inputPosition) {
+            if (symbol == '=') {
+                if (pendingCount < 2 || pendingCount + padding == 4) {
+                    throw invalidCharacter(inputPosition);
+                }
+                padding++;
+                return;
+            }
+            if (padding > 0 || value(symbol) < 0) {
+                throw invalidCharacter(inputPosition);
+            }
+            pending[pendingCount++] = symbol;
+            if (pendingCount == 4) {
+                if (block.length - position < 3) {
+                    flush();
+                }
+                position = decodeGroups(pending, 0, 4, block, position, inputPosition - 3);
+                pendingCount = 0;
+            }
+        }
+
+        private void flush() {
+            if (position > 0) {
+                sink.write(block, 0, position);
+                position = 0;
+            }
+        }
+
+        private static boolean isPadded(byte[] input, int group) {
+            return input[group + 2] == '=' || input[group + 3] == '=';
+        }
+    }
+
+    /// Encodes bytes written to it, e.g. as a [ByteSink] (`encoder::update`), and writes the
+    /// characters to another [ByteSink] in blocks, so nothing is held in memory in full:
+    ///
+    /// ```
+    /// var encoder = new Base64Url.Encoder(ByteSink.of(out));
+    /// generator.writeDeviceResponse(transcript, encoder::update);
+    /// encoder.finish();
+    ///```
+    ///
+    /// An encoder is not thread safe, and is done after [#finish()].
+    public static final class Encoder {
+        static final int BLOCK_SIZE = 8192;
+
+        private final ByteSink sink;
+        private final byte[] block = new byte[BLOCK_SIZE];
+        private final byte[] pending = new byte[3];
+        private int pendingCount;
+        private int position;
+        private boolean finished;
+
+        public Encoder(ByteSink sink) {
+            this.sink = sink;
+        }
+
+        public void update(byte[] input, int offset, int length) {
+            if (finished) {
+                throw new IllegalStateException("Encoder is finished");
+            }
+            var end = offset + length;
+            var i = offset;
+            while (pendingCount > 0 && pendingCount < 3 && i < end) {
+                pending[pendingCount++] = input[i++];
+            }
+            if (pendingCount == 3) {
+                ensureRoom();
+                position = encodeGroups(pending, 0, 3, block, position);
+                pendingCount = 0;
+            }
+            while (end - i >= 3) {
+                ensureRoom();
+                var groups = Math.min((end - i) / 3, (block.length - position) / 4);
+                position = encodeGroups(input, i, i + 3 * groups, block, position);
+                i += 3 * groups;
+            }
+            while (i < end) {
+                pending[pendingCount++] = input[i++];
+            }
+        }
+
+        public void update(byte[] input) {
+            update(input, 0, input.length);
+        }
+
+        /// Encodes the last 1 or 2 bytes, if any, and writes what is left to the sink.
+        public void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            ensureRoom();
+            position = encodeTail(pending, 0, pendingCount, block, position);
+            if (position > 0) {
+                sink.write(block, 0, position);
+                position = 0;
+            }
+        }
+
+        private void ensureRoom() {
+            if (block.length - position < 4) {
+                sink.write(block, 0, position);
+                position = 0;
+            }
+        }
+    }
+
+    /// Encodes whole groups of 3 bytes.
+    ///
+    /// @return the position in `output` after the encoded characters
+    private static int encodeGroups(byte[] input, int start, int end, byte[] output, int position) {
+        for (int i = start; i < end; i += 3) {
+            var bits = (input[i] & 0xff) << 16 | (input[i + 1] & 0xff) << 8 | (input[i + 2] & 0xff);
+            output[position++] = ALPHABET[bits >>> 18];
+            output[position++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[position++] = ALPHABET[(bits >>> 6) & 0x3f];
+            output[position++] = ALPHABET[bits & 0x3f];
+        }
+        return position;
+    }
+
+    /// Encodes the 0, 1 or 2 bytes after the last whole group, without padding.
+    ///
+    /// @return the position in `output` after the encoded characters
+    private static int encodeTail(byte[] input, int start, int count, byte[] output, int position) {
+        if (count == 1) {
+            var bits = input[start] & 0xff;
+            output[position++] = ALPHABET[bits >>> 2];
+            output[position++] = ALPHABET[(bits << 4) & 0x3f];
+        } else if (count == 2) {
+            var bits = (input[start] & 0xff) << 8 | (input[start + 1] & 0xff);
+            output[position++] = ALPHABET[bits >>> 10];
+            output[position++] = ALPHABET[(bits >>> 4) & 0x3f];
+            output[position++] = ALPHABET[(bits << 2) & 0x3f];
+        }
+        return position;
+    }
+
+    /// Decodes whole groups of 4 characters without padding.
+    ///
+    /// @param inputPosition the position of `input[start]` in the whole input, for error messages
+    /// @return the position in `output` after the decoded bytes
+    private static int decodeGroups(byte[] input, int start, int end, byte[] output, int position, long inputPosition) {
+        for (int i = start; i < end; i += 4) {
+            // Any invalid character makes the group negative
+            var bits = value(input[i]) << 18 | value(input[i + 1]) << 12 | value(input[i + 2]) << 6 | value(input[i + 3]);
+            if (bits < 0) {
+                throw invalidCharacter(inputPosition + i - start);
+            }
+            output[position++] = (byte) (bits >> 16);
+            output[position++] = (byte) (bits >> 8);
+            output[position++] = (byte) bits;
+        }
+        return position;
+    }
+
+    /// Decodes the 0, 2 or 3 characters after the last whole group, whose values are in `bits`.
+    ///
+    /// @return the position in `output` after the decoded bytes
+    private static int decodeTail(int bits, int count, byte[] output, int position, long inputPosition) {
+        if (count == 1) {
+            throw new IllegalArgumentException("Base64url input is truncated");
+        }
+        if (bits < 0) {
+            throw invalidCharacter(inputPosition);
+        }
+        // 2 characters carry 4 bits and 3 characters 2 bits beyond the last byte
+        if ((bits & (count == 2 ? 0xf : 0x3)) != 0) {
+            throw new IllegalArgumentException("Non-zero trailing bits in base64url character at " + (inputPosition + count - 1));
+        }
+        if (count == 2) {
+            output[position++] = (byte) (bits >> 4);
+        } else if (count == 3) {
+            output[position++] = (byte) (bits >> 10);
+            output[position++] = (byte) (bits >> 2);
+        }
+        return position;
+    }
+
+    /// @return the 6 bit value of a base64url character, or -1
+    private static int value(int symbol) {
+        return (symbol & ~0x7f) == 0 ? VALUES[symbol] : -1;
+    }
+
+    /// @return the end of `input[start, end)` without its padding
+    private static int withoutPadding(byte[] input, int start, int end) {
+        var data = end;
+        while (data > start && input[data - 1] == '=') {
+            data--;
+        }
+        return checkPadding(start, data, end);
+    }
+
+    private static int withoutPadding(CharSequence input, int start, int end) {
+        var data = end;
+        while (data > start && input.charAt(data - 1) == '=') {
+            data--;
+        }
+        return checkPadding(start, data, end);
+    }
+
+    /// Checks that the padding `[data, end)` completes the final group of `[start, data)`.
+    ///
+    /// @return `data`
+    private static int checkPadding(int start, int data, int end) {
+        var tail = (data - start) & 3;
+        if (data < end && (tail < 2 || end - data != 4 - tail)) {
+            throw invalidCharacter(data - start);
+        }
+        return data;
+    }
+
+    /// @return the decoded length
+    private static int checkOutput(int inputLength, byte[] output, int offset) {
+        var length = decodedLength(inputLength);
+        if (offset < 0 || offset > output.length - length) {
+            throw new IllegalArgumentException("Output has room for fewer than " + length + " bytes");
+        }
+        return length;
+    }
+
+    private static IllegalArgumentException invalidCharacter(long position) {
+        return new IllegalArgumentException("Invalid base64url character at " + position);
     }
 }
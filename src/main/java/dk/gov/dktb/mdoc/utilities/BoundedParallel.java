@@ -0,0 +1,55 @@
+package dk.gov.dktb.mdoc.utilities;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+/// Runs a task per input of a batch with a bounded number running at a time.
+///
+/// The tasks run on the given executor or, when it is null, on [ForkJoinPool#commonPool()]. Its
+/// threads outlive the call, so the per-thread `Signature`, `MessageDigest` and `KeyFactory`
+/// instances of the verification and signing path stay warm between items and batches; a new
+/// thread per item would create them again for every item. The calling thread submits a task
+/// only when fewer than `maxConcurrency` are running, so a large batch does not queue all of its
+/// tasks at once.
+public final class BoundedParallel {
+    private BoundedParallel() {
+    }
+
+    /// Applies `task` to each of `inputs` and waits for all of them.
+    ///
+    /// @param executor runs the tasks, or null for the common pool
+    /// @return the results in the order of `inputs`
+    /// @throws RuntimeException the failure of the first task that failed, in the order of `inputs`
+    public static <T, R> List<R> map(List<? extends T> inputs, Function<? super T, ? extends R> task,
+                                     Executor executor, int maxConcurrency) {
+        var pool = executor != null ? executor : ForkJoinPool.commonPool();
+        var permits = new Semaphore(maxConcurrency);
+        var tasks = new ArrayList<CompletableFuture<R>>(inputs.size());
+        for (var input : inputs) {
+            permits.acquireUninterruptibly();
+            try {
+                tasks.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return task.apply(input);
+                    } finally {
+                        permits.release();
+                    }
+                }, pool));
+            } catch (RuntimeException e) {
+                permits.release();
+                throw e;
+            }
+        }
+        try {
+            return tasks.stream().map(CompletableFuture::join).toList();
+        } catch (CompletionException e) {
+            throw e.getCause() instanceof RuntimeException cause ? cause : e;
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package dk.gov.dktb.mdoc.utilities;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.Signature;
+import java.security.SignatureException;
+
+/// Destination for encodings that are written piece by piece instead of being built in memory,
+/// such as a [Signature] being verified, a [MessageDigest] or an [OutputStream].
+@FunctionalInterface
+public interface ByteSink {
+    void write(byte[] bytes, int offset, int length);
+
+    default void write(byte[] bytes) {
+        write(bytes, 0, bytes.length);
+    }
+
+    default void write(ByteSlice bytes) {
+        write(bytes.array(), bytes.offset(), bytes.length());
+    }
+
+    /// @param signature a signature initialized for signing or verification
+    static ByteSink of(Signature signature) {
+        return (bytes, offset, length) -> {
+            try {
+                signature.update(bytes, offset, length);
+            } catch (SignatureException e) {
+                throw new IllegalStateException("Signature is not initialized", e);
+            }
+        };
+    }
+
+    static ByteSink of(MessageDigest digest) {
+        return digest::update;
+    }
+
+    /// @throws java.nio.BufferOverflowException from [#write(byte[], int, int)] when `buffer` is full
+    static ByteSink of(ByteBuffer buffer) {
+        return buffer::put;
+    }
+
+    static ByteSink of(OutputStream out) {
+        return (bytes, offset, length) -> {
+            try {
+                out.write(bytes, offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+}
@@ -0,0 +1,121 @@
+package dk.gov.dktb.mdoc.utilities;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/// A read-only view of a region (offset and length) of a byte array.
+///
+/// The decoder hands out slices of its input instead of copying embedded byte strings, so a
+/// response is held in memory once no matter how many structures refer into it. The bytes are
+/// only copied when a caller asks for an array with [#toByteArray()]; [#asByteBuffer()] and
+/// [#writeTo(OutputStream)] give access without copying.
+///
+/// Equality and hash code are based on content, so slices of different arrays holding the same
+/// bytes are equal. The view assumes the underlying array is not modified.
+public final class ByteSlice {
+    public static final ByteSlice EMPTY = new ByteSlice(new byte[0], 0, 0);
+
+    private final byte[] array;
+    private final int offset;
+    private final int length;
+    private int hash;
+
+    public ByteSlice(byte[] array, int offset, int length) {
+        if (offset < 0 || length < 0 || offset > array.length - length) {
+            throw new IndexOutOfBoundsException("Slice [" + offset + ", " + offset + "+" + length + ") outside array of length " + array.length);
+        }
+        this.array = array;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public static ByteSlice of(byte[] array) {
+        return new ByteSlice(array, 0, array.length);
+    }
+
+    /// @return the underlying array; only the region [#offset()] to [#offset()] + [#length()]
+    /// belongs to this slice, and it must not be modified
+    public byte[] array() {
+        return array;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    public boolean isEmpty() {
+        return length == 0;
+    }
+
+    public byte get(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index " + index + " outside slice of length " + length);
+        }
+        return array[offset + index];
+    }
+
+    /// @return a view of part of this slice; `offset` is relative to the start of this slice
+    public ByteSlice slice(int offset, int length) {
+        if (offset < 0 || length < 0 || offset > this.length - length) {
+            throw new IndexOutOfBoundsException("Slice [" + offset + ", " + offset + "+" + length + ") outside slice of length " + this.length);
+        }
+        return new ByteSlice(array, this.offset + offset, length);
+    }
+
+    /// @return a read-only buffer over the same bytes, positioned at the start of the slice
+    public ByteBuffer asByteBuffer() {
+        return ByteBuffer.wrap(array, offset, length).slice().asReadOnlyBuffer();
+    }
+
+    /// @return a copy of the bytes in this slice
+    public byte[] toByteArray() {
+        return Arrays.copyOfRange(array, offset, offset + length);
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(array, offset, length);
+    }
+
+    /// Copies the slice into `destination` at `destinationOffset`.
+    ///
+    /// @return the number of bytes copied
+    public int copyTo(byte[] destination, int destinationOffset) {
+        System.arraycopy(array, offset, destination, destinationOffset, length);
+        return length;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ByteSlice that)) {
+            return false;
+        }
+        return Arrays.equals(array, offset, offset + length, that.array, that.offset, that.offset + that.length);
+    }
+
+    @Override
+    public int hashCode() {
+        var result = hash;
+        if (result == 0) {
+            result = 1;
+            for (int i = offset; i < offset + length; i++) {
+                result = 31 * result + array[i];
+            }
+            hash = result;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "ByteSlice[offset=" + offset + ", length=" + length + "]";
+    }
+}
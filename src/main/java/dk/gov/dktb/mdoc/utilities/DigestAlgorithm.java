@@ -0,0 +1,149 @@
+package dk.gov.dktb.mdoc.utilities;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+
+/// The hash algorithms an MSO `digestAlgorithm` may name (which are also their JCA names), with
+/// one [MessageDigest] per algorithm and thread.
+///
+/// `MessageDigest.getInstance` looks up a provider and allocates on every call, which shows when
+/// hashing many small inputs such as IssuerSignedItemBytes. Here the digest is reused, and input is
+/// hashed from slices or buffers without copying:
+///
+/// ```
+/// var digest = DigestAlgorithm.SHA_256.digest(itemBytes);
+/// var matches = DigestAlgorithm.fromName(mso.getDigestAlgorithm()).matches(itemBytes, expected);
+///```
+///
+/// The methods are safe to call from any thread. Callers that need to hash incrementally take a
+/// [#newMessageDigest()] of their own.
+@Getter
+public enum DigestAlgorithm {
+    SHA_256("SHA-256", 32),
+    SHA_384("SHA-384", 48),
+    SHA_512("SHA-512", 64);
+
+    private final String jcaName;
+    private final int length;
+
+    @Getter(AccessLevel.NONE)
+    private final ThreadLocal<State> state;
+
+    DigestAlgorithm(String jcaName, int length) {
+        this.jcaName = jcaName;
+        this.length = length;
+        this.state = ThreadLocal.withInitial(() -> new State(newMessageDigest(), new byte[length]));
+    }
+
+    /// @param name the algorithm name as in an MSO, e.g. `SHA-256`
+    /// @throws SecurityException if the algorithm is not supported
+    public static DigestAlgorithm fromName(String name) {
+        var algorithm = find(name);
+        if (algorithm == null) {
+            throw new SecurityException("Unsupported digest algorithm: " + name);
+        }
+        return algorithm;
+    }
+
+    /// @return the algorithm, or null if it is not supported
+    public static DigestAlgorithm find(String name) {
+        for (var algorithm : values()) {
+            if (algorithm.jcaName.equals(name)) {
+                return algorithm;
+            }
+        }
+        return null;
+    }
+
+    public MessageDigest newMessageDigest() {
+        try {
+            return MessageDigest.getInstance(jcaName);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public byte[] digest(byte[] input) {
+        return digest(ByteSlice.of(input));
+    }
+
+    public byte[] digest(ByteSlice input) {
+        var digest = state.get().digest();
+        digest.update(input.array(), input.offset(), input.length());
+        return digest.digest();
+    }
+
+    /// Hashes the remaining bytes of `input`, leaving its position at its limit.
+    public byte[] digest(ByteBuffer input) {
+        var digest = state.get().digest();
+        digest.update(input);
+        return digest.digest();
+    }
+
+    /// Hashes `input` into `output` at `offset`, without allocating.
+    ///
+    /// @return the number of bytes written, [#length]
+    /// @throws IllegalArgumentException if `output` has fewer than [#length] bytes from `offset`
+    public int digest(ByteSlice input, byte[] output, int offset) {
+        checkOutput(output, offset, 1);
+        var digest = state.get().digest();
+        digest.update(input.array(), input.offset(), input.length());
+        return finish(digest, output, offset);
+    }
+
+    /// Hashes each of `inputs` separately, writing the digests one after another into `output`
+    /// from `offset`: the digest of `inputs[i]` starts at `offset + i * length`.
+    ///
+    /// @return the number of bytes written
+    public int digestEach(List<ByteSlice> inputs, byte[] output, int offset) {
+        checkOutput(output, offset, inputs.size());
+        var digest = state.get().digest();
+        var position = offset;
+        for (var input : inputs) {
+            digest.update(input.array(), input.offset(), input.length());
+            position += finish(digest, output, position);
+        }
+        return position - offset;
+    }
+
+    /// @return the digests of each of `inputs`, concatenated, see [#digestEach(List, byte\[\], int)]
+    public byte[] digestEach(List<ByteSlice> inputs) {
+        var output = new byte[inputs.size() * length];
+        digestEach(inputs, output, 0);
+        return output;
+    }
+
+    /// Compares the digest of `input` with `expected` in time independent of where they differ.
+    public boolean matches(ByteSlice input, byte[] expected) {
+        var state = this.state.get();
+        var digest = state.digest();
+        digest.update(input.array(), input.offset(), input.length());
+        finish(digest, state.output(), 0);
+        return MessageDigest.isEqual(expected, state.output());
+    }
+
+    /// Checked before hashing, so a digest is never left holding input when the output is too small.
+    private void checkOutput(byte[] output, int offset, int digests) {
+        if (offset < 0 || (long) offset + (long) digests * length > output.length) {
+            throw new IllegalArgumentException("Output has room for fewer than " + digests + " " + jcaName + " digests");
+        }
+    }
+
+    private int finish(MessageDigest digest, byte[] output, int offset) {
+        try {
+            return digest.digest(output, offset, length);
+        } catch (DigestException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /// The digest of a thread and a buffer for [#matches(ByteSlice, byte\[\])].
+    private record State(MessageDigest digest, byte[] output) {
+    }
+}
@@ -1,14 +1,8 @@
 package dk.gov.dktb.mdoc.utilities;
 
-import lombok.SneakyThrows;
-import lombok.val;
-
-import java.security.MessageDigest;
-
 public class SHA256 {
-    @SneakyThrows
+    /// @see DigestAlgorithm#SHA_256
     public static byte[] digest(byte[] input) {
-        val digest = MessageDigest.getInstance("SHA-256");
-        return digest.digest(input);
+        return DigestAlgorithm.SHA_256.digest(input);
     }
 }
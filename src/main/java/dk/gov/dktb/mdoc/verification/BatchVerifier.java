@@ -0,0 +1,129 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
+import dk.gov.dktb.mdoc.model.COSESign1Ext;
+import dk.gov.dktb.mdoc.model.DeviceResponseDecoder;
+import dk.gov.dktb.mdoc.model.DeviceResponseExt;
+import dk.gov.dktb.mdoc.model.DocumentExt;
+import dk.gov.dktb.mdoc.model.IssuerSignedExt;
+import dk.gov.dktb.mdoc.model.SessionTranscript;
+import dk.gov.dktb.mdoc.utilities.BoundedParallel;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+/// Verifies many DeviceResponses at once, e.g. a burst of presentations at an entry gate.
+///
+/// Each item is decoded and fully verified (issuer signature, value digests, device signature)
+/// as a task on [#executor], the common [java.util.concurrent.ForkJoinPool] by default, with at
+/// most [#maxConcurrency] tasks running at a time. Work shared between items of a batch is done once: an issuerAuth that
+/// occurs in several items, i.e. the same MSO signed with the same certificate, is verified once
+/// per batch, and issuer keys are cached by the [MdocVerifier]. When the verifier has a
+/// [VerifiedIssuerCache], the issuer checks go through it instead, so they are also shared with
+/// earlier batches and single verifications.
+///
+/// Failures are reported per item as a [VerificationResult] holding the first failure of the item;
+/// one invalid presentation does not affect the others.
+@Setter
+public class BatchVerifier {
+    private MdocVerifier verifier = new MdocVerifier();
+
+    private DeviceResponseDecoder decoder = new DeviceResponseDecoder();
+
+    /**
+     * Executor running the verification tasks, see {@link BoundedParallel#map}
+     */
+    private Executor executor;
+
+    /**
+     * Upper bound on the number of items verified at the same time
+     */
+    private int maxConcurrency = Runtime.getRuntime().availableProcessors();
+
+    /// A DeviceResponse to verify and the session transcript it was presented in.
+    public record Item(ByteSlice deviceResponse, SessionTranscript sessionTranscript) {
+        public Item(byte[] deviceResponse, SessionTranscript sessionTranscript) {
+            this(ByteSlice.of(deviceResponse), sessionTranscript);
+        }
+    }
+
+    /// The outcome for one item of a batch.
+    ///
+    /// @param deviceResponse the decoded response, or null if decoding failed
+    /// @param verification why the item is invalid, if it is
+    public record Result(DeviceResponseExt deviceResponse, VerificationResult verification) {
+        public boolean isValid() {
+            return verification.isValid();
+        }
+    }
+
+    /// Verifies all items and waits for the results.
+    ///
+    /// @return one result per item, in the order of `items`
+    public List<Result> verify(List<Item> items) {
+        var batch = new Batch();
+        return BoundedParallel.map(items, batch::verify, executor, maxConcurrency);
+    }
+
+    /// State shared by the items of one batch.
+    private class Batch {
+        private final Map<ByteSlice, CompletableFuture<VerificationResult>> issuerSignatures = new ConcurrentHashMap<>();
+
+        Result verify(Item item) {
+            var result = new VerificationResult.Builder(false);
+            DeviceResponseExt deviceResponse;
+            try {
+                deviceResponse = decoder.decode(item.deviceResponse());
+            } catch (RuntimeException e) {
+                // Reported to Metrics by the decoder
+                result.add(new VerificationResult.Failure(Stage.DECODE, Rejection.MALFORMED, e.getMessage()));
+                return new Result(null, result.build());
+            }
+            var documents = deviceResponse.getDocuments();
+            for (int i = 0; documents != null && i < documents.size() && !result.isDone(); i++) {
+                check(deviceResponse.getDocument(i), item.sessionTranscript(), result);
+            }
+            return new Result(deviceResponse, result.build());
+        }
+
+        private void check(DocumentExt document, SessionTranscript sessionTranscript, VerificationResult.Builder result) {
+            if (verifier.getIssuerCache() != null) {
+                verifier.checkIssuerSigned(document.getIssuerSigned(), result);
+            } else {
+                checkIssuerSignature(document.getIssuerSigned(), result);
+                verifier.checkValueDigests(document.getIssuerSigned(), result);
+            }
+            verifier.checkDeviceSignature(document, sessionTranscript, result);
+        }
+
+        private void checkIssuerSignature(IssuerSignedExt issuerSigned, VerificationResult.Builder result) {
+            var encoded = ((COSESign1Ext) issuerSigned.getIssuerAuth()).getEncoded();
+            if (encoded == null) {
+                verifier.checkIssuerSignature(issuerSigned, result);
+                return;
+            }
+            var outcome = new CompletableFuture<VerificationResult>();
+            var existing = issuerSignatures.putIfAbsent(encoded, outcome);
+            if (existing == null) {
+                var checked = result.newBuilder();
+                try {
+                    verifier.checkIssuerSignature(issuerSigned, checked);
+                    outcome.complete(checked.build());
+                } catch (Throwable e) {
+                    // Items waiting for this outcome fail as well rather than wait forever
+                    outcome.completeExceptionally(e);
+                    throw e;
+                }
+                existing = outcome;
+            }
+            // Reported to Metrics once, by the item that checked it
+            result.addAll(existing.join());
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.utilities.Base64Url;
+import lombok.Setter;
+import lombok.SneakyThrows;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+
+/// [NonceStore] that survives restarts: nonces are checked in an [InMemoryNonceStore] and the
+/// accepted ones are appended to a file, which is read back when the store is opened.
+///
+/// The file has one line per nonce, `<expiry epoch second> <base64url nonce>`. Expired lines are
+/// dropped when the store is opened, by rewriting the file. Appends are flushed to the operating
+/// system at once; set [#sync] to also force them to the device.
+public class FileNonceStore implements NonceStore, Closeable {
+    private final InMemoryNonceStore nonces;
+    private final FileChannel channel;
+
+    /**
+     * Force every append to the storage device, surviving power loss and not only process restarts
+     */
+    @Setter
+    private boolean sync;
+
+    public FileNonceStore(Path file) {
+        this(file, new InMemoryNonceStore());
+    }
+
+    /// @param nonces the in-memory store to check and load nonces into, e.g. with a custom clock
+    @SneakyThrows
+    public FileNonceStore(Path file, InMemoryNonceStore nonces) {
+        this.nonces = nonces;
+        load(file);
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    @Override
+    @SneakyThrows
+    public boolean markSeen(String nonce, Instant expiresAt) {
+        if (!nonces.markSeen(nonce, expiresAt)) {
+            return false;
+        }
+        var line = expiresAt.getEpochSecond() + " " + Base64Url.encode(nonce.getBytes(StandardCharsets.UTF_8)) + "\n";
+        var buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        synchronized (channel) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            if (sync) {
+                channel.force(false);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        channel.close();
+    }
+
+    /// Loads the unexpired nonces and rewrites the file with only those. Malformed lines, e.g.
+    /// left by a crash or a full disk, are dropped rather than failing to open the store.
+    @SneakyThrows
+    private void load(Path file) {
+        if (!Files.exists(file)) {
+            return;
+        }
+        var lines = Files.readString(file, StandardCharsets.US_ASCII).split("\n", -1);
+        var now = nonces.now();
+        var retained = new ArrayList<String>();
+        // The last element follows the last newline: empty, or a torn write that is ignored
+        for (int i = 0; i < lines.length - 1; i++) {
+            var line = lines[i];
+            var separator = line.indexOf(' ');
+            Instant expiresAt;
+            String nonce;
+            try {
+                expiresAt = Instant.ofEpochSecond(Long.parseLong(line.substring(0, separator)));
+                nonce = new String(Base64Url.decode(line.substring(separator + 1)), StandardCharsets.UTF_8);
+            } catch (RuntimeException e) {
+                continue;
+            }
+            if (expiresAt.isAfter(now)) {
+                nonces.markSeen(nonce, expiresAt);
+                retained.add(line);
+            }
+        }
+        var temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        Files.write(temporary, retained, StandardCharsets.US_ASCII);
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
@@ -0,0 +1,94 @@
+package dk.gov.dktb.mdoc.verification;
+
+import lombok.Setter;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/// [NonceStore] held in memory, safe for concurrent use without locking.
+///
+/// Nonces are kept in a [ConcurrentHashMap] with their expiry, and in addition listed in time
+/// buckets of [#bucketSeconds] by expiry. Expired nonces are evicted a bucket at a time, by
+/// whichever caller first notices that a bucket has expired, so eviction never scans the whole map.
+///
+/// Memory is bounded by [#maxEntries]. When the store is full of nonces that have not expired,
+/// [#markSeen(String, Instant)] fails with a [SecurityException] rather than forgetting a nonce and
+/// allowing a replay.
+@Setter
+public class InMemoryNonceStore implements NonceStore {
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Granularity of eviction; a nonce is kept for up to this much longer than its expiry
+     */
+    private long bucketSeconds = 10;
+
+    /**
+     * Upper bound on the number of nonces remembered
+     */
+    private int maxEntries = 1_000_000;
+
+    private final Map<String, Long> expiries = new ConcurrentHashMap<>();
+
+    private final Map<Long, Queue<String>> buckets = new ConcurrentHashMap<>();
+
+    private final AtomicLong evictedBefore = new AtomicLong(Long.MIN_VALUE);
+
+    @Override
+    public boolean markSeen(String nonce, Instant expiresAt) {
+        var now = clock.instant().getEpochSecond();
+        evictExpired(now);
+
+        var expiry = expiresAt.getEpochSecond();
+        if (expiry <= now) {
+            // Already expired, there is nothing to protect against
+            return true;
+        }
+        if (expiries.size() >= maxEntries) {
+            throw new SecurityException("Nonce store is full");
+        }
+
+        var previous = expiries.putIfAbsent(nonce, expiry);
+        if (previous != null && (previous > now || !expiries.replace(nonce, previous, expiry))) {
+            return false;
+        }
+        buckets.computeIfAbsent(bucket(expiry), bucket -> new ConcurrentLinkedQueue<>()).add(nonce);
+        return true;
+    }
+
+    /// @return the number of nonces currently remembered
+    public int size() {
+        return expiries.size();
+    }
+
+    Instant now() {
+        return clock.instant();
+    }
+
+    private void evictExpired(long now) {
+        var current = bucket(now);
+        var before = evictedBefore.get();
+        if (before >= current || !evictedBefore.compareAndSet(before, current)) {
+            return;
+        }
+        // Buckets before the current one hold only expired nonces
+        buckets.keySet().removeIf(bucket -> {
+            if (bucket >= current) {
+                return false;
+            }
+            for (var nonce : buckets.get(bucket)) {
+                expiries.computeIfPresent(nonce, (key, expiry) -> expiry <= now ? null : expiry);
+            }
+            return true;
+        });
+    }
+
+    private long bucket(long epochSecond) {
+        return Math.floorDiv(epochSecond, bucketSeconds);
+    }
+}
@@ -0,0 +1,185 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.metrics.CacheName;
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import lombok.Setter;
+import lombok.SneakyThrows;
+
+import java.io.ByteArrayInputStream;
+import java.security.InvalidAlgorithmParameterException;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.security.cert.CertPathValidator;
+import java.security.cert.CertPathValidatorException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.security.cert.PKIXParameters;
+import java.security.cert.TrustAnchor;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/// Validates the x5chain of an issuerAuth against IACA trust anchors and returns the key the
+/// issuer signature must verify with.
+///
+/// A chain is validated with PKIX against the anchors [TrustAnchorIndex] finds for it, until one
+/// succeeds; the signing certificate must allow digital signatures. Revocation is not checked unless
+/// [#revocationEnabled] is set.
+///
+/// Successfully validated chains are cached (keyed by the certificate bytes) together with the
+/// period in which all their certificates and the anchor are valid, so later presentations from the
+/// same issuer skip path building and only compare the time. The cache holds at most
+/// [#maxCachedChains] chains, evicting the least recently used.
+@Setter
+public class IssuerChainValidator {
+    private static final int KEY_USAGE_DIGITAL_SIGNATURE = 0;
+
+    private final TrustAnchorIndex trustAnchors;
+
+    private Clock clock = Clock.systemUTC();
+
+    private boolean revocationEnabled;
+
+    private int maxCachedChains = 256;
+
+    private final Map<List<ByteSlice>, ValidatedChain> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    public IssuerChainValidator(TrustAnchorIndex trustAnchors) {
+        this.trustAnchors = trustAnchors;
+    }
+
+    /// @param chain DER encoded certificates, signing certificate first, as in x5chain
+    /// @return the public key of the signing certificate
+    /// @throws SecurityException if the chain is not valid or not issued by a trust anchor
+    public PublicKey validate(List<byte[]> chain) {
+        if (chain.isEmpty()) {
+            throw new SecurityException("Issuer certificate chain is empty");
+        }
+        var key = chain.stream().map(ByteSlice::of).toList();
+        var now = clock.instant();
+
+        var cached = getCached(key);
+        var hit = cached != null && cached.isValidAt(now);
+        Metrics.cacheLookup(CacheName.ISSUER_CHAIN, hit);
+        if (hit) {
+            return cached.publicKey();
+        }
+
+        var validated = validate(parse(chain), now);
+        putCached(key, validated);
+        return validated.publicKey();
+    }
+
+    /// @return the number of chains currently cached
+    public int getCachedChainCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    private ValidatedChain validate(List<X509Certificate> chain, Instant now) {
+        var signingCertificate = chain.getFirst();
+        var keyUsage = signingCertificate.getKeyUsage();
+        if (keyUsage != null && !keyUsage[KEY_USAGE_DIGITAL_SIGNATURE]) {
+            throw new SecurityException("Issuer certificate does not allow digital signatures");
+        }
+
+        // The anchor may or may not be included at the end of x5chain
+        var path = new ArrayList<>(chain);
+        List<X509Certificate> candidates;
+        if (path.size() > 1 && trustAnchors.contains(path.getLast())) {
+            candidates = List.of(path.removeLast());
+        } else {
+            candidates = trustAnchors.findIssuers(path.getLast());
+        }
+        if (candidates.isEmpty()) {
+            throw new SecurityException("No trust anchor for issuer " + path.getLast().getIssuerX500Principal().getName());
+        }
+
+        X509Certificate anchor = null;
+        CertPathValidatorException failure = null;
+        for (int i = 0; i < candidates.size() && anchor == null; i++) {
+            try {
+                validate(path, candidates.get(i), now);
+                anchor = candidates.get(i);
+            } catch (CertPathValidatorException e) {
+                failure = e;
+            }
+        }
+        if (anchor == null) {
+            throw new SecurityException("Issuer certificate chain is invalid: " + failure.getMessage(), failure);
+        }
+
+        var notBefore = anchor.getNotBefore().toInstant();
+        var notAfter = anchor.getNotAfter().toInstant();
+        for (var certificate : path) {
+            notBefore = max(notBefore, certificate.getNotBefore().toInstant());
+            notAfter = min(notAfter, certificate.getNotAfter().toInstant());
+        }
+        return new ValidatedChain(signingCertificate.getPublicKey(), notBefore, notAfter);
+    }
+
+    private void validate(List<X509Certificate> path, X509Certificate anchor, Instant now) throws CertPathValidatorException {
+        try {
+            var parameters = new PKIXParameters(Set.of(new TrustAnchor(anchor, null)));
+            parameters.setRevocationEnabled(revocationEnabled);
+            parameters.setDate(Date.from(now));
+            var certPath = CertificateFactory.getInstance("X.509").generateCertPath(path);
+            CertPathValidator.getInstance("PKIX").validate(certPath, parameters);
+        } catch (CertificateException | InvalidAlgorithmParameterException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @SneakyThrows
+    private static List<X509Certificate> parse(List<byte[]> chain) {
+        var factory = CertificateFactory.getInstance("X.509");
+        var certificates = new ArrayList<X509Certificate>(chain.size());
+        for (var certificate : chain) {
+            try {
+                certificates.add((X509Certificate) factory.generateCertificate(new ByteArrayInputStream(certificate)));
+            } catch (CertificateException e) {
+                throw new SecurityException("Issuer certificate cannot be parsed", e);
+            }
+        }
+        return certificates;
+    }
+
+    private ValidatedChain getCached(List<ByteSlice> key) {
+        synchronized (cache) {
+            return cache.get(key);
+        }
+    }
+
+    private void putCached(List<ByteSlice> key, ValidatedChain validated) {
+        synchronized (cache) {
+            cache.put(key, validated);
+            var eldest = cache.keySet().iterator();
+            while (cache.size() > maxCachedChains && eldest.hasNext()) {
+                eldest.next();
+                eldest.remove();
+            }
+        }
+    }
+
+    private static Instant max(Instant a, Instant b) {
+        return a.isAfter(b) ? a : b;
+    }
+
+    private static Instant min(Instant a, Instant b) {
+        return a.isBefore(b) ? a : b;
+    }
+
+    private record ValidatedChain(PublicKey publicKey, Instant notBefore, Instant notAfter) {
+        boolean isValidAt(Instant time) {
+            return !time.isBefore(notBefore) && !time.isAfter(notAfter);
+        }
+    }
+}
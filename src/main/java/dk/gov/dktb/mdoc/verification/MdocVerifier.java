@@ -0,0 +1,313 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.cose.CoseAlgorithm;
+import dk.gov.dktb.mdoc.cose.CoseKeys;
+import dk.gov.dktb.mdoc.cose.DetachedPayload;
+import dk.gov.dktb.mdoc.cose.SigStructure;
+import dk.gov.dktb.mdoc.metrics.CacheName;
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
+import dk.gov.dktb.mdoc.model.COSESign1Ext;
+import dk.gov.dktb.mdoc.model.DeviceAuthentication;
+import dk.gov.dktb.mdoc.model.DeviceKeyInfoExt;
+import dk.gov.dktb.mdoc.model.DeviceResponseExt;
+import dk.gov.dktb.mdoc.model.DocumentExt;
+import dk.gov.dktb.mdoc.model.IssuerNameSpacesExt;
+import dk.gov.dktb.mdoc.model.IssuerSignedExt;
+import dk.gov.dktb.mdoc.model.SessionTranscript;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.SneakyThrows;
+
+import java.io.ByteArrayInputStream;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.security.cert.CertificateException;
+import java.security.cert.CertificateFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// Long-lived verifier for mdoc signatures, meant to be created once and shared between threads.
+///
+/// Compared to verifying with a fresh `COSEVerifier` per signature, it
+///
+/// - caches issuer public keys by the DER encoding of the signing certificate, so a certificate
+///   is parsed once rather than on every presentation,
+/// - converts device keys with precomputed curve parameters ([CoseKeys]),
+/// - keeps one JCA [Signature] per algorithm and thread instead of looking up a provider per call, and
+/// - feeds the Sig_structure straight into the signature ([SigStructure]); for device signatures
+///   that includes the DeviceAuthenticationBytes, which are never encoded in memory.
+///
+/// The issuer key is taken from the x5chain signing certificate. It is only validated against
+/// trust anchors when an [IssuerChainValidator] is configured.
+///
+/// With a [VerifiedIssuerCache], a credential presented again within the cache's time to live
+/// only has its device signature verified (and its value digests, if it discloses other items).
+///
+/// The `verify*` methods throw at the first failure. The `check*` methods return the failures as a
+/// [VerificationResult] instead, also for malformed certificates and keys, and do not throw;
+/// `check(document, transcript)` runs every check even after one failed.
+@Setter
+public class MdocVerifier {
+    private static final ThreadLocal<Map<CoseAlgorithm, Signature>> SIGNATURES =
+            ThreadLocal.withInitial(() -> new EnumMap<>(CoseAlgorithm.class));
+
+    /**
+     * Checks the disclosed items in {@link #verify(DocumentExt, SessionTranscript)}
+     */
+    private ValueDigestVerifier valueDigestVerifier = new ValueDigestVerifier();
+
+    /**
+     * The issuer key cache is cleared when it grows beyond this number of certificates
+     */
+    private int maxCachedIssuerKeys = 1024;
+
+    /**
+     * Validates the x5chain of issuerAuth against trust anchors. When null, the key of the x5chain
+     * signing certificate is used without validation.
+     */
+    private IssuerChainValidator chainValidator;
+
+    /**
+     * Skips the issuer checks of issuerAuths verified before. When null, every document is fully verified.
+     */
+    @Getter
+    private VerifiedIssuerCache issuerCache;
+
+    private final Map<ByteSlice, PublicKey> issuerKeys = new ConcurrentHashMap<>();
+
+    /// Verifies every document of a response, see [#verify(DocumentExt, SessionTranscript)].
+    public void verify(DeviceResponseExt deviceResponse, SessionTranscript sessionTranscript) {
+        VerificationResult.firstFailureOf(result -> check(deviceResponse, sessionTranscript, result)).throwIfInvalid();
+    }
+
+    /// Verifies the issuer signature, the value digests of the disclosed items and the device signature.
+    ///
+    /// @throws SecurityException if any of them is invalid
+    public void verify(DocumentExt document, SessionTranscript sessionTranscript) {
+        VerificationResult.firstFailureOf(result -> check(document, sessionTranscript, result)).throwIfInvalid();
+    }
+
+    /// Runs every check of every document of a response and returns all failures, without throwing.
+    public VerificationResult check(DeviceResponseExt deviceResponse, SessionTranscript sessionTranscript) {
+        var result = new VerificationResult.Builder(true);
+        check(deviceResponse, sessionTranscript, result);
+        return result.build();
+    }
+
+    /// Runs every check of [#verify(DocumentExt, SessionTranscript)] and returns all failures,
+    /// without throwing.
+    public VerificationResult check(DocumentExt document, SessionTranscript sessionTranscript) {
+        var result = new VerificationResult.Builder(true);
+        check(document, sessionTranscript, result);
+        return result.build();
+    }
+
+    public void check(DeviceResponseExt deviceResponse, SessionTranscript sessionTranscript, VerificationResult.Builder result) {
+        var documents = deviceResponse.getDocuments();
+        for (int i = 0; documents != null && i < documents.size() && !result.isDone(); i++) {
+            check(deviceResponse.getDocument(i), sessionTranscript, result);
+        }
+    }
+
+    public void check(DocumentExt document, SessionTranscript sessionTranscript, VerificationResult.Builder result) {
+        checkIssuerSigned(document.getIssuerSigned(), result);
+        checkDeviceSignature(document, sessionTranscript, result);
+    }
+
+    /// Verifies the issuer signature and the value digests, or looks them up in [#issuerCache].
+    ///
+    /// Documents that were not decoded from CBOR have no encoded issuerAuth to look up, and are
+    /// always verified in full.
+    public void verifyIssuerSigned(IssuerSignedExt issuerSigned) {
+        VerificationResult.firstFailureOf(result -> checkIssuerSigned(issuerSigned, result)).throwIfInvalid();
+    }
+
+    public void checkIssuerSigned(IssuerSignedExt issuerSigned, VerificationResult.Builder result) {
+        var issuerAuth = ((COSESign1Ext) issuerSigned.getIssuerAuth()).getEncoded();
+        var nameSpaces = issuerSigned.getNameSpaces() instanceof IssuerNameSpacesExt ext ? ext.getEncoded() : null;
+        if (issuerCache == null || issuerAuth == null || nameSpaces == null) {
+            checkIssuerSignature(issuerSigned, result);
+            checkValueDigests(issuerSigned, result);
+            return;
+        }
+
+        var cached = issuerCache.get(issuerAuth);
+        if (cached == null) {
+            var checked = result.newBuilder();
+            var issuerKey = checkIssuerSignature(issuerSigned, checked);
+            checkValueDigests(issuerSigned, checked);
+            if (checked.isValid()) {
+                issuerCache.put(issuerAuth, issuerSigned.getMobileSecurityObject(), issuerKey, nameSpaces);
+            }
+            result.addAll(checked.build());
+        } else if (!nameSpaces.equals(cached.verifiedNameSpaces())) {
+            checkValueDigests(issuerSigned, result);
+        }
+    }
+
+    public void verifyIssuerSignature(IssuerSignedExt issuerSigned) {
+        VerificationResult.firstFailureOf(result -> checkIssuerSignature(issuerSigned, result)).throwIfInvalid();
+    }
+
+    /// @return the key the issuer signature verified with, or null if it failed
+    public PublicKey checkIssuerSignature(IssuerSignedExt issuerSigned, VerificationResult.Builder result) {
+        if (result.isDone()) {
+            return null;
+        }
+        var start = Metrics.start();
+        try {
+            var issuerAuth = (COSESign1Ext) issuerSigned.getIssuerAuth();
+            if (issuerAuth.getPayloadBytes() == null) {
+                result.fail(Stage.ISSUER_SIGNATURE, Rejection.ISSUER_SIGNATURE, "Issuer signature has no payload");
+                return null;
+            }
+            if (chainValidator == null && issuerAuth.getSigningCertificateBytes() == null) {
+                result.fail(Stage.ISSUER_SIGNATURE, Rejection.UNTRUSTED_ISSUER, "Issuer signature has no x5chain");
+                return null;
+            }
+            PublicKey issuerKey;
+            try {
+                issuerKey = getIssuerKey(issuerAuth);
+            } catch (SecurityException e) {
+                result.fail(Stage.ISSUER_SIGNATURE, Rejection.UNTRUSTED_ISSUER, e.getMessage());
+                return null;
+            } catch (RuntimeException e) {
+                result.fail(Stage.ISSUER_SIGNATURE, Rejection.MALFORMED, "Malformed issuer certificate chain: " + e.getMessage());
+                return null;
+            }
+            var failure = verify(issuerAuth, issuerKey, DetachedPayload.of(issuerAuth.getPayloadBytes()), "Issuer signature is invalid");
+            if (failure != null) {
+                result.fail(Stage.ISSUER_SIGNATURE, Rejection.ISSUER_SIGNATURE, failure);
+                return null;
+            }
+            return issuerKey;
+        } finally {
+            Metrics.stop(Stage.ISSUER_SIGNATURE, start);
+        }
+    }
+
+    /// @see ValueDigestVerifier
+    public void verifyValueDigests(IssuerSignedExt issuerSigned) {
+        valueDigestVerifier.verify(issuerSigned);
+    }
+
+    public void checkValueDigests(IssuerSignedExt issuerSigned, VerificationResult.Builder result) {
+        valueDigestVerifier.check(issuerSigned, result);
+    }
+
+    public void verifyDeviceSignature(DocumentExt document, SessionTranscript sessionTranscript) {
+        VerificationResult.firstFailureOf(result -> checkDeviceSignature(document, sessionTranscript, result)).throwIfInvalid();
+    }
+
+    public void checkDeviceSignature(DocumentExt document, SessionTranscript sessionTranscript, VerificationResult.Builder result) {
+        if (result.isDone()) {
+            return;
+        }
+        var start = Metrics.start();
+        try {
+            if (document.getDeviceSigned() == null) {
+                result.fail(Stage.DEVICE_SIGNATURE, Rejection.MALFORMED, "Document has no deviceSigned");
+                return;
+            }
+            var signature = document.getDeviceSigned().getDeviceSignature();
+            if (!(document.getIssuerSigned().getMobileSecurityObject().getDeviceKeyInfo() instanceof DeviceKeyInfoExt deviceKeyInfo)) {
+                result.fail(Stage.DEVICE_SIGNATURE, Rejection.MALFORMED, "MSO has no deviceKeyInfo");
+                return;
+            }
+            PublicKey deviceKey;
+            try {
+                deviceKey = CoseKeys.toPublicKey(deviceKeyInfo.getDeviceKey());
+            } catch (SecurityException e) {
+                result.fail(Stage.DEVICE_SIGNATURE, Rejection.DEVICE_SIGNATURE, e.getMessage());
+                return;
+            } catch (RuntimeException e) {
+                // E.g. a coordinate that is not a byte string
+                result.fail(Stage.DEVICE_SIGNATURE, Rejection.MALFORMED, "Malformed device key: " + e.getMessage());
+                return;
+            }
+
+            var deviceAuthentication = new DeviceAuthentication(sessionTranscript, document);
+            var failure = verify(signature, deviceKey, deviceAuthentication, "Device signature invalid");
+            if (failure != null) {
+                result.fail(Stage.DEVICE_SIGNATURE, Rejection.DEVICE_SIGNATURE, failure);
+            }
+        } finally {
+            Metrics.stop(Stage.DEVICE_SIGNATURE, start);
+        }
+    }
+
+    /// @return the number of issuer keys currently cached
+    public int getCachedIssuerKeyCount() {
+        return issuerKeys.size();
+    }
+
+    private PublicKey getIssuerKey(COSESign1Ext issuerAuth) {
+        if (chainValidator != null) {
+            return chainValidator.validate(issuerAuth.getCertificateChainBytes());
+        }
+        var certificate = issuerAuth.getSigningCertificateBytes();
+        var key = ByteSlice.of(certificate);
+        var publicKey = issuerKeys.get(key);
+        Metrics.cacheLookup(CacheName.ISSUER_KEY, publicKey != null);
+        if (publicKey == null) {
+            publicKey = parsePublicKey(certificate);
+            if (issuerKeys.size() >= maxCachedIssuerKeys) {
+                issuerKeys.clear();
+            }
+            issuerKeys.put(key, publicKey);
+        }
+        return publicKey;
+    }
+
+    private static PublicKey parsePublicKey(byte[] certificate) {
+        try {
+            var factory = CertificateFactory.getInstance("X.509");
+            return factory.generateCertificate(new ByteArrayInputStream(certificate)).getPublicKey();
+        } catch (CertificateException e) {
+            throw new SecurityException("Issuer certificate cannot be parsed", e);
+        }
+    }
+
+    /// Verifies a COSE_Sign1 against `payload`, which is either its own payload or a detached one.
+    ///
+    /// @return null if the signature is valid, otherwise why not, `invalidMessage` if it does not verify
+    /// or `key` cannot verify signatures of its algorithm
+    @SneakyThrows
+    private static String verify(COSESign1Ext sign1, PublicKey key, DetachedPayload payload, String invalidMessage) {
+        var alg = sign1.getProtectedHeader().getAlg();
+        if (alg == null) {
+            return "COSE_Sign1 has no algorithm in its protected header";
+        }
+        var algorithm = CoseAlgorithm.find(alg);
+        if (algorithm == null) {
+            return "Unsupported COSE algorithm: " + alg;
+        }
+
+        var signature = SIGNATURES.get().computeIfAbsent(algorithm, MdocVerifier::newSignature);
+        try {
+            signature.initVerify(key);
+        } catch (InvalidKeyException e) {
+            // E.g. an RSA or EdDSA certificate for an ECDSA algorithm
+            return invalidMessage + ": key cannot verify " + algorithm;
+        }
+        SigStructure.update(signature, sign1.getProtectedHeaderBytes(), payload);
+        var signatureBytes = sign1.getSignatureBytes();
+        try {
+            return signature.verify(signatureBytes.array(), signatureBytes.offset(), signatureBytes.length()) ? null : invalidMessage;
+        } catch (SignatureException e) {
+            // Malformed signature, e.g. of the wrong length for the curve
+            return invalidMessage;
+        }
+    }
+
+    @SneakyThrows
+    private static Signature newSignature(CoseAlgorithm algorithm) {
+        return Signature.getInstance(algorithm.getJcaName());
+    }
+}
@@ -0,0 +1,16 @@
+package dk.gov.dktb.mdoc.verification;
+
+import java.time.Instant;
+
+/// Remembers the nonces of presentations that were accepted, to detect replays.
+///
+/// Used for the mdocGeneratedNonce of Signed QR codes: a code is only accepted once while it is
+/// valid, so a nonce has to be remembered until the code expires.
+public interface NonceStore {
+    /// Records `nonce` unless it was recorded before and has not expired yet.
+    ///
+    /// @param expiresAt when the nonce may be forgotten
+    /// @return true if the nonce was not seen before, false if this is a replay
+    /// @throws SecurityException if the nonce cannot be recorded, so it could be replayed later
+    boolean markSeen(String nonce, Instant expiresAt);
+}
@@ -0,0 +1,121 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+
+import javax.security.auth.x500.X500Principal;
+import java.security.cert.X509Certificate;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/// In-memory index of trust anchors (IACA certificates) for [IssuerChainValidator].
+///
+/// Anchors are indexed by subject key identifier and by subject name, so the anchor for a chain
+/// is found from the authority key identifier or issuer name of its topmost certificate without
+/// trying every anchor. Anchors can be added while the index is in use.
+public class TrustAnchorIndex {
+    private static final String SUBJECT_KEY_IDENTIFIER = "2.5.29.14";
+    private static final String AUTHORITY_KEY_IDENTIFIER = "2.5.29.35";
+    private static final int DER_OCTET_STRING = 0x04;
+    private static final int DER_SEQUENCE = 0x30;
+    private static final int DER_KEY_IDENTIFIER = 0x80;
+
+    private final Map<ByteSlice, X509Certificate> byKeyIdentifier = new ConcurrentHashMap<>();
+    private final Map<X500Principal, List<X509Certificate>> bySubject = new ConcurrentHashMap<>();
+
+    public TrustAnchorIndex() {
+    }
+
+    public TrustAnchorIndex(Collection<X509Certificate> trustAnchors) {
+        trustAnchors.forEach(this::add);
+    }
+
+    public void add(X509Certificate trustAnchor) {
+        var keyIdentifier = subjectKeyIdentifier(trustAnchor);
+        if (keyIdentifier != null) {
+            byKeyIdentifier.put(keyIdentifier, trustAnchor);
+        }
+        bySubject.computeIfAbsent(trustAnchor.getSubjectX500Principal(), subject -> new CopyOnWriteArrayList<>()).add(trustAnchor);
+    }
+
+    /// @return true if `certificate` is one of the trust anchors
+    public boolean contains(X509Certificate certificate) {
+        var anchors = bySubject.get(certificate.getSubjectX500Principal());
+        return anchors != null && anchors.contains(certificate);
+    }
+
+    /// Finds the trust anchors that may have issued `certificate`: the one with its authority key
+    /// identifier if the certificate has one, otherwise all with its issuer name. Several anchors
+    /// share a name across a key rollover, so each candidate has to be tried.
+    ///
+    /// @return the candidates, empty if no anchor matches
+    /// @throws SecurityException if the authority key identifier is malformed
+    public List<X509Certificate> findIssuers(X509Certificate certificate) {
+        var keyIdentifier = authorityKeyIdentifier(certificate);
+        if (keyIdentifier != null) {
+            var anchor = byKeyIdentifier.get(keyIdentifier);
+            if (anchor != null) {
+                return List.of(anchor);
+            }
+        }
+        var anchors = bySubject.get(certificate.getIssuerX500Principal());
+        return anchors == null ? List.of() : List.copyOf(anchors);
+    }
+
+    public int size() {
+        return bySubject.values().stream().mapToInt(List::size).sum();
+    }
+
+    /// `SubjectKeyIdentifier ::= KeyIdentifier` (an OCTET STRING), wrapped in the extension's OCTET STRING.
+    private static ByteSlice subjectKeyIdentifier(X509Certificate certificate) {
+        var extension = certificate.getExtensionValue(SUBJECT_KEY_IDENTIFIER);
+        if (extension == null) {
+            return null;
+        }
+        var value = derContent(ByteSlice.of(extension), DER_OCTET_STRING);
+        return derContent(value, DER_OCTET_STRING);
+    }
+
+    /// `AuthorityKeyIdentifier ::= SEQUENCE { keyIdentifier [0] KeyIdentifier OPTIONAL, ... }`,
+    /// wrapped in the extension's OCTET STRING.
+    private static ByteSlice authorityKeyIdentifier(X509Certificate certificate) {
+        var extension = certificate.getExtensionValue(AUTHORITY_KEY_IDENTIFIER);
+        if (extension == null) {
+            return null;
+        }
+        var value = derContent(ByteSlice.of(extension), DER_OCTET_STRING);
+        var sequence = derContent(value, DER_SEQUENCE);
+        if (sequence.isEmpty() || (sequence.get(0) & 0xff) != DER_KEY_IDENTIFIER) {
+            return null;
+        }
+        return derContent(sequence, DER_KEY_IDENTIFIER);
+    }
+
+    /// Just enough DER to unwrap the key identifier extensions.
+    ///
+    /// @return the content of the DER value at the start of `input`, which must have tag `expectedTag`
+    /// @throws SecurityException if the value is malformed, like any other unusable certificate
+    private static ByteSlice derContent(ByteSlice input, int expectedTag) {
+        if (input.length() < 2 || (input.get(0) & 0xff) != expectedTag) {
+            throw new SecurityException("Malformed key identifier: expected DER tag " + expectedTag);
+        }
+        var length = input.get(1) & 0xff;
+        var offset = 2;
+        if (length > 0x7f) {
+            var lengthBytes = length & 0x7f;
+            if (lengthBytes == 0 || lengthBytes > 3 || input.length() < 2 + lengthBytes) {
+                throw new SecurityException("Malformed key identifier: unsupported DER length");
+            }
+            length = 0;
+            for (int i = 0; i < lengthBytes; i++) {
+                length = (length << 8) | (input.get(offset++) & 0xff);
+            }
+        }
+        if (length > input.length() - offset) {
+            throw new SecurityException("Malformed key identifier: DER length exceeds the extension");
+        }
+        return input.slice(offset, length);
+    }
+}
@@ -0,0 +1,163 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
+import dk.gov.dktb.mdoc.model.IssuerNameSpacesExt;
+import dk.gov.dktb.mdoc.model.IssuerSignedExt;
+import dk.gov.dktb.mdoc.model.MobileSecurityObjectExt;
+import dk.gov.dktb.mdoc.model.ValueDigestsExt;
+import dk.gov.dktb.mdoc.utilities.DigestAlgorithm;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/// Verifies that every disclosed IssuerSignedItem matches the digest the issuer signed in the MSO:
+///
+/// ```
+/// valueDigests[nameSpace][digestID] == digest(IssuerSignedItemBytes)
+///```
+///
+/// The digest is computed over the IssuerSignedItemBytes exactly as they were received
+/// ([IssuerNameSpacesExt#getDigestedItems(String)]), so items are neither re-encoded nor, when
+/// decoded lazily, decoded. SHA-256, SHA-384 and SHA-512 are supported as `digestAlgorithm`, each
+/// hashed with a digest reused per thread ([DigestAlgorithm]).
+///
+/// The issuer signature over the MSO is not checked here, see [IssuerSignedExt#assertSignatureValid()].
+///
+/// Configure an instance before sharing it; verification itself keeps no state.
+@Setter
+public class ValueDigestVerifier {
+    /**
+     * Verify namespaces concurrently, one task per namespace, on {@link #executor}
+     */
+    private boolean parallel;
+
+    /**
+     * Documents with fewer disclosed items than this are verified sequentially even if {@link #parallel} is set
+     */
+    private int parallelThreshold = 64;
+
+    private Executor executor = ForkJoinPool.commonPool();
+
+    public void verify(IssuerSignedExt issuerSigned) {
+        VerificationResult.firstFailureOf(result -> check(issuerSigned, result)).throwIfInvalid();
+    }
+
+    /// @throws SecurityException if an item has no digest in the MSO or does not match it
+    public void verify(IssuerNameSpacesExt nameSpaces, MobileSecurityObjectExt mso) {
+        VerificationResult.firstFailureOf(result -> check(nameSpaces, mso, result)).throwIfInvalid();
+    }
+
+    /// Checks every disclosed item and returns all that do not match, without throwing.
+    public VerificationResult check(IssuerSignedExt issuerSigned) {
+        var result = new VerificationResult.Builder(true);
+        check(issuerSigned, result);
+        return result.build();
+    }
+
+    public void check(IssuerSignedExt issuerSigned, VerificationResult.Builder result) {
+        if (result.isDone()) {
+            return;
+        }
+        if (!(issuerSigned.getNameSpaces() instanceof IssuerNameSpacesExt nameSpaces)) {
+            result.fail(Stage.VALUE_DIGESTS, Rejection.MALFORMED, "Value digests can only be verified for IssuerNameSpacesExt");
+            return;
+        }
+        check(nameSpaces, issuerSigned.getMobileSecurityObject(), result);
+    }
+
+    public void check(IssuerNameSpacesExt nameSpaces, MobileSecurityObjectExt mso, VerificationResult.Builder result) {
+        if (result.isDone()) {
+            return;
+        }
+        var start = Metrics.start();
+        try {
+            checkNameSpaces(nameSpaces, mso, result);
+        } finally {
+            Metrics.stop(Stage.VALUE_DIGESTS, start);
+        }
+    }
+
+    private void checkNameSpaces(IssuerNameSpacesExt nameSpaces, MobileSecurityObjectExt mso, VerificationResult.Builder result) {
+        if (mso.getDigestAlgorithm() == null) {
+            fail(result, "MSO does not specify a digest algorithm");
+            return;
+        }
+        var algorithm = DigestAlgorithm.find(mso.getDigestAlgorithm());
+        if (algorithm == null) {
+            fail(result, "Unsupported digest algorithm: " + mso.getDigestAlgorithm());
+            return;
+        }
+        var valueDigests = (ValueDigestsExt) mso.getValueDigests();
+        if (valueDigests == null) {
+            fail(result, "MSO contains no value digests");
+            return;
+        }
+
+        var names = nameSpaces.getNameSpaceNames();
+        if (parallel && names.size() > 1 && countItems(nameSpaces) >= parallelThreshold) {
+            // One builder per task, merged in namespace order so the failures come in the same order as sequentially
+            var tasks = new ArrayList<CompletableFuture<VerificationResult>>(names.size());
+            for (var nameSpace : names) {
+                tasks.add(CompletableFuture.supplyAsync(() -> {
+                    var checked = result.newBuilder();
+                    check(nameSpaces, nameSpace, valueDigests, algorithm, checked);
+                    return checked.build();
+                }, executor));
+            }
+            for (var task : tasks) {
+                try {
+                    result.addAll(task.join());
+                } catch (CompletionException e) {
+                    if (e.getCause() instanceof RuntimeException cause) {
+                        throw cause;
+                    }
+                    throw e;
+                }
+            }
+        } else {
+            for (var nameSpace : names) {
+                check(nameSpaces, nameSpace, valueDigests, algorithm, result);
+            }
+        }
+    }
+
+    private static void check(IssuerNameSpacesExt nameSpaces, String nameSpace, ValueDigestsExt valueDigests,
+                              DigestAlgorithm algorithm, VerificationResult.Builder result) {
+        if (result.isDone()) {
+            return;
+        }
+        if (!valueDigests.hasNameSpace(nameSpace)) {
+            fail(result, "MSO contains no value digests for namespace " + nameSpace);
+            return;
+        }
+        for (var item : nameSpaces.getDigestedItems(nameSpace)) {
+            var expected = valueDigests.getDigest(nameSpace, item.digestId());
+            if (expected == null) {
+                fail(result, "MSO contains no value digest for " + nameSpace + "/" + item.elementIdentifier());
+            } else if (!algorithm.matches(item.encoded(), expected)) {
+                fail(result, "Value digest invalid for " + nameSpace + "/" + item.elementIdentifier());
+            }
+            if (result.isDone()) {
+                return;
+            }
+        }
+    }
+
+    private static void fail(VerificationResult.Builder result, String message) {
+        result.fail(Stage.VALUE_DIGESTS, Rejection.VALUE_DIGEST, message);
+    }
+
+    private static int countItems(IssuerNameSpacesExt nameSpaces) {
+        var count = 0;
+        for (var nameSpace : nameSpaces.getNameSpaceNames()) {
+            count += nameSpaces.getElementIdentifiers(nameSpace).size();
+        }
+        return count;
+    }
+}
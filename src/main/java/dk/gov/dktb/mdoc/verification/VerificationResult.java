@@ -0,0 +1,145 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/// The outcome of verifying a presentation, as returned by the `check` methods of [MdocVerifier],
+/// [ValueDigestVerifier] and [dk.gov.dktb.mdoc.model.SignedQRPayload].
+///
+/// Invalid input is the common case under abuse traffic, so failures are returned rather than
+/// thrown: no exception or stack trace is created unless [#throwIfInvalid()] is called, which is
+/// what the `assert*`/`verify*` methods do.
+///
+/// ```
+/// var result = verifier.check(document, transcript);
+/// if (!result.isValid()) {
+///     log.info("Rejected at {}: {}", result.getFirstFailure().stage(), result.getFirstFailure().message());
+/// }
+///```
+public final class VerificationResult {
+    private static final VerificationResult VALID = new VerificationResult(List.of());
+
+    private final List<Failure> failures;
+
+    private VerificationResult(List<Failure> failures) {
+        this.failures = failures;
+    }
+
+    /// @param stage where the check failed
+    /// @param reason the category of the failure
+    /// @param message the message the exception thrown for it has
+    public record Failure(Stage stage, Rejection reason, String message) {
+        /// Malformed input is an [IllegalArgumentException], every other failure a [SecurityException].
+        public RuntimeException toException() {
+            return reason == Rejection.MALFORMED ? new IllegalArgumentException(message) : new SecurityException(message);
+        }
+    }
+
+    public static VerificationResult valid() {
+        return VALID;
+    }
+
+    /// Runs `check` until its first failure.
+    public static VerificationResult firstFailureOf(Consumer<Builder> check) {
+        var result = new Builder(false);
+        check.accept(result);
+        return result.build();
+    }
+
+    public boolean isValid() {
+        return failures.isEmpty();
+    }
+
+    /// @return the failures in the order they were found
+    public List<Failure> getFailures() {
+        return failures;
+    }
+
+    /// @return the failure found first, or null if valid
+    public Failure getFirstFailure() {
+        return failures.isEmpty() ? null : failures.getFirst();
+    }
+
+    public boolean hasFailure(Rejection reason) {
+        for (var failure : failures) {
+            if (failure.reason() == reason) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /// @throws SecurityException or [IllegalArgumentException] for the first failure, see [Failure#toException()]
+    public void throwIfInvalid() {
+        if (!failures.isEmpty()) {
+            throw failures.getFirst().toException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? "VerificationResult[valid]" : "VerificationResult" + failures;
+    }
+
+    /// Collects the failures of a run of checks.
+    ///
+    /// Checks add failures with [#fail(Stage, Rejection, String)], which also reports them to
+    /// [Metrics], and skip their work once [#isDone()]: when the builder stops at the first failure,
+    /// as the throwing methods do, no check runs after one has failed.
+    public static final class Builder {
+        private final boolean collectAll;
+        private List<Failure> failures;
+
+        /// @param collectAll run every check rather than stopping at the first failure
+        public Builder(boolean collectAll) {
+            this.collectAll = collectAll;
+        }
+
+        public Builder fail(Stage stage, Rejection reason, String message) {
+            Metrics.rejected(reason);
+            return add(new Failure(stage, reason, message));
+        }
+
+        /// Adds a failure that has been reported to [Metrics] already, e.g. by the decoder.
+        public Builder add(Failure failure) {
+            if (failures == null) {
+                failures = new ArrayList<>(2);
+            }
+            failures.add(failure);
+            return this;
+        }
+
+        /// Adds the failures of checks that were run separately, e.g. on another thread.
+        public Builder addAll(VerificationResult result) {
+            result.failures.forEach(this::add);
+            return this;
+        }
+
+        /// @return true if no further checks should run
+        public boolean isDone() {
+            return !collectAll && failures != null;
+        }
+
+        public boolean isValid() {
+            return failures == null;
+        }
+
+        public boolean hasFailure(Rejection reason) {
+            return failures != null && failures.stream().anyMatch(failure -> failure.reason() == reason);
+        }
+
+        /// @return a builder for checks run separately that stops when this one would
+        public Builder newBuilder() {
+            return new Builder(collectAll);
+        }
+
+        public VerificationResult build() {
+            return failures == null ? VALID : new VerificationResult(List.copyOf(failures));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.metrics.CacheName;
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.model.MobileSecurityObjectExt;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.utilities.DigestAlgorithm;
+import lombok.Setter;
+
+import java.security.PublicKey;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// Remembers issuerAuths that have been verified, so a credential that is presented again skips
+/// the issuer signature, the x5chain validation and the MSO decoding and only its device signature
+/// is verified.
+///
+/// Entries are keyed by the SHA-256 of the encoded issuerAuth (the COSE_Sign1 including its
+/// payload), so only the exact bytes that were verified hit. Each entry also holds the encoded
+/// IssuerNameSpaces whose value digests matched; a presentation disclosing other items (or the
+/// same items differently) has its digests checked again.
+///
+/// An entry expires [#timeToLive] after it was verified, whatever the validity of the x5chain, so
+/// keep it short compared to how fast a revoked or expired issuer certificate must stop verifying.
+/// When [#maxEntries] live entries are cached, new ones are not added until some expire.
+///
+/// Share one instance between an [MdocVerifier] and the
+/// [dk.gov.dktb.mdoc.model.DeviceResponseDecoder] feeding it, so the decoder reuses cached MSOs.
+@Setter
+public class VerifiedIssuerCache {
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * How long a verified issuerAuth is trusted without verifying it again
+     */
+    private Duration timeToLive = Duration.ofMinutes(5);
+
+    private int maxEntries = 10_000;
+
+    private final Map<ByteSlice, Entry> entries = new ConcurrentHashMap<>();
+
+    /// @param mobileSecurityObject the MSO decoded from the issuerAuth payload
+    /// @param issuerKey the key the issuer signature verified with
+    /// @param verifiedNameSpaces the encoded IssuerNameSpaces whose value digests were verified
+    public record VerifiedIssuer(MobileSecurityObjectExt mobileSecurityObject, PublicKey issuerKey, ByteSlice verifiedNameSpaces) {
+    }
+
+    private record Entry(VerifiedIssuer issuer, Instant expiresAt) {
+    }
+
+    /// @param issuerAuth the encoded issuerAuth, see [dk.gov.dktb.mdoc.model.COSESign1Ext#getEncoded()]
+    /// @return the verification result, or null if `issuerAuth` has not been verified or its entry expired
+    public VerifiedIssuer get(ByteSlice issuerAuth) {
+        var key = key(issuerAuth);
+        var entry = entries.get(key);
+        if (entry != null && !clock.instant().isBefore(entry.expiresAt())) {
+            entries.remove(key, entry);
+            entry = null;
+        }
+        Metrics.cacheLookup(CacheName.VERIFIED_ISSUER, entry != null);
+        return entry != null ? entry.issuer() : null;
+    }
+
+    /// Caches the result of verifying `issuerAuth`. The encodings of the MSO and the name spaces
+    /// are copied, so the entry does not keep the response they were decoded from alive.
+    public void put(ByteSlice issuerAuth, MobileSecurityObjectExt mobileSecurityObject, PublicKey issuerKey, ByteSlice verifiedNameSpaces) {
+        var now = clock.instant();
+        if (entries.size() >= maxEntries) {
+            entries.values().removeIf(entry -> !now.isBefore(entry.expiresAt()));
+            if (entries.size() >= maxEntries) {
+                return;
+            }
+        }
+        var issuer = new VerifiedIssuer(mobileSecurityObject.withCopiedEncoding(), issuerKey,
+                ByteSlice.of(verifiedNameSpaces.toByteArray()));
+        entries.put(key(issuerAuth), new Entry(issuer, now.plus(timeToLive)));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    private static ByteSlice key(ByteSlice issuerAuth) {
+        return ByteSlice.of(DigestAlgorithm.SHA_256.digest(issuerAuth));
+    }
+}
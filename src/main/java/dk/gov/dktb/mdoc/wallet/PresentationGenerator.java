@@ -0,0 +1,237 @@
+package dk.gov.dktb.mdoc.wallet;
+
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.cose.CoseSign1Writer;
+import dk.gov.dktb.mdoc.cose.CoseSigner;
+import dk.gov.dktb.mdoc.issuance.IssuedDocument;
+import dk.gov.dktb.mdoc.model.DeviceAuthentication;
+import dk.gov.dktb.mdoc.model.DeviceNameSpacesExt;
+import dk.gov.dktb.mdoc.model.SessionTranscript;
+import dk.gov.dktb.mdoc.model.SignedQRPayload;
+import dk.gov.dktb.mdoc.utilities.Base64Url;
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import lombok.Setter;
+
+import java.nio.charset.StandardCharsets;
+import java.security.SecureRandom;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/// Presents one mdoc as the wallet holding it would: signs DeviceAuthentication with the device
+/// key for a [SessionTranscript] and writes the Document, a DeviceResponse, an OID4VP vp_token or
+/// a Signed QR payload, optionally split into parts that each fit a QR code.
+///
+/// ```
+/// var generator = new PresentationGenerator(issuedDocument, new JcaCoseSigner(deviceKey, CoseAlgorithm.ES256));
+/// var vpToken = generator.vpToken(SessionTranscript.forOid4VP(clientId, responseUri, nonce, mdocGeneratedNonce));
+/// var qrCodes = generator.signedQRCodes();
+///```
+///
+/// Meant for producing large volumes of presentations for load tests: the output is written to a
+/// [ByteSink] as it is encoded, the IssuerSigned is copied in as is, DeviceAuthentication is
+/// streamed into the signature, and each thread reuses one buffer for the encoding. An instance
+/// can be used from many threads.
+@Setter
+public class PresentationGenerator {
+    private static final String VERSION = "1.0";
+    private static final int STATUS_OK = 0;
+    private static final int MDOC_GENERATED_NONCE_LENGTH = 16;
+    /// "i", "n" and "p", 2 bytes each
+    private static final int PART_LABELS_LENGTH = 6;
+
+    private final String docType;
+    private final ByteSlice issuerSigned;
+    private final CoseSigner deviceSigner;
+    private final ThreadLocal<CborWriter> buffer;
+
+    private SecureRandom random = new SecureRandom();
+
+    private Clock clock = Clock.systemUTC();
+
+    /**
+     * Elements the device signs along with DeviceAuthentication, none by default
+     */
+    private DeviceNameSpacesExt deviceNameSpaces = new DeviceNameSpacesExt(Map.of());
+
+    /**
+     * Time between validFrom and validTo of a Signed QR payload
+     */
+    private Duration signedQRTimeToLive = Duration.ofSeconds(120);
+
+    /**
+     * Upper bound on the encoded size of one QR code. The default is what a version 40 QR code
+     * holds in byte mode at error correction level L.
+     */
+    private int maxQRSize = 2953;
+
+    public PresentationGenerator(IssuedDocument document, CoseSigner deviceSigner) {
+        this(document.docType(), document.issuerSigned(), deviceSigner);
+    }
+
+    /// @param issuerSigned the encoded IssuerSigned of the mdoc
+    /// @param deviceSigner signs with the private key of the device key in the MSO
+    public PresentationGenerator(String docType, ByteSlice issuerSigned, CoseSigner deviceSigner) {
+        this.docType = docType;
+        this.issuerSigned = issuerSigned;
+        this.deviceSigner = deviceSigner;
+        this.buffer = ThreadLocal.withInitial(() -> new CborWriter(issuerSigned.length() + 512));
+    }
+
+    /// ```
+    /// Document = {
+    ///   "docType" : DocType,
+    ///   "issuerSigned" : IssuerSigned,
+    ///   "deviceSigned" : DeviceSigned
+    /// }
+    ///```
+    public void writeDocument(SessionTranscript sessionTranscript, ByteSink sink) {
+        var out = buffer();
+        writeDocument(sessionTranscript, out);
+        out.flushTo(sink);
+    }
+
+    /// A DeviceResponse with this document and status OK.
+    public void writeDeviceResponse(SessionTranscript sessionTranscript, ByteSink sink) {
+        var out = buffer()
+                .writeMapHeader(3)
+                .writeText("version").writeText(VERSION)
+                .writeText("documents").writeArrayHeader(1);
+        writeDocument(sessionTranscript, out);
+        out.writeText("status").writeLong(STATUS_OK).flushTo(sink);
+    }
+
+    public byte[] deviceResponse(SessionTranscript sessionTranscript) {
+        var out = new CborWriter(issuerSigned.length() + 512);
+        writeDeviceResponse(sessionTranscript, out::writeRaw);
+        return out.toByteArray();
+    }
+
+    /// Writes the DeviceResponse as an OID4VP vp_token, base64url without padding.
+    ///
+    /// @param sessionTranscript see [SessionTranscript#forOid4VP]
+    public void writeVpToken(SessionTranscript sessionTranscript, ByteSink sink) {
+        var encoder = new Base64Url.Encoder(sink);
+        writeDeviceResponse(sessionTranscript, encoder::update);
+        encoder.finish();
+    }
+
+    public String vpToken(SessionTranscript sessionTranscript) {
+        var deviceResponse = deviceResponse(sessionTranscript);
+        var token = new byte[Base64Url.encodedLength(deviceResponse.length)];
+        Base64Url.encode(deviceResponse, 0, deviceResponse.length, token, 0);
+        return new String(token, StandardCharsets.US_ASCII);
+    }
+
+    /// Writes a Signed QR payload with a fresh mdocGeneratedNonce, valid from now for
+    /// [#signedQRTimeToLive]; see [SignedQRPayload] for the structure.
+    public void writeSignedQR(ByteSink sink) {
+        var nonce = new byte[MDOC_GENERATED_NONCE_LENGTH];
+        random.nextBytes(nonce);
+        var encodedNonce = new byte[Base64Url.encodedLength(nonce.length)];
+        Base64Url.encode(nonce, 0, nonce.length, encodedNonce, 0);
+        var mdocGeneratedNonce = new String(encodedNonce, StandardCharsets.US_ASCII);
+        var validFrom = clock.instant().truncatedTo(ChronoUnit.SECONDS);
+        var validTo = validFrom.plus(signedQRTimeToLive);
+
+        var document = buffer();
+        writeDocument(SessionTranscript.forSignedQR(validFrom, validTo, mdocGeneratedNonce), document);
+        new CborWriter(64)
+                .writeMapHeader(4)
+                .writeText(SignedQRPayload.MDOC_GENERATED_NONCE_LABEL).writeText(mdocGeneratedNonce)
+                .writeText(SignedQRPayload.VALID_FROM_LABEL).writeLong(validFrom.getEpochSecond())
+                .writeText(SignedQRPayload.VALID_TO_LABEL).writeLong(validTo.getEpochSecond())
+                .writeText(SignedQRPayload.DOCUMENT_LABEL).writeByteStringHeader(document.size())
+                .flushTo(sink);
+        document.flushTo(sink);
+    }
+
+    public byte[] signedQR() {
+        var out = new CborWriter(issuerSigned.length() + 512);
+        writeSignedQR(out::writeRaw);
+        return out.toByteArray();
+    }
+
+    /// @return a Signed QR payload if it fits in one QR code of [#maxQRSize] bytes, otherwise
+    /// its parts, see [#split(ByteSlice)]
+    public List<ByteSlice> signedQRCodes() {
+        var payload = ByteSlice.of(signedQR());
+        return payload.length() <= maxQRSize ? List.of(payload) : split(payload);
+    }
+
+    /// Splits a payload into as few PartialQRPayloads (`{"i": uint, "n": uint, "p": bstr}`) as
+    /// possible with at most [#maxQRSize] bytes each. The parts have equal size but for the last.
+    ///
+    /// @return the encoded parts in order, views of one array
+    /// @throws IllegalArgumentException if [#maxQRSize] leaves no room for content
+    public List<ByteSlice> split(ByteSlice payload) {
+        var count = Math.max(1, payload.length() / maxQRSize);
+        var partLength = ceilDiv(payload.length(), count);
+        while (partSize(count, partLength) > maxQRSize) {
+            if (partLength <= 1) {
+                throw new IllegalArgumentException("A QR code of " + maxQRSize + " bytes cannot hold a part");
+            }
+            count++;
+            partLength = ceilDiv(payload.length(), count);
+        }
+        // Fewer parts are needed when the last ones would be empty
+        count = partLength == 0 ? 1 : ceilDiv(payload.length(), partLength);
+
+        var out = new CborWriter(count * partSize(count, partLength));
+        var ends = new int[count];
+        for (int i = 0; i < count; i++) {
+            var offset = i * partLength;
+            out.writeMapHeader(3)
+                    .writeText(SignedQRPayload.CURRENT_PART_LABEL).writeLong(i)
+                    .writeText(SignedQRPayload.NUMBER_OF_PARTS_LABEL).writeLong(count)
+                    .writeText(SignedQRPayload.PART_LABEL).writeBytes(payload.slice(offset, Math.min(partLength, payload.length() - offset)));
+            ends[i] = out.size();
+        }
+        var encoded = out.toByteSlice();
+        var parts = new ArrayList<ByteSlice>(count);
+        for (int i = 0; i < count; i++) {
+            var start = i == 0 ? 0 : ends[i - 1];
+            parts.add(encoded.slice(start, ends[i] - start));
+        }
+        return parts;
+    }
+
+    /// ```
+    /// DeviceSigned = {
+    ///   "nameSpaces" : DeviceNameSpacesBytes,
+    ///   "deviceAuth" : {"deviceSignature" : COSE_Sign1}
+    /// }
+    ///```
+    private void writeDocument(SessionTranscript sessionTranscript, CborWriter out) {
+        var nameSpaces = deviceNameSpaces.getEncoded();
+        var deviceAuthentication = new DeviceAuthentication(sessionTranscript, docType, nameSpaces);
+        out.writeMapHeader(3)
+                .writeText("docType").writeText(docType)
+                .writeText("issuerSigned").writeRaw(issuerSigned)
+                .writeText("deviceSigned").writeMapHeader(2)
+                .writeText("nameSpaces").writeRaw(nameSpaces)
+                .writeText("deviceAuth").writeMapHeader(1)
+                .writeText("deviceSignature");
+        CoseSign1Writer.writeDetached(deviceSigner, deviceAuthentication, out);
+    }
+
+    /// @return this thread's buffer, emptied
+    private CborWriter buffer() {
+        return buffer.get().reset();
+    }
+
+    /// @return the encoded size of a PartialQRPayload with `length` bytes of content
+    private static int partSize(int count, int length) {
+        return CborWriter.headLength(3) + PART_LABELS_LENGTH
+                + CborWriter.headLength(count - 1) + CborWriter.headLength(count)
+                + CborWriter.headLength(length) + length;
+    }
+
+    private static int ceilDiv(int dividend, int divisor) {
+        return (dividend + divisor - 1) / divisor;
+    }
+}
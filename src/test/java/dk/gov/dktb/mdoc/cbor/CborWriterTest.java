@@ -0,0 +1,50 @@
+package dk.gov.dktb.mdoc.cbor;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigInteger;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CborWriterTest {
+    private static final BigInteger TWO_TO_64 = BigInteger.ONE.shiftLeft(64);
+
+    @Test
+    public void headLengthTreatsArgumentAsUnsigned() {
+        assertEquals(1, CborWriter.headLength(23));
+        assertEquals(2, CborWriter.headLength(24));
+        assertEquals(9, CborWriter.headLength(0x100000000L));
+        assertEquals(9, CborWriter.headLength(Long.MIN_VALUE));
+        assertEquals(9, CborWriter.headLength(-1));
+        assertEquals("5bffffffffffffffff", hex(new CborWriter().writeByteStringHeader(-1).toByteArray()));
+    }
+
+    @Test
+    public void integersRoundTripThroughReadValue() {
+        val values = List.<Object>of(0, 23, 24, -1, -25, Integer.MAX_VALUE, Long.MAX_VALUE, Long.MIN_VALUE,
+                BigInteger.ONE.shiftLeft(63), TWO_TO_64.subtract(BigInteger.ONE), TWO_TO_64.negate());
+
+        for (val value : values) {
+            val encoded = new CborWriter().writeValue(value).toByteArray();
+            assertEquals(value, new CborReader(encoded).readValue());
+        }
+        assertEquals("1bffffffffffffffff", hex(new CborWriter().writeValue(TWO_TO_64.subtract(BigInteger.ONE)).toByteArray()));
+        assertEquals("3bffffffffffffffff", hex(new CborWriter().writeValue(TWO_TO_64.negate()).toByteArray()));
+        // Written as the int it equals, the same as readValue would return it
+        assertEquals("17", hex(new CborWriter().writeValue(BigInteger.valueOf(23)).toByteArray()));
+    }
+
+    @Test
+    public void integersBeyond64BitsAreRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CborWriter().writeValue(TWO_TO_64));
+        assertThrows(IllegalArgumentException.class, () -> new CborWriter().writeValue(TWO_TO_64.negate().subtract(BigInteger.ONE)));
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,51 @@
+package dk.gov.dktb.mdoc.cose;
+
+import com.authlete.cbor.CBORByteArray;
+import com.authlete.cbor.CBORInteger;
+import com.authlete.cbor.CBORPair;
+import com.authlete.cose.COSEEC2Key;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static dk.gov.dktb.mdoc.cose.TestKeys.generateKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class CoseKeysTest {
+    @Test
+    public void publicKeyRoundTrips() {
+        val key = generateKey().getPublic();
+        assertEquals(key, CoseKeys.toPublicKey(CoseKeys.toCoseKey(key)));
+    }
+
+    @Test
+    public void pointOffTheCurveIsRejected() {
+        val coseKey = CoseKeys.toCoseKey(generateKey().getPublic());
+        val y = coseKey.getY().clone();
+        y[y.length - 1] ^= 1;
+        val e = assertThrows(SecurityException.class, () -> CoseKeys.toPublicKey(ec2Key(coseKey.getX(), y)));
+        assertEquals("COSE key is not a point on curve 1", e.getMessage());
+    }
+
+    @Test
+    public void missingCoordinateIsRejected() {
+        val coseKey = CoseKeys.toCoseKey(generateKey().getPublic());
+        val e = assertThrows(SecurityException.class, () -> CoseKeys.toPublicKey(ec2Key(coseKey.getX(), null)));
+        assertEquals("COSE key has no y coordinate", e.getMessage());
+    }
+
+    /// A P-256 COSE_Key with the given coordinates, or without `y` when it is null.
+    private static COSEEC2Key ec2Key(byte[] x, byte[] y) {
+        val pairs = new ArrayList<CBORPair>(List.of(
+                new CBORPair(new CBORInteger(1), new CBORInteger(2)),
+                new CBORPair(new CBORInteger(-1), new CBORInteger(1)),
+                new CBORPair(new CBORInteger(-2), new CBORByteArray(x))));
+        if (y != null) {
+            pairs.add(new CBORPair(new CBORInteger(-3), new CBORByteArray(y)));
+        }
+        return new COSEEC2Key(pairs);
+    }
+}
@@ -0,0 +1,22 @@
+package dk.gov.dktb.mdoc.cose;
+
+import lombok.SneakyThrows;
+import lombok.val;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.spec.ECGenParameterSpec;
+
+/// Keys for the tests that issue and present documents.
+public final class TestKeys {
+    private TestKeys() {
+    }
+
+    /// A new P-256 key pair, for [CoseAlgorithm#ES256].
+    @SneakyThrows
+    public static KeyPair generateKey() {
+        val generator = KeyPairGenerator.getInstance("EC");
+        generator.initialize(new ECGenParameterSpec("secp256r1"));
+        return generator.generateKeyPair();
+    }
+}
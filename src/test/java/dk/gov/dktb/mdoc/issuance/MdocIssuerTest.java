@@ -0,0 +1,100 @@
+package dk.gov.dktb.mdoc.issuance;
+
+import dk.gov.dktb.mdoc.cose.CoseAlgorithm;
+import dk.gov.dktb.mdoc.cose.CoseKeys;
+import dk.gov.dktb.mdoc.cose.JcaCoseSigner;
+import dk.gov.dktb.mdoc.cose.SigStructure;
+import dk.gov.dktb.mdoc.model.COSESign1Ext;
+import dk.gov.dktb.mdoc.model.DeviceResponseDecoder;
+import dk.gov.dktb.mdoc.model.IssuerNameSpacesExt;
+import dk.gov.dktb.mdoc.model.IssuerSignedExt;
+import dk.gov.dktb.mdoc.model.ValidityInfoExt;
+import dk.gov.dktb.mdoc.verification.ValueDigestVerifier;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.security.PublicKey;
+import java.security.Signature;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static dk.gov.dktb.mdoc.cose.TestKeys.generateKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MdocIssuerTest {
+    private static final String DOC_TYPE = "eu.europa.ec.eudi.pid.1";
+
+    private final DeviceResponseDecoder decoder = new DeviceResponseDecoder();
+
+    @Test
+    public void issuedDocumentDecodesAndVerifies() {
+        val issuerKey = generateKey();
+        val deviceKey = generateKey();
+        val issuer = new MdocIssuer(new JcaCoseSigner(issuerKey.getPrivate(), CoseAlgorithm.ES256));
+        issuer.setClock(Clock.fixed(Instant.parse("2025-06-01T12:00:00.250Z"), ZoneOffset.UTC));
+
+        val document = issuer.issue(DOC_TYPE, Map.of(DOC_TYPE, elements()), deviceKey.getPublic());
+        val issuerSigned = document.decode(decoder);
+
+        assertSignedBy(issuerKey.getPublic(), issuerSigned);
+        new ValueDigestVerifier().verify(issuerSigned);
+        val nameSpaces = (IssuerNameSpacesExt) issuerSigned.getNameSpaces();
+        assertEquals("Jensen", nameSpaces.getElementValue(DOC_TYPE, "family_name"));
+        assertEquals(true, nameSpaces.getElementValue(DOC_TYPE, "age_over_18"));
+
+        val mso = issuerSigned.getMobileSecurityObject();
+        assertEquals(DOC_TYPE, mso.getDocType());
+        assertEquals(deviceKey.getPublic(), CoseKeys.toPublicKey(mso.getDeviceKeyInfo().getDeviceKey()));
+        val validity = (ValidityInfoExt) mso.getValidityInfo();
+        assertEquals(Instant.parse("2025-06-01T12:00:00Z"), validity.getSigned().toInstant());
+        assertEquals(Instant.parse("2025-07-01T12:00:00Z"), validity.getValidUntil().toInstant());
+        assertEquals(document.mobileSecurityObject().getEncoded(), mso.getEncoded());
+    }
+
+    @Test
+    public void batchSharesNameSpacesAcrossDeviceKeys() {
+        val issuerKey = generateKey();
+        val deviceKeys = IntStream.range(0, 8).mapToObj(i -> generateKey().getPublic()).toList();
+        val issuer = new MdocIssuer(new JcaCoseSigner(issuerKey.getPrivate(), CoseAlgorithm.ES256));
+        val nameSpaces = issuer.encode(Map.of(DOC_TYPE, elements()));
+
+        val documents = issuer.issueBatch(DOC_TYPE, nameSpaces, deviceKeys);
+
+        assertEquals(deviceKeys.size(), documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            val issuerSigned = documents.get(i).decode(decoder);
+            assertSignedBy(issuerKey.getPublic(), issuerSigned);
+            new ValueDigestVerifier().verify(issuerSigned);
+            assertEquals(nameSpaces.getEncoded(), ((IssuerNameSpacesExt) issuerSigned.getNameSpaces()).getEncoded());
+            assertEquals(deviceKeys.get(i), CoseKeys.toPublicKey(issuerSigned.getMobileSecurityObject().getDeviceKeyInfo().getDeviceKey()));
+        }
+        assertSame(nameSpaces.getValueDigests(), documents.getFirst().mobileSecurityObject().getValueDigests());
+    }
+
+    private static Map<String, Object> elements() {
+        val elements = new LinkedHashMap<String, Object>();
+        elements.put("family_name", "Jensen");
+        elements.put("birth_date", LocalDate.of(1990, 4, 1));
+        elements.put("age_over_18", true);
+        elements.put("nationalities", List.of("DK"));
+        return elements;
+    }
+
+    @SneakyThrows
+    private static void assertSignedBy(PublicKey key, IssuerSignedExt issuerSigned) {
+        val issuerAuth = (COSESign1Ext) issuerSigned.getIssuerAuth();
+        val signature = Signature.getInstance(CoseAlgorithm.ES256.getJcaName());
+        signature.initVerify(key);
+        SigStructure.update(signature, issuerAuth.getProtectedHeaderBytes(), issuerAuth.getPayloadBytes());
+        assertTrue(signature.verify(issuerAuth.getSignatureBytes().toByteArray()));
+    }
+}
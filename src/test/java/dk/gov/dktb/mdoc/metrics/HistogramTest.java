@@ -0,0 +1,81 @@
+package dk.gov.dktb.mdoc.metrics;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HistogramTest {
+    @Test
+    public void valuesBelow128AreExact() {
+        for (long value = 0; value < 128; value++) {
+            assertEquals(value, medianWithMaxValue(value));
+        }
+    }
+
+    @Test
+    public void bucketBoundaries() {
+        for (int k = 7; k <= 35; k++) {
+            val power = 1L << k;
+            // 2^k - 1 is the highest value of its sub-bucket, 2^k the lowest of the next one
+            assertEquals(power - 1, medianWithMaxValue(power - 1));
+            val median = medianWithMaxValue(power);
+            assertTrue(median >= power && median <= power + (power >> 6) - 1, k + ": " + median);
+        }
+    }
+
+    @Test
+    public void valuesAreClampedToRange() {
+        val histogram = new Histogram();
+        histogram.record(Histogram.MAX_VALUE + 1000);
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+
+        assertEquals(3, histogram.getCount());
+        assertEquals(Histogram.MAX_VALUE, histogram.getMax());
+        assertEquals(Histogram.MAX_VALUE, histogram.getValueAtPercentile(100));
+        assertEquals(0, histogram.getValueAtPercentile(0));
+        assertEquals(Histogram.MAX_VALUE, medianWithMaxValue(Histogram.MAX_VALUE));
+    }
+
+    @Test
+    public void percentilesAreWithinOneSixtyFourthOfTheRecordedValues() {
+        val histogram = new Histogram();
+        for (int i = 1; i <= 10_000; i++) {
+            histogram.record(i * 1_000L);
+        }
+
+        assertWithinRelativeError(5_000_000, histogram.getValueAtPercentile(50));
+        assertWithinRelativeError(9_900_000, histogram.getValueAtPercentile(99));
+        assertEquals(10_000_000, histogram.getValueAtPercentile(100));
+        assertEquals(5_000_500, histogram.getMean(), 0.001);
+    }
+
+    @Test
+    public void emptyAndResetHistogramsReportZero() {
+        val histogram = new Histogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMean());
+
+        histogram.record(1234);
+        histogram.reset();
+
+        assertEquals(0, histogram.getCount());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getValueAtPercentile(99));
+    }
+
+    /// @return the median of `value` and [Histogram#MAX_VALUE], which is the highest value of the
+    /// bucket `value` is counted in
+    private static long medianWithMaxValue(long value) {
+        val histogram = new Histogram();
+        histogram.record(value);
+        histogram.record(Histogram.MAX_VALUE);
+        return histogram.getValueAtPercentile(50);
+    }
+
+    private static void assertWithinRelativeError(long expected, long actual) {
+        assertTrue(actual >= expected && actual - expected <= expected / 64, "expected " + expected + ", was " + actual);
+    }
+}
@@ -1,11 +1,41 @@
 package dk.gov.dktb.mdoc.model;
 
+import com.authlete.mdoc.IssuerNameSpaces;
+import dk.gov.dktb.mdoc.metrics.CacheName;
+import dk.gov.dktb.mdoc.metrics.InMemoryMetrics;
+import dk.gov.dktb.mdoc.metrics.Metrics;
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
 import dk.gov.dktb.mdoc.utilities.Base64Url;
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.verification.BatchVerifier;
+import dk.gov.dktb.mdoc.verification.MdocVerifier;
+import dk.gov.dktb.mdoc.verification.VerifiedIssuerCache;
 import lombok.SneakyThrows;
 import lombok.val;
 import org.junit.jupiter.api.Test;
 
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
 public class DocumentTest {
+    private static final String VP_TOKEN = "o2ZzdGF0dXMAZ3ZlcnNpb25jMS4waWRvY3VtZW50c4GjZ2RvY1R5cGV4KWV1LmV1cm9wYS5lYy5ldWRpLnBzZXVkb255bS5hZ2Vfb3Zlcl8xOC4xbGRldmljZVNpZ25lZKJqZGV2aWNlQXV0aKFvZGV2aWNlU2lnbmF0dXJl0oRDoQEmoFiX2BhYk4R0RGV2aWNlQXV0aGVudGljYXRpb26D9vaDWCAJ54TaW-jEJMRorQNqMSexA5YbSvDADvAwyQbSDxZaR1ggPURukyoWyoKUYMIQbH-Vsz3Y9u2LGonGuDKTFdNEDhVlbm9uY2V4KWV1LmV1cm9wYS5lYy5ldWRpLnBzZXVkb255bS5hZ2Vfb3Zlcl8xOC4x2BhBoFhA-Mnub22moQ4Tp-dQniPnwYpGHSMzfT6GQKUUVwxele_GgGyHQUgdDHbFcnXuE8Cu3EN8hJ-FQEc7LYyht5vFVWpuYW1lU3BhY2Vz2BhBoGxpc3N1ZXJTaWduZWSiamlzc3VlckF1dGiEQ6EBJqEYIVkBKjCCASYwgc2gAwIBAgIJAMWUH8uwJloXMAoGCCqGSM49BAMCMA0xCzAJBgNVBAMMAkNBMB4XDTI0MDkxNzE0MDY1M1oXDTM0MDkxNzE0MDY1M1owETEPMA0GA1UEAwwGSXNzdWVyMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEGw7Dfpfd-wl4ejog_Xx4fNEvxl-NmHRV16A7pSHpHhRO6JKiK9Y3enEQBCpfl0ZhOmMjyLZOchuO_ktgNYRDS6MSMBAwDgYDVR0PAQH_BAQDAgbAMAoGCCqGSM49BAMCA0gAMEUCICd3BXtlOtgsf4yQyEcgp9nK5MHoEIbafneafxIZyoxDAiEA4UKPkD_yztasUpiMHwjQ3FFsYowZOmkMEwHbOWAB32ZZAbfYGFkBsqZnZG9jVHlwZXgpZXUuZXVyb3BhLmVjLmV1ZGkucHNldWRvbnltLmFnZV9vdmVyXzE4LjFndmVyc2lvbmMxLjBsdmFsaWRpdHlJbmZvo2ZzaWduZWTAdDIwMjUtMDUtMjhUMTI6MTM6NDNaaXZhbGlkRnJvbcB0MjAyNS0wNS0yOFQxMjoxMzo0M1pqdmFsaWRVbnRpbMB0MjAyNS0wOC0yNlQxMjoxMzo0M1psdmFsdWVEaWdlc3RzoXgpZXUuZXVyb3BhLmVjLmV1ZGkucHNldWRvbnltLmFnZV9vdmVyXzE4LjGiGm_u4fFYICkTYAVOX2c8b97gSodEPk8e80lKcJ7xH16Yxvd0-sqEGnC5JZFYIG0JV1iTvWM1RIlLWwd6gQ510q5MuCexQV_CYuVjFLeZbWRldmljZUtleUluZm-haWRldmljZUtleaUBAgMmIAEhWCC0xVfUgOs1U8CozVemtYfJKH95NnCWQFJPQ_9U4xD7tSJYIBcv7-0qBq7UbimF5WYExvmbPyDKn8BUl1FDDhJWrWi1b2RpZ2VzdEFsZ29yaXRobWdTSEEtMjU2WECl7OKeiU4J8ab39mR7FADGNkXAdrt3H0Zpf99zPxBTdMmBLDoSYjVgBbJqw3--YVy7HLlF54itBr-wPF8kma8_am5hbWVTcGFjZXOheClldS5ldXJvcGEuZWMuZXVkaS5wc2V1ZG9ueW0uYWdlX292ZXJfMTguMYHYGFhkpGZyYW5kb21YIGurgl5w5ekHaOO4ZQsujyYz3Z3l6ZVspa5UnPAdgN8ZaGRpZ2VzdElEGm_u4fFsZWxlbWVudFZhbHVl9XFlbGVtZW50SWRlbnRpZmllcmthZ2Vfb3Zlcl8xOA";
+    private static final SessionTranscript TRANSCRIPT = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+    /// The transcript of another verifier, for which the device signature of [#VP_TOKEN] is invalid
+    private static final SessionTranscript WRONG_TRANSCRIPT = SessionTranscript.forOid4VP("otherClient", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+
     @Test
     @SneakyThrows
     public void testOID4VPExchange() {
@@ -22,4 +52,279 @@ public class DocumentTest {
         document.getIssuerSigned().assertSignatureValid();
         document.assertSignatureValid(transcript);
     }
+
+    @Test
+    public void decoderRecordsOriginalEncodings() {
+        val bytes = Base64Url.decode(VP_TOKEN);
+
+        val deviceResponse = DeviceResponseExt.from(bytes);
+        val document = deviceResponse.getDocument(0);
+        val issuerAuth = (COSESign1Ext) document.getIssuerSigned().getIssuerAuth();
+
+        assertEquals(bytes.length, deviceResponse.getEncoded().length());
+        assertEquals("eu.europa.ec.eudi.pseudonym.age_over_18.1", document.getIssuerSigned().getMobileSecurityObject().getDocType());
+        assertEquals(0xa3, bytes[document.getEncoded().offset()] & 0xff);
+        assertEquals(0x84, bytes[issuerAuth.getEncoded().offset()] & 0xff);
+        assertEquals(0xa6, bytes[document.getIssuerSigned().getMobileSecurityObject().getEncoded().offset()] & 0xff);
+
+        val nameSpaces = (IssuerNameSpacesExt) document.getIssuerSigned().getNameSpaces();
+        val items = nameSpaces.getEncodedItems("eu.europa.ec.eudi.pseudonym.age_over_18.1");
+        assertEquals(1, items.size());
+        assertSame(bytes, items.getFirst().array());
+        assertEquals(0xd8, items.getFirst().get(0) & 0xff);
+    }
+
+    @Test
+    public void encodeReproducesOriginalBytes() {
+        val bytes = Base64Url.decode(VP_TOKEN);
+        val lazyDecoder = new DeviceResponseDecoder();
+        lazyDecoder.setLazyNameSpaces(true);
+
+        for (val deviceResponse : List.of(DeviceResponseExt.from(bytes), lazyDecoder.decode(bytes))) {
+            val issuerSigned = deviceResponse.getDocument(0).getIssuerSigned();
+            assertArrayEquals(bytes, deviceResponse.encode());
+            assertArrayEquals(issuerSigned.getEncoded().toByteArray(), issuerSigned.encode());
+            assertArrayEquals(((IssuerNameSpacesExt) issuerSigned.getNameSpaces()).getEncoded().toByteArray(), issuerSigned.getNameSpaces().encode());
+            assertArrayEquals(((COSESign1Ext) issuerSigned.getIssuerAuth()).getEncoded().toByteArray(), issuerSigned.getIssuerAuth().encode());
+        }
+    }
+
+    @Test
+    public void disclosedResponseVerifiesDownstream() {
+        val document = DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)).getDocument(0);
+        val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+        val nameSpace = "eu.europa.ec.eudi.pseudonym.age_over_18.1";
+        val verifier = new MdocVerifier();
+
+        val out = new ByteArrayOutputStream();
+        document.writeDisclosedResponse(Map.of(nameSpace, Set.of("age_over_18")), ByteSink.of(out));
+        val disclosed = DeviceResponseExt.from(out.toByteArray()).getDocument(0);
+        verifier.verify(disclosed, transcript);
+        assertEquals(Set.of("age_over_18"), ((IssuerNameSpacesExt) disclosed.getIssuerSigned().getNameSpaces()).getElementIdentifiers(nameSpace));
+
+        out.reset();
+        document.writeDisclosedResponse(Map.of(), ByteSink.of(out));
+        val withheld = DeviceResponseExt.from(out.toByteArray()).getDocument(0);
+        verifier.verify(withheld, transcript);
+        assertTrue(((IssuerNameSpacesExt) withheld.getIssuerSigned().getNameSpaces()).getNameSpaceNames().isEmpty());
+    }
+
+    @Test
+    public void disclosureNeedsDecodedNameSpaces() {
+        val issuerAuth = DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)).getDocument(0).getIssuerSigned().getIssuerAuth();
+        val issuerSigned = new IssuerSignedExt(new IssuerNameSpaces(List.of()), issuerAuth);
+
+        val exception = assertThrows(IllegalStateException.class,
+                () -> issuerSigned.writeDisclosed(Map.of(), ByteSink.of(new ByteArrayOutputStream())));
+        assertEquals("Selective disclosure needs a decoded IssuerSigned", exception.getMessage());
+    }
+
+    @Test
+    public void lazyNameSpacesDecodeOnLookup() {
+        val decoder = new DeviceResponseDecoder();
+        decoder.setLazyNameSpaces(true);
+
+        val document = decoder.decode(Base64Url.decode(VP_TOKEN)).getDocument(0);
+        val nameSpaces = (IssuerNameSpacesExt) document.getIssuerSigned().getNameSpaces();
+
+        assertTrue(nameSpaces.isLazy());
+        assertEquals(Set.of("age_over_18"), nameSpaces.getElementIdentifiers("eu.europa.ec.eudi.pseudonym.age_over_18.1"));
+        assertEquals(true, nameSpaces.getElementValue("eu.europa.ec.eudi.pseudonym.age_over_18.1", "age_over_18"));
+        assertNull(nameSpaces.getItem("eu.europa.ec.eudi.pseudonym.age_over_18.1", "family_name"));
+        document.getIssuerSigned().assertSignatureValid();
+    }
+
+    @Test
+    public void valueDigestsMatchDisclosedItems() {
+        val document = DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)).getDocument(0);
+
+        document.getIssuerSigned().assertValueDigestsValid();
+    }
+
+    @Test
+    public void modifiedItemFailsValueDigest() {
+        val bytes = Base64Url.decode(VP_TOKEN);
+        val item = ((IssuerNameSpacesExt) DeviceResponseExt.from(bytes).getDocument(0).getIssuerSigned().getNameSpaces())
+                .getEncodedItems("eu.europa.ec.eudi.pseudonym.age_over_18.1").getFirst();
+        // Last byte of the item is the final character of "age_over_18"
+        bytes[item.offset() + item.length() - 1] = '9';
+
+        val document = DeviceResponseExt.from(bytes).getDocument(0);
+        document.getIssuerSigned().assertSignatureValid();
+        val exception = assertThrows(SecurityException.class, () -> document.getIssuerSigned().assertValueDigestsValid());
+
+        assertEquals("Value digest invalid for eu.europa.ec.eudi.pseudonym.age_over_18.1/age_over_19", exception.getMessage());
+    }
+
+    @Test
+    public void sharedVerifierCachesIssuerKey() {
+        val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+        val verifier = new MdocVerifier();
+
+        verifier.verify(DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)), transcript);
+        verifier.verify(DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)), transcript);
+
+        assertEquals(1, verifier.getCachedIssuerKeyCount());
+        val wrongTranscript = SessionTranscript.forOid4VP("otherClient", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+        val exception = assertThrows(SecurityException.class,
+                () -> verifier.verify(DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)), wrongTranscript));
+        assertEquals("Device signature invalid", exception.getMessage());
+    }
+
+    @Test
+    public void metricsRecordStagesAndRejections() {
+        val metrics = new InMemoryMetrics();
+        Metrics.setRecorder(metrics);
+        try {
+            val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+            val wrongTranscript = SessionTranscript.forOid4VP("otherClient", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+            val verifier = new MdocVerifier();
+
+            verifier.verify(DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)), transcript);
+            assertThrows(SecurityException.class, () -> verifier.verify(DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)), wrongTranscript));
+            assertThrows(IllegalArgumentException.class, () -> DeviceResponseExt.from(new byte[]{(byte) 0xa1}));
+
+            assertEquals(3, metrics.getLatency(Stage.DECODE).getCount());
+            assertEquals(2, metrics.getLatency(Stage.ISSUER_SIGNATURE).getCount());
+            assertEquals(2, metrics.getLatency(Stage.DEVICE_SIGNATURE).getCount());
+            assertEquals(1, metrics.getRejections(Rejection.DEVICE_SIGNATURE));
+            assertEquals(1, metrics.getRejections(Rejection.MALFORMED));
+            assertEquals(1, metrics.getCacheMisses(CacheName.ISSUER_KEY));
+            assertEquals(1, metrics.getCacheHits(CacheName.ISSUER_KEY));
+            assertEquals(2, metrics.getElementsDecoded());
+        } finally {
+            Metrics.setRecorder(null);
+        }
+    }
+
+    @Test
+    public void issuerCacheStillChecksDigestsOfOtherItems() {
+        val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+        val cache = new VerifiedIssuerCache();
+        val verifier = new MdocVerifier();
+        verifier.setIssuerCache(cache);
+        val decoder = new DeviceResponseDecoder();
+        decoder.setIssuerCache(cache);
+
+        verifier.verify(decoder.decode(Base64Url.decode(VP_TOKEN)), transcript);
+        assertEquals(1, cache.size());
+        val cached = decoder.decode(Base64Url.decode(VP_TOKEN)).getDocument(0);
+        assertSame(cache.get(((COSESign1Ext) cached.getIssuerSigned().getIssuerAuth()).getEncoded()).mobileSecurityObject(),
+                cached.getIssuerSigned().getMobileSecurityObject());
+        verifier.verify(cached, transcript);
+
+        // Same issuerAuth, so a cache hit, but the disclosed item no longer matches its digest
+        val bytes = Base64Url.decode(VP_TOKEN);
+        val item = ((IssuerNameSpacesExt) DeviceResponseExt.from(bytes).getDocument(0).getIssuerSigned().getNameSpaces())
+                .getEncodedItems("eu.europa.ec.eudi.pseudonym.age_over_18.1").getFirst();
+        bytes[item.offset() + item.length() - 1] = '9';
+        val exception = assertThrows(SecurityException.class, () -> verifier.verify(decoder.decode(bytes), transcript));
+        assertEquals("Value digest invalid for eu.europa.ec.eudi.pseudonym.age_over_18.1/age_over_19", exception.getMessage());
+    }
+
+    @Test
+    public void issuerCacheDoesNotKeepTheResponseAlive() {
+        val cache = new VerifiedIssuerCache();
+        val verifier = new MdocVerifier();
+        verifier.setIssuerCache(cache);
+        val bytes = Base64Url.decode(VP_TOKEN);
+        val document = DeviceResponseExt.from(bytes).getDocument(0);
+
+        verifier.verify(document, TRANSCRIPT);
+
+        val cached = cache.get(((COSESign1Ext) document.getIssuerSigned().getIssuerAuth()).getEncoded());
+        assertSame(bytes, document.getIssuerSigned().getMobileSecurityObject().getEncoded().array());
+        assertNotSame(bytes, cached.mobileSecurityObject().getEncoded().array());
+        assertNotSame(bytes, cached.verifiedNameSpaces().array());
+        assertArrayEquals(document.getIssuerSigned().getMobileSecurityObject().encode(), cached.mobileSecurityObject().encode());
+    }
+
+    @Test
+    public void batchConsultsIssuerCache() {
+        val cache = new VerifiedIssuerCache();
+        val verifier = new MdocVerifier();
+        verifier.setIssuerCache(cache);
+        verifier.verify(DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)), TRANSCRIPT);
+        val batchVerifier = new BatchVerifier();
+        batchVerifier.setVerifier(verifier);
+        val bytes = Base64Url.decode(VP_TOKEN);
+
+        val metrics = new InMemoryMetrics();
+        Metrics.setRecorder(metrics);
+        try {
+            val results = batchVerifier.verify(List.of(new BatchVerifier.Item(bytes, TRANSCRIPT), new BatchVerifier.Item(bytes, TRANSCRIPT)));
+
+            assertEquals(List.of(true, true), results.stream().map(BatchVerifier.Result::isValid).toList());
+            assertEquals(0, metrics.getLatency(Stage.ISSUER_SIGNATURE).getCount());
+            assertEquals(2, metrics.getLatency(Stage.DEVICE_SIGNATURE).getCount());
+        } finally {
+            Metrics.setRecorder(null);
+        }
+    }
+
+    @Test
+    public void documentCanBeVerifiedConcurrently() {
+        val document = DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)).getDocument(0);
+        val payload = document.getDeviceSigned().getDeviceSignature().getPayload();
+
+        IntStream.range(0, 64).parallel().forEach(i -> {
+            if (i % 2 == 0) {
+                document.assertSignatureValid(TRANSCRIPT);
+            } else {
+                assertThrows(SecurityException.class, () -> document.assertSignatureValid(WRONG_TRANSCRIPT));
+            }
+        });
+
+        assertSame(payload, document.getDeviceSigned().getDeviceSignature().getPayload());
+    }
+
+    @Test
+    public void batchReportsResultPerItem() {
+        val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+        val wrongTranscript = SessionTranscript.forOid4VP("otherClient", "responseUrl", "nonce", "hQUmE4m-r5PRefxM4Afvbw");
+        val bytes = Base64Url.decode(VP_TOKEN);
+
+        val results = new BatchVerifier().verify(List.of(
+                new BatchVerifier.Item(bytes, transcript),
+                new BatchVerifier.Item(bytes, wrongTranscript),
+                new BatchVerifier.Item(new byte[]{(byte) 0xa1}, transcript),
+                new BatchVerifier.Item(bytes, transcript)));
+
+        assertEquals(List.of(true, false, false, true), results.stream().map(BatchVerifier.Result::isValid).toList());
+        assertEquals("Device signature invalid", results.get(1).verification().getFirstFailure().message());
+        assertEquals(Stage.DECODE, results.get(2).verification().getFirstFailure().stage());
+        assertNull(results.get(2).deviceResponse());
+    }
+
+    @Test
+    public void transcriptTemplateMatchesEncodedTranscript() {
+        val template = SessionTranscriptTemplate.forOid4VP("clientId", "responseUrl");
+        val transcript = template.transcript("nonce", "hQUmE4m-r5PRefxM4Afvbw");
+
+        assertArrayEquals(transcript.asCBOR().encode(), transcript.encode());
+        DeviceResponseExt.from(Base64Url.decode(VP_TOKEN)).getDocument(0).assertSignatureValid(transcript);
+    }
+
+    @Test
+    public void decodingLimitsRejectOversizedInput() {
+        val decoder = new DeviceResponseDecoder();
+        val bytes = Base64Url.decode(VP_TOKEN);
+
+        decoder.setLimits(DecodingLimits.DEFAULT.withMaxInputSize(1024));
+        val tooLarge = assertThrows(IllegalArgumentException.class, () -> decoder.decode(bytes));
+        assertEquals("Input of " + bytes.length + " bytes exceeds the limit of 1024", tooLarge.getMessage());
+
+        decoder.setLimits(DecodingLimits.DEFAULT.withMaxElementsPerNameSpace(0));
+        val tooMany = assertThrows(IllegalArgumentException.class, () -> decoder.decode(bytes));
+        assertEquals("More than 0 elements in namespace eu.europa.ec.eudi.pseudonym.age_over_18.1", tooMany.getMessage());
+    }
+
+    @Test
+    public void dataAfterTheResponseIsRejected() {
+        val bytes = Base64Url.decode(VP_TOKEN);
+        val padded = Arrays.copyOf(bytes, bytes.length + 1);
+
+        val exception = assertThrows(IllegalArgumentException.class, () -> new DeviceResponseDecoder().decode(padded));
+        assertEquals("Unexpected data after the CBOR item at offset " + bytes.length, exception.getMessage());
+    }
 }
@@ -1,6 +1,10 @@
 package dk.gov.dktb.mdoc.model;
 
+import dk.gov.dktb.mdoc.cbor.CborWriter;
+import dk.gov.dktb.mdoc.metrics.Rejection;
 import dk.gov.dktb.mdoc.utilities.Base64Url;
+import dk.gov.dktb.mdoc.verification.InMemoryNonceStore;
+import dk.gov.dktb.mdoc.verification.VerificationResult;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.Test;
 
@@ -9,9 +13,12 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneOffset;
 import java.util.Arrays;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SignedQRTest {
     private static final byte[] validPayload = Base64Url.decode("pGFkWQQ1o2dkb2NUeXBldGV1LmV1cm9wYS5lYy5hZ2V2MTBubGRldmljZVNpZ25lZKJqZGV2aWNlQXV0aKFvZGV2aWNlU2lnbmF0dXJl0oRDoQEmoFhY2BhYVIR0RGV2aWNlQXV0aGVudGljYXRpb26D9vaDdjZMbGhfZldPYmhySmswaGVlaHhaWUEaaD7hpxpoPuJbdGV1LmV1cm9wYS5lYy5hZ2V2MTBu2BhBoFhAYj83CiLjxOKHhcfGMdCTWV00WjE37MxVkRZYeKqDwAyJ49lqxhZImsWzNC37VMWfWRqURRNu8swNYSEMf4xS9WpuYW1lU3BhY2Vz2BhBoGxpc3N1ZXJTaWduZWSiamlzc3VlckF1dGiEQ6EBJqEYIoIvWCDbADAtKRN0jp8aVItb6fVPI6hQ7hsm8adeEHVRQp_LTlkCJ9gYWQIipmdkb2NUeXBldGV1LmV1cm9wYS5lYy5hZ2V2MTBuZ3ZlcnNpb25jMS4wbHZhbGlkaXR5SW5mb6Nmc2lnbmVkwHQyMDI1LTA2LTAzVDExOjUxOjAzWml2YWxpZEZyb23AdDIwMjUtMDYtMDNUMTE6NTE6MDNaanZhbGlkVW50aWzAdDIwMjUtMDktMDFUMTE6NTE6MDNabHZhbHVlRGlnZXN0c6F0ZXUuZXVyb3BhLmVjLmFnZXYxMG6mGgx3UbxYIJDcOPkM98Jddg51m4XZpFZu4w067PDcnbD5zRyWetjPGkzLHqdYIGsQrYC37a-RHkaRMqQlLFCL89lRBRq7On1pqiF1Rx10GlVOVtJYIBflZ-1FrYrV34ppI8x6yfYYEvP-5iNoysf3eSARsMvoGmowERdYIIDCIxmafW2i7ec8XMT19SrtTtWXSCrafu7zHk21BSdnGmyjww1YIEvBePAdeYWjuPDW1iUPkbROflpsWS9ABzb1Chc6iFUyGn1Chr1YIDzMfWFzxVxk4qCKtm_tqUgwFGRMlXfSX6qO0dYUsE54bWRldmljZUtleUluZm-haWRldmljZUtleaUBAgMmIAEhWCB7-wJX23K7WpofKWS0LBFNFKv6txKVDgtGqBGaKbeYXyJYIL4KhLBz09K9aiarvPNWHbuT384Nu2vCI-iDaECgUqryb2RpZ2VzdEFsZ29yaXRobWdTSEEtMjU2WEDU_XuZ46TZWV6HkzR74x7kUBdrr1-HjPNebTJDz_Iromyfksb0F4e9PcNJzJRLx-8mKd0Z7NnMsePhjNzuXKfHam5hbWVTcGFjZXOhdGV1LmV1cm9wYS5lYy5hZ2V2MTBugdgYWGSkZnJhbmRvbVggVb07h66Lhbwq1uC0Q3HsEEVyn5idk9es9jd9mcIZLZ5oZGlnZXN0SUQabKPDDWxlbGVtZW50VmFsdWX1cWVsZW1lbnRJZGVudGlmaWVya2FnZV9vdmVyXzE4YWYaaD7hp2FtdjZMbGhfZldPYmhySmswaGVlaHhaWUFhdBpoPuJb");
@@ -43,6 +50,36 @@ public class SignedQRTest {
         assertEquals("QR code has expired at 2025-06-03T11:54:03Z", exception.getMessage());
     }
 
+    @Test
+    @SneakyThrows
+    public void expiredSignedQrIsRejectedBeforeDocumentIsDecoded() {
+        var payload = Arrays.copyOf(validPayload, validPayload.length);
+        // Corrupt the document: byte 6 is the map header of the Document, after "d" (61 64) and its bstr header (59 04 35)
+        payload[6] = (byte) 0xff;
+        signedQR = new SignedQRPayload(payload);
+        signedQR.setClock(Clock.fixed(Instant.parse("2025-06-03T11:58:00Z"), ZoneOffset.UTC));
+
+        var exception = assertThrows(SecurityException.class, () -> signedQR.assertValid());
+
+        assertEquals("QR code has expired at 2025-06-03T11:54:03Z", exception.getMessage());
+    }
+
+    @Test
+    public void checkCollectsEveryFailure() {
+        var payload = Arrays.copyOf(validPayload, validPayload.length);
+        // The map header of the Document, as in expiredSignedQrIsRejectedBeforeDocumentIsDecoded
+        payload[6] = (byte) 0xff;
+        signedQR = new SignedQRPayload(payload);
+        signedQR.setClock(Clock.fixed(Instant.parse("2025-06-03T11:58:00Z"), ZoneOffset.UTC));
+
+        var result = signedQR.check();
+
+        assertFalse(result.isValid());
+        assertEquals(List.of(Rejection.VALIDITY, Rejection.MALFORMED),
+                result.getFailures().stream().map(VerificationResult.Failure::reason).toList());
+        assertEquals("QR code has expired at 2025-06-03T11:54:03Z", result.getFirstFailure().message());
+    }
+
     @Test
     @SneakyThrows
     public void signedQrIsNotYetValid() {
@@ -69,6 +106,50 @@ public class SignedQRTest {
         signedQR.assertValid();
     }
 
+    @Test
+    @SneakyThrows
+    public void replayedSignedQrIsRejected() {
+        var nonceStore = new InMemoryNonceStore();
+        nonceStore.setClock(Clock.fixed(Instant.parse("2025-06-03T11:53:00Z"), ZoneOffset.UTC));
+
+        setupValidSignedQRAt("2025-06-03T11:53:00Z");
+        signedQR.setNonceStore(nonceStore);
+        signedQR.assertValid();
+
+        setupValidSignedQRAt("2025-06-03T11:53:30Z");
+        signedQR.setNonceStore(nonceStore);
+        var exception = assertThrows(SecurityException.class, () -> signedQR.assertValid());
+        assertEquals("QR code has already been presented", exception.getMessage());
+    }
+
+    @Test
+    public void validityBeyondTheRangeOfInstantIsMalformed() {
+        var payload = new CborWriter().writeMapHeader(4)
+                .writeText(SignedQRPayload.MDOC_GENERATED_NONCE_LABEL).writeText("nonce")
+                .writeText(SignedQRPayload.VALID_FROM_LABEL).writeLong(0)
+                .writeText(SignedQRPayload.VALID_TO_LABEL).writeLong(Long.MAX_VALUE)
+                .writeText(SignedQRPayload.DOCUMENT_LABEL).writeBytes(new byte[0])
+                .toByteArray();
+
+        var exception = assertThrows(IllegalArgumentException.class, () -> new SignedQRPayload(payload));
+
+        assertEquals("Invalid \"t\" in QR payload: " + Long.MAX_VALUE, exception.getMessage());
+    }
+
+    @Test
+    public void fullNonceStoreFailsTheCheck() {
+        var nonceStore = new InMemoryNonceStore();
+        nonceStore.setClock(Clock.fixed(Instant.parse("2025-06-03T11:53:00Z"), ZoneOffset.UTC));
+        nonceStore.setMaxEntries(0);
+
+        setupValidSignedQRAt("2025-06-03T11:53:00Z");
+        signedQR.setNonceStore(nonceStore);
+        var failure = signedQR.check().getFirstFailure();
+
+        assertEquals(Rejection.REPLAYED, failure.reason());
+        assertEquals("Nonce store is full", failure.message());
+    }
+
     @Test
     @SneakyThrows
     public void multipleIsValid() {
@@ -77,6 +158,74 @@ public class SignedQRTest {
         signedQR.assertValid();
     }
 
+    @Test
+    @SneakyThrows
+    public void multipleIsReassembledFromScansInAnyOrder() {
+        var reassembler = new SignedQRReassembler<String>();
+        for (int i : new int[]{2, 0, 2, 3}) {
+            assertTrue(reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[i])).isEmpty());
+        }
+        assertEquals(1, reassembler.getSessionCount());
+
+        signedQR = reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[1])).orElseThrow();
+        signedQR.setClock(Clock.fixed(Instant.parse("2025-06-04T15:58:00Z"), ZoneOffset.UTC));
+        signedQR.setMaxAllowedTimeToLive(Duration.ofSeconds(180));
+
+        signedQR.assertValid();
+        assertEquals(0, reassembler.getSessionCount());
+    }
+
+    @Test
+    @SneakyThrows
+    public void reassemblerMovesReceivedPartsWhenALargerPartArrives() {
+        var reassembler = new SignedQRReassembler<String>();
+        // Part 3 is two bytes longer than the others, so the slots grow after three parts are in place
+        for (int i : new int[]{1, 0, 2}) {
+            assertTrue(reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[i])).isEmpty());
+        }
+
+        signedQR = reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[3])).orElseThrow();
+        signedQR.setClock(Clock.fixed(Instant.parse("2025-06-04T15:58:00Z"), ZoneOffset.UTC));
+        signedQR.setMaxAllowedTimeToLive(Duration.ofSeconds(180));
+
+        signedQR.assertValid();
+    }
+
+    @Test
+    public void partWithDifferentNumberOfPartsEndsTheSession() {
+        var reassembler = new SignedQRReassembler<String>();
+        var otherCount = Base64Url.decode(validMultiplePayloads[1]);
+        // Byte 6 is the value of "n", after the map header, "i" and its value, and "n"
+        otherCount[6] = 5;
+
+        assertTrue(reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[0])).isEmpty());
+        var exception = assertThrows(IllegalArgumentException.class, () -> reassembler.accept("scanner", otherCount));
+
+        assertEquals("Part 1 is one of 5 parts, expected 4", exception.getMessage());
+        assertEquals(0, reassembler.getSessionCount());
+        for (int i : new int[]{1, 2, 3}) {
+            assertTrue(reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[i])).isEmpty());
+        }
+    }
+
+    @Test
+    public void staleSessionIsEvicted() {
+        var reassembler = new SignedQRReassembler<String>();
+        var start = Instant.parse("2025-06-04T15:57:00Z");
+        reassembler.setClock(Clock.fixed(start, ZoneOffset.UTC));
+        assertTrue(reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[0])).isEmpty());
+
+        reassembler.setClock(Clock.fixed(start.plusSeconds(30), ZoneOffset.UTC));
+        assertTrue(reassembler.accept("other", Base64Url.decode(validMultiplePayloads[0])).isEmpty());
+        assertEquals(1, reassembler.getSessionCount());
+
+        // Part 0 of the evicted session is gone, so the remaining parts do not complete it
+        for (int i : new int[]{1, 2, 3}) {
+            assertTrue(reassembler.accept("scanner", Base64Url.decode(validMultiplePayloads[i])).isEmpty());
+        }
+        assertEquals(2, reassembler.getSessionCount());
+    }
+
     private void setupValidSignedQRAt(final String validationTime) {
         signedQR = new SignedQRPayload(validPayload);
         signedQR.setClock(Clock.fixed(Instant.parse(validationTime), ZoneOffset.UTC));
@@ -0,0 +1,137 @@
+package dk.gov.dktb.mdoc.utilities;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class Base64UrlTest {
+    // Wrong or misplaced padding, non-zero trailing bits, truncated input and invalid characters
+    private static final String[] MALFORMED = {
+            "=", "==", "Q", "Q=", "Q==", "Q===", "QQ=", "QQ===", "QQ=====", "QUI==", "QUJD=", "QUJD==", "QUJD====",
+            "QR", "QR==", "QUJ", "QUJ=", "QQ==QQ==", "QQ=A", "QU+D", "QU/D", "QUJDé"};
+
+    @Test
+    public void everyDecodingPathRoundTrips() {
+        val random = new Random(1);
+        for (int length = 0; length <= 40; length++) {
+            val bytes = new byte[length];
+            random.nextBytes(bytes);
+            val unpadded = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+            val padded = Base64.getUrlEncoder().encodeToString(bytes);
+
+            for (val encoded : new String[]{unpadded, padded}) {
+                decoders().forEach((path, decoder) ->
+                        assertArrayEquals(bytes, decoder.apply(encoded), path + " of \"" + encoded + "\""));
+            }
+            assertEquals(padded, Base64Url.encode(bytes));
+            assertEquals(unpadded, encode(bytes));
+        }
+    }
+
+    @Test
+    public void everyDecodingPathRejectsMalformedInput() {
+        for (val encoded : MALFORMED) {
+            decoders().forEach((path, decoder) ->
+                    assertThrows(IllegalArgumentException.class, () -> decoder.apply(encoded), path + " of \"" + encoded + "\""));
+        }
+    }
+
+    @Test
+    public void paddingOnlyCompletesTheFinalGroup() {
+        assertArrayEquals(new byte[]{'A'}, Base64Url.decode("QQ=="));
+        assertArrayEquals(new byte[]{'A', 'B'}, Base64Url.decode("QUI="));
+        val exception = assertThrows(IllegalArgumentException.class, () -> Base64Url.decode("QUJD=="));
+        assertEquals("Invalid base64url character at 4", exception.getMessage());
+        val trailingBits = assertThrows(IllegalArgumentException.class, () -> Base64Url.decode("QR=="));
+        assertEquals("Non-zero trailing bits in base64url character at 1", trailingBits.getMessage());
+    }
+
+    @Test
+    public void encoderOutputIsIndependentOfHowInputIsSplit() {
+        val bytes = new byte[64];
+        new Random(2).nextBytes(bytes);
+        val expected = Base64.getUrlEncoder().withoutPadding().encodeToString(bytes);
+
+        for (int split = 0; split <= bytes.length; split++) {
+            for (int second = split; second <= bytes.length; second++) {
+                val out = new ByteArrayOutputStream();
+                val encoder = new Base64Url.Encoder(ByteSink.of(out));
+                encoder.update(bytes, 0, split);
+                encoder.update(bytes, split, second - split);
+                encoder.update(bytes, second, bytes.length - second);
+                encoder.finish();
+                assertEquals(expected, out.toString(StandardCharsets.US_ASCII));
+            }
+        }
+    }
+
+    /// Every way of decoding, by name; the streaming [Base64Url.Decoder] with the input split at
+    /// every offset.
+    private static Map<String, Function<String, byte[]>> decoders() {
+        val decoders = new LinkedHashMap<String, Function<String, byte[]>>();
+        decoders.put("decode(String)", Base64Url::decode);
+        decoders.put("decode(byte[])", encoded -> {
+            val input = encoded.getBytes(StandardCharsets.ISO_8859_1);
+            val output = new byte[input.length];
+            return Arrays.copyOf(output, Base64Url.decode(input, 0, input.length, output, 0));
+        });
+        decoders.put("decode(CharSequence)", encoded -> {
+            val output = new byte[encoded.length()];
+            return Arrays.copyOf(output, Base64Url.decode(new StringBuilder(encoded), 0, encoded.length(), output, 0));
+        });
+        decoders.put("decode(ByteBuffer) heap", encoded -> decode(ByteBuffer.wrap(encoded.getBytes(StandardCharsets.ISO_8859_1))));
+        decoders.put("decode(ByteBuffer) direct", encoded -> {
+            val input = encoded.getBytes(StandardCharsets.ISO_8859_1);
+            return decode(ByteBuffer.allocateDirect(input.length).put(input).flip());
+        });
+        decoders.put("decode(ByteBuffer) read-only", encoded ->
+                decode(ByteBuffer.wrap(encoded.getBytes(StandardCharsets.ISO_8859_1)).asReadOnlyBuffer()));
+        decoders.put("decodeInPlace", encoded -> {
+            // Surrounded by other bytes, which must be left alone
+            val buffer = ("xx" + encoded + "yy").getBytes(StandardCharsets.ISO_8859_1);
+            val decoded = Base64Url.decodeInPlace(buffer, 2, encoded.length()).toByteArray();
+            assertEquals('y', buffer[buffer.length - 1]);
+            return decoded;
+        });
+        for (int split = 0; split <= 56; split++) {
+            val at = split;
+            decoders.put("Decoder split at " + at, encoded -> {
+                val input = encoded.getBytes(StandardCharsets.ISO_8859_1);
+                val first = Math.min(at, input.length);
+                val out = new ByteArrayOutputStream();
+                val decoder = new Base64Url.Decoder(ByteSink.of(out));
+                decoder.update(input, 0, first);
+                decoder.update(input, first, input.length - first);
+                decoder.finish();
+                return out.toByteArray();
+            });
+        }
+        return decoders;
+    }
+
+    private static byte[] decode(ByteBuffer input) {
+        val output = ByteBuffer.allocate(input.remaining());
+        Base64Url.decode(input, output);
+        assertEquals(input.limit(), input.position());
+        return Arrays.copyOf(output.array(), output.position());
+    }
+
+    private static String encode(byte[] bytes) {
+        val output = new byte[Base64Url.encodedLength(bytes.length)];
+        assertEquals(output.length, Base64Url.encode(bytes, 0, bytes.length, output, 0));
+        return new String(output, StandardCharsets.US_ASCII);
+    }
+}
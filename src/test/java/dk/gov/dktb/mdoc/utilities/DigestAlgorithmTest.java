@@ -0,0 +1,101 @@
+package dk.gov.dktb.mdoc.utilities;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DigestAlgorithmTest {
+    private static final byte[] ABC = "abc".getBytes(StandardCharsets.US_ASCII);
+    // FIPS 180-2 test vectors for "abc"
+    private static final String SHA_256_ABC = "ba7816bf8f01cfea414140de5dae2223b00361a396177a9cb410ff61f20015ad";
+    private static final String SHA_384_ABC = "cb00753f45a35e8bb5a03d699ac65007272c32ab0eded1631a8b605a43ff5bed"
+            + "8086072ba1e7cc2358baeca134c825a7";
+    private static final String SHA_512_ABC = "ddaf35a193617abacc417349ae20413112e6fa4e89a97ea20a9eeee64b55d39a"
+            + "2192992a274fc1a836ba3c23a3feebbd454d4423643ce80e2a9ac94fa54ca49f";
+
+    @Test
+    public void knownVectors() {
+        assertEquals(SHA_256_ABC, hex(DigestAlgorithm.SHA_256.digest(ABC)));
+        assertEquals(SHA_384_ABC, hex(DigestAlgorithm.SHA_384.digest(ABC)));
+        assertEquals(SHA_512_ABC, hex(DigestAlgorithm.SHA_512.digest(ABC)));
+        assertEquals(DigestAlgorithm.SHA_384, DigestAlgorithm.fromName("SHA-384"));
+        assertNull(DigestAlgorithm.find("SHA-1"));
+        assertThrows(SecurityException.class, () -> DigestAlgorithm.fromName("MD5"));
+    }
+
+    @Test
+    public void digestEachWritesDigestsInOrder() {
+        val algorithm = DigestAlgorithm.SHA_384;
+        val input = "xxabcdef".getBytes(StandardCharsets.US_ASCII);
+        val inputs = List.of(new ByteSlice(input, 2, 3), new ByteSlice(input, 5, 3), new ByteSlice(input, 0, 0));
+        val expected = new byte[3 * algorithm.getLength()];
+        for (int i = 0; i < inputs.size(); i++) {
+            val digest = algorithm.digest(inputs.get(i).toByteArray());
+            System.arraycopy(digest, 0, expected, i * algorithm.getLength(), digest.length);
+        }
+
+        assertArrayEquals(expected, algorithm.digestEach(inputs));
+        val output = new byte[expected.length + 5];
+        assertEquals(expected.length, algorithm.digestEach(inputs, output, 5));
+        assertArrayEquals(expected, Arrays.copyOfRange(output, 5, output.length));
+        assertEquals(0, algorithm.digestEach(List.of()).length);
+
+        assertThrows(IllegalArgumentException.class, () -> algorithm.digestEach(inputs, output, 6));
+    }
+
+    @Test
+    public void digestIntoOutputChecksBounds() {
+        val algorithm = DigestAlgorithm.SHA_256;
+        val output = new byte[40];
+
+        assertEquals(32, algorithm.digest(ByteSlice.of(ABC), output, 8));
+        assertEquals(SHA_256_ABC, hex(Arrays.copyOfRange(output, 8, 40)));
+        assertThrows(IllegalArgumentException.class, () -> algorithm.digest(ByteSlice.of(ABC), output, 9));
+        assertThrows(IllegalArgumentException.class, () -> algorithm.digest(ByteSlice.of(ABC), output, -1));
+        assertThrows(IllegalArgumentException.class, () -> algorithm.digest(ByteSlice.of(ABC), output, Integer.MAX_VALUE));
+
+        // A rejected call leaves no input behind in the digest of the thread
+        assertEquals(SHA_256_ABC, hex(algorithm.digest(ABC)));
+    }
+
+    @Test
+    public void byteBufferIsHashedFromPositionToLimit() {
+        val bytes = "xxabcyy".getBytes(StandardCharsets.US_ASCII);
+        for (val buffer : List.of(ByteBuffer.wrap(bytes), ByteBuffer.allocateDirect(bytes.length).put(bytes).flip())) {
+            buffer.position(2).limit(5);
+
+            assertEquals(SHA_256_ABC, hex(DigestAlgorithm.SHA_256.digest(buffer)));
+            assertEquals(5, buffer.position());
+            assertEquals(5, buffer.limit());
+        }
+    }
+
+    @Test
+    public void matchesComparesWithExpectedDigest() {
+        val algorithm = DigestAlgorithm.SHA_512;
+        val expected = HexFormat.of().parseHex(SHA_512_ABC);
+        val input = new ByteSlice("xabcx".getBytes(StandardCharsets.US_ASCII), 1, 3);
+
+        assertTrue(algorithm.matches(input, expected));
+        expected[63] ^= 1;
+        assertFalse(algorithm.matches(input, expected));
+        assertFalse(algorithm.matches(input, Arrays.copyOf(HexFormat.of().parseHex(SHA_512_ABC), 32)));
+        assertFalse(DigestAlgorithm.SHA_256.matches(input, HexFormat.of().parseHex(SHA_512_ABC)));
+    }
+
+    private static String hex(byte[] bytes) {
+        return HexFormat.of().formatHex(bytes);
+    }
+}
@@ -0,0 +1,103 @@
+package dk.gov.dktb.mdoc.verification;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Base64;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class IssuerChainValidatorTest {
+    private static final String IACA = "MIIBfTCCASKgAwIBAgIIbFtzyulf2hAwCgYIKoZIzj0EAwIwITELMAkGA1UEBhMCREsxEjAQBgNVBAMTCVRlc3QgSUFDQTAgFw0yNDAxMDExOTQ5MDFaGA8yMTIzMTIwODE5NDkwMVowITELMAkGA1UEBhMCREsxEjAQBgNVBAMTCVRlc3QgSUFDQTBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABHLvK48laVgB91soKAj7Cc83Bfq23Rw3MlZbmkh0scajsIzM8qqfFg88AtjvwLCFX1F8OpNkjh0nlYUaPn12VIqjQjBAMB0GA1UdDgQWBBRGCAtYHeOeCgkBCsLpITHPmhYv0zAOBgNVHQ8BAf8EBAMCAQYwDwYDVR0TAQH/BAUwAwEB/zAKBggqhkjOPQQDAgNJADBGAiEA2cWc6WboGutXBlUd4Qwbg/SjHoqm2gk0mZXY6+m/FVUCIQD2zFkX2f+oxaZYVwsBYGfi9bXeyZwfrjvQL22KZd5QNQ==";
+    // Same subject as IACA, different key
+    private static final String OTHER_IACA = "MIIBezCCASKgAwIBAgIIcSUgffaHQqowCgYIKoZIzj0EAwIwITELMAkGA1UEBhMCREsxEjAQBgNVBAMTCVRlc3QgSUFDQTAgFw0yNDAxMDExOTQ5MDJaGA8yMTIzMTIwODE5NDkwMlowITELMAkGA1UEBhMCREsxEjAQBgNVBAMTCVRlc3QgSUFDQTBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABGH+fqKJQgkaX+cN9YpxGiJawhobtCxh6pQ3J6fYbw65pZBALZ8wUx0qV6Fdm+igP1fROMZiLyYuShWUe4tUYXyjQjBAMB0GA1UdDgQWBBTImMQNcYZ+gZHO/Wku/wQCTy3F/DAOBgNVHQ8BAf8EBAMCAgQwDwYDVR0TAQH/BAUwAwEB/zAKBggqhkjOPQQDAgNHADBEAiBh6hgyT7zmYXLGaBe05/TKaUS8gl7puaCaxHSXk5uBoAIgZT9y/z3SFxONZmSDbY5EEYG/t4ibKk9U0HwZUTurc5A=";
+    private static final String DOCUMENT_SIGNER = "MIIBljCCAT2gAwIBAgIIENKHJbXkv5AwCgYIKoZIzj0EAwIwITELMAkGA1UEBhMCREsxEjAQBgNVBAMTCVRlc3QgSUFDQTAgFw0yNDA2MDExOTQ5MDdaGA8yMTI0MDUwODE5NDkwN1owLDELMAkGA1UEBhMCREsxHTAbBgNVBAMTFFRlc3QgRG9jdW1lbnQgU2lnbmVyMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEccsTBda55jd6kMZCbY+C/mlvL7Juz0JjgUNHVUA0gtSnsVjY+nOoyu9Jd1swOihXGzgin5H6YSKWybt4RByFNqNSMFAwHQYDVR0OBBYEFCWijbnGbZD0WJgVDQ/TCsoGyBWmMA4GA1UdDwEB/wQEAwIHgDAfBgNVHSMEGDAWgBRGCAtYHeOeCgkBCsLpITHPmhYv0zAKBggqhkjOPQQDAgNHADBEAiAUyIKJ7obusOoE8FAambyCm9zB7ve7w6dmlc0MdtKhoAIgVKWAy4agz0tO+123OYpibLZJG7i0KZqQby0Bf4PxTDA=";
+    private static final String DOCUMENT_SIGNER_WITHOUT_DIGITAL_SIGNATURE = "MIIBlzCCAT2gAwIBAgIIAzDBTxJ0iIQwCgYIKoZIzj0EAwIwITELMAkGA1UEBhMCREsxEjAQBgNVBAMTCVRlc3QgSUFDQTAgFw0yNDA2MDExOTQ5MDhaGA8yMTI0MDUwODE5NDkwOFowLDELMAkGA1UEBhMCREsxHTAbBgNVBAMTFFRlc3QgRG9jdW1lbnQgU2lnbmVyMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEccsTBda55jd6kMZCbY+C/mlvL7Juz0JjgUNHVUA0gtSnsVjY+nOoyu9Jd1swOihXGzgin5H6YSKWybt4RByFNqNSMFAwHQYDVR0OBBYEFCWijbnGbZD0WJgVDQ/TCsoGyBWmMA4GA1UdDwEB/wQEAwICBDAfBgNVHSMEGDAWgBRGCAtYHeOeCgkBCsLpITHPmhYv0zAKBggqhkjOPQQDAgNIADBFAiEAiOo87FYndRRhWnCOaNUJTrNf0ax01R9foB8s3a4Cs5ACIDaH0oy+3Fl81UAcc2ZA3zj0HjT65VtgtoNN90209HYS";
+    // Two IACAs with the same subject and no authority key identifier in the signer, as across a key rollover
+    private static final String ROLLOVER_IACA_OLD = "MIIBkDCCATagAwIBAgIUNIx2d0+6DFbE8UYTQdVrx3HdjxAwCgYIKoZIzj0EAwIwJTELMAkGA1UEBhMCREsxFjAUBgNVBAMMDVJvbGxvdmVyIElBQ0EwIBcNMjYxMDE3MjAzMDExWhgPMjEyNjA5MjMyMDMwMTFaMCUxCzAJBgNVBAYTAkRLMRYwFAYDVQQDDA1Sb2xsb3ZlciBJQUNBMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEvheIa+KAczCTmzvpnN95WRRfBaQS1DXGsPY81jvNVqTpmQhmFbUWq59Y6QG1aHwXswQwMxRqf1i5y6XXKJzYaKNCMEAwHQYDVR0OBBYEFLCFQTatcve/S+/Gxc/Kxlxd+oYvMA8GA1UdEwEB/wQFMAMBAf8wDgYDVR0PAQH/BAQDAgEGMAoGCCqGSM49BAMCA0gAMEUCIHHBD+Io4Ea+9cTlCZSlE1MYscNPYv3Ce50t+pqoTSVfAiEAghNxGUlitjwdH6uonsILomGFhJAeNZUyMmOVmVkUnvQ=";
+    private static final String ROLLOVER_IACA_NEW = "MIIBkTCCATagAwIBAgIUP8pbxj4DeHs398RUkBVOEVyqTUowCgYIKoZIzj0EAwIwJTELMAkGA1UEBhMCREsxFjAUBgNVBAMMDVJvbGxvdmVyIElBQ0EwIBcNMjYxMDE3MjAzMDExWhgPMjEyNjA5MjMyMDMwMTFaMCUxCzAJBgNVBAYTAkRLMRYwFAYDVQQDDA1Sb2xsb3ZlciBJQUNBMFkwEwYHKoZIzj0CAQYIKoZIzj0DAQcDQgAEV4mWqEO++bLWvbEZPSb9A/zECaEUImMyqK9KjVgCV/TcT5NR5w63x8E8evmHzdxR/g9Tk7L+0brYLq+3CbU7vqNCMEAwHQYDVR0OBBYEFGvOZf+24DZdx8sjEsi6TBtJWmHFMA8GA1UdEwEB/wQFMAMBAf8wDgYDVR0PAQH/BAQDAgEGMAoGCCqGSM49BAMCA0kAMEYCIQDK7Y5B2VgTClwVnqcR5ZeXrb2hIfTPIonKXAetrfJpEwIhAINCeZuMd6vSz394y6UvbVsL6casSgBPqcUJcUeoql0Z";
+    private static final String ROLLOVER_DOCUMENT_SIGNER = "MIIBWTCB/6ADAgECAgISNDAKBggqhkjOPQQDAjAlMQswCQYDVQQGEwJESzEWMBQGA1UEAwwNUm9sbG92ZXIgSUFDQTAgFw0yNjEwMTcyMDMwMTZaGA8yMTI1MDUxMTIwMzAxNlowMDELMAkGA1UEBhMCREsxITAfBgNVBAMMGFJvbGxvdmVyIERvY3VtZW50IFNpZ25lcjBZMBMGByqGSM49AgEGCCqGSM49AwEHA0IABGmMcsQYiawLyf2rduu1crA1JE0yrfXRGtxAGe9BevBP+NG0U7OYsxw/+tIJEH08qczt6p7vBuw/J5PfIYRChEqjEjAQMA4GA1UdDwEB/wQEAwIHgDAKBggqhkjOPQQDAgNJADBGAiEAk21a7zG0a+0Y+l19ay4p3q89GN9NVYiounsceZvbrgsCIQDWS9BSArzMWY4OKBvqjXVzqENdH8dhZ9sgq6wXDN2UNQ==";
+    // Issued by ROLLOVER_IACA_NEW, with an authority key identifier whose SEQUENCE claims 16 bytes but has 4
+    private static final String DOCUMENT_SIGNER_WITH_MALFORMED_AKI = "MIIBaDCCAQ6gAwIBAgICEjUwCgYIKoZIzj0EAwIwJTELMAkGA1UEBhMCREsxFjAUBgNVBAMMDVJvbGxvdmVyIElBQ0EwIBcNMjYxMDE3MjAzMDM3WhgPMjEyNTA1MTEyMDMwMzdaMDAxCzAJBgNVBAYTAkRLMSEwHwYDVQQDDBhSb2xsb3ZlciBEb2N1bWVudCBTaWduZXIwWTATBgcqhkjOPQIBBggqhkjOPQMBBwNCAARpjHLEGImsC8n9q3brtXKwNSRNMq310RrcQBnvQXrwT/jRtFOzmLMcP/rSCRB9PKnM7eqe7wbsPyeT3yGEQoRKoyEwHzAOBgNVHQ8BAf8EBAMCB4AwDQYDVR0jBAYwEIACqrswCgYIKoZIzj0EAwIDSAAwRQIhAOWvm+Fmmri1yglhxuKv6qyXLYwIrLaJ7QDbibWVQ0rXAiASjNJtZ2ZlFgGyTTqNVfvghDr+LPZq13Typv2OsMkteg==";
+    private static final Clock AFTER_ROLLOVER = Clock.fixed(Instant.parse("2030-01-01T00:00:00Z"), ZoneOffset.UTC);
+
+    @Test
+    public void validChainIsCached() {
+        val validator = new IssuerChainValidator(new TrustAnchorIndex(List.of(certificate(OTHER_IACA), certificate(IACA))));
+
+        val key = validator.validate(List.of(der(DOCUMENT_SIGNER)));
+        validator.validate(List.of(der(DOCUMENT_SIGNER)));
+
+        assertEquals(certificate(DOCUMENT_SIGNER).getPublicKey(), key);
+        assertEquals(1, validator.getCachedChainCount());
+        assertEquals(key, validator.validate(List.of(der(DOCUMENT_SIGNER), der(IACA))));
+    }
+
+    @Test
+    public void cachedChainIsNotUsedAfterExpiry() {
+        val validator = new IssuerChainValidator(new TrustAnchorIndex(List.of(certificate(IACA))));
+        validator.validate(List.of(der(DOCUMENT_SIGNER)));
+
+        validator.setClock(Clock.fixed(Instant.parse("2200-01-01T00:00:00Z"), ZoneOffset.UTC));
+
+        assertThrows(SecurityException.class, () -> validator.validate(List.of(der(DOCUMENT_SIGNER))));
+    }
+
+    @Test
+    public void untrustedChainIsRejected() {
+        val validator = new IssuerChainValidator(new TrustAnchorIndex(List.of(certificate(OTHER_IACA))));
+
+        val exception = assertThrows(SecurityException.class, () -> validator.validate(List.of(der(DOCUMENT_SIGNER))));
+
+        assertEquals("Issuer certificate chain is invalid: Path does not chain with any of the trust anchors", exception.getMessage());
+        assertEquals(0, validator.getCachedChainCount());
+    }
+
+    @Test
+    public void signerMustAllowDigitalSignatures() {
+        val validator = new IssuerChainValidator(new TrustAnchorIndex(List.of(certificate(IACA))));
+
+        val exception = assertThrows(SecurityException.class,
+                () -> validator.validate(List.of(der(DOCUMENT_SIGNER_WITHOUT_DIGITAL_SIGNATURE))));
+
+        assertEquals("Issuer certificate does not allow digital signatures", exception.getMessage());
+    }
+
+    @Test
+    public void everyAnchorWithTheIssuerNameIsTried() {
+        val validator = new IssuerChainValidator(new TrustAnchorIndex(List.of(certificate(ROLLOVER_IACA_OLD), certificate(ROLLOVER_IACA_NEW))));
+        validator.setClock(AFTER_ROLLOVER);
+
+        val key = validator.validate(List.of(der(ROLLOVER_DOCUMENT_SIGNER)));
+
+        assertEquals(certificate(ROLLOVER_DOCUMENT_SIGNER).getPublicKey(), key);
+    }
+
+    @Test
+    public void malformedAuthorityKeyIdentifierIsUntrusted() {
+        val validator = new IssuerChainValidator(new TrustAnchorIndex(List.of(certificate(ROLLOVER_IACA_NEW))));
+        validator.setClock(AFTER_ROLLOVER);
+
+        val exception = assertThrows(SecurityException.class, () -> validator.validate(List.of(der(DOCUMENT_SIGNER_WITH_MALFORMED_AKI))));
+
+        assertEquals("Malformed key identifier: DER length exceeds the extension", exception.getMessage());
+    }
+
+    private static byte[] der(String certificate) {
+        return Base64.getDecoder().decode(certificate);
+    }
+
+    @SneakyThrows
+    private static X509Certificate certificate(String certificate) {
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(der(certificate)));
+    }
+}
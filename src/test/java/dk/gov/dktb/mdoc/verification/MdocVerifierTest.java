@@ -0,0 +1,105 @@
+package dk.gov.dktb.mdoc.verification;
+
+import dk.gov.dktb.mdoc.cose.CoseAlgorithm;
+import dk.gov.dktb.mdoc.cose.JcaCoseSigner;
+import dk.gov.dktb.mdoc.issuance.MdocIssuer;
+import dk.gov.dktb.mdoc.metrics.Rejection;
+import dk.gov.dktb.mdoc.metrics.Stage;
+import dk.gov.dktb.mdoc.model.DeviceResponseDecoder;
+import dk.gov.dktb.mdoc.model.SessionTranscript;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.wallet.PresentationGenerator;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.security.PublicKey;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+
+import static dk.gov.dktb.mdoc.cose.TestKeys.generateKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTimeoutPreemptively;
+
+public class MdocVerifierTest {
+    private static final String DOC_TYPE = "eu.europa.ec.eudi.pid.1";
+    // Self-signed, with an Ed25519 key that cannot verify the ES256 issuer signature
+    private static final String ED25519_CERTIFICATE = "MIIBQzCB9qADAgECAgISNDAFBgMrZXAwLzELMAkGA1UEBhMCREsxIDAeBgNVBAMMF0VkMjU1MTkgRG9jdW1lbnQgU2lnbmVyMCAXDTI2MTAxNzIwMzU1MFoYDzIxMjYwOTIzMjAzNTUwWjAvMQswCQYDVQQGEwJESzEgMB4GA1UEAwwXRWQyNTUxOSBEb2N1bWVudCBTaWduZXIwKjAFBgMrZXADIQBwQL/llufnyaxJp01AYJHqg9Z/wCv+wQQsKt0z2sCfE6M0MDIwHwYDVR0jBBgwFoAUmcpO8ilZ/ADZti4syEhpYFfY0kQwDwYDVR0TAQH/BAUwAwEB/zAFBgMrZXADQQBSSTlIoJZ+dBN5FqCfYGjzVjZz8Tnp+jWH0BZwOwICWwslsJabaKdv5mkUX9+BLwz5X9npzfrLb7PQxxynKrIH";
+
+    private final DeviceResponseDecoder decoder = new DeviceResponseDecoder();
+
+    @Test
+    public void issuerKeyOfWrongTypeFailsIssuerSignature() {
+        val issuerSigned = decoder.decodeIssuerSigned(issue(generateKey().getPublic()));
+        val result = new VerificationResult.Builder(true);
+
+        new MdocVerifier().checkIssuerSignature(issuerSigned, result);
+
+        val failure = result.build().getFirstFailure();
+        assertEquals(Rejection.ISSUER_SIGNATURE, failure.reason());
+        assertEquals("Issuer signature is invalid: key cannot verify ES256", failure.message());
+    }
+
+    @Test
+    public void malformedIssuerCertificateIsUntrusted() {
+        val issuerSigned = decoder.decodeIssuerSigned(withMalformedCertificate(issue(generateKey().getPublic())));
+        val result = new VerificationResult.Builder(true);
+
+        new MdocVerifier().checkIssuerSignature(issuerSigned, result);
+
+        val failure = result.build().getFirstFailure();
+        assertEquals(Stage.ISSUER_SIGNATURE, failure.stage());
+        assertEquals(Rejection.UNTRUSTED_ISSUER, failure.reason());
+        assertEquals("Issuer certificate cannot be parsed", failure.message());
+    }
+
+    @Test
+    public void batchReportsSharedMalformedCertificateForEveryItem() {
+        val deviceKey = generateKey();
+        val issuerSigned = withMalformedCertificate(issue(deviceKey.getPublic()));
+        val generator = new PresentationGenerator(DOC_TYPE, issuerSigned, new JcaCoseSigner(deviceKey.getPrivate(), CoseAlgorithm.ES256));
+        val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "mdocGeneratedNonce");
+        val item = new BatchVerifier.Item(generator.deviceResponse(transcript), transcript);
+
+        // The items share one issuerAuth, which is checked once for all of them
+        val results = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> new BatchVerifier().verify(List.of(item, item, item, item)));
+
+        assertEquals(4, results.size());
+        for (val result : results) {
+            assertEquals(Rejection.UNTRUSTED_ISSUER, result.verification().getFirstFailure().reason());
+        }
+    }
+
+    private static ByteSlice issue(PublicKey deviceKey) {
+        val signer = new JcaCoseSigner(generateKey().getPrivate(), CoseAlgorithm.ES256, List.of(certificate(ED25519_CERTIFICATE)));
+        return new MdocIssuer(signer)
+                .issue(DOC_TYPE, Map.of(DOC_TYPE, Map.of("age_over_18", true)), deviceKey)
+                .issuerSigned();
+    }
+
+    /// Replaces the first byte of the x5chain certificate, the DER SEQUENCE tag, which is not
+    /// covered by the issuer signature.
+    private static ByteSlice withMalformedCertificate(ByteSlice issuerSigned) {
+        val bytes = issuerSigned.toByteArray();
+        val certificate = Base64.getDecoder().decode(ED25519_CERTIFICATE);
+        for (int i = 0; i <= bytes.length - certificate.length; i++) {
+            if (Arrays.equals(bytes, i, i + certificate.length, certificate, 0, certificate.length)) {
+                bytes[i] = 0;
+                return ByteSlice.of(bytes);
+            }
+        }
+        throw new AssertionError("x5chain certificate not found");
+    }
+
+    @SneakyThrows
+    private static X509Certificate certificate(String certificate) {
+        val der = Base64.getDecoder().decode(certificate);
+        return (X509Certificate) CertificateFactory.getInstance("X.509").generateCertificate(new ByteArrayInputStream(der));
+    }
+}
@@ -0,0 +1,131 @@
+package dk.gov.dktb.mdoc.verification;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class NonceStoreTest {
+    private static final Instant NOW = Instant.parse("2025-06-01T12:00:00Z");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    public void fileStoreRemembersNoncesAcrossReopen() {
+        val file = directory.resolve("nonces");
+        val clock = new MutableClock();
+
+        try (var store = new FileNonceStore(file, store(clock))) {
+            assertTrue(store.markSeen("first", NOW.plusSeconds(60)));
+            assertTrue(store.markSeen("second", NOW.plusSeconds(600)));
+            assertFalse(store.markSeen("first", NOW.plusSeconds(60)));
+        }
+        try (var store = new FileNonceStore(file, store(clock))) {
+            assertFalse(store.markSeen("first", NOW.plusSeconds(60)));
+            assertTrue(store.markSeen("third", NOW.plusSeconds(60)));
+        }
+
+        clock.advance(Duration.ofSeconds(120));
+        try (var store = new FileNonceStore(file, store(clock))) {
+            assertTrue(store.markSeen("first", NOW.plusSeconds(600)));
+            assertFalse(store.markSeen("second", NOW.plusSeconds(600)));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    public void fileStoreDropsMalformedLines() {
+        val file = directory.resolve("nonces");
+        val expiry = NOW.plusSeconds(60).getEpochSecond();
+        Files.writeString(file, expiry + " Zmlyc3Q\n"
+                + "garbage\n"
+                + "x Zmlyc3Q\n"
+                + expiry + " !!!\n"
+                + "\n"
+                + expiry + " c2Vjb25k\n"
+                + expiry, StandardCharsets.US_ASCII);
+
+        try (var store = new FileNonceStore(file, store(new MutableClock()))) {
+            assertFalse(store.markSeen("first", NOW.plusSeconds(60)));
+            assertFalse(store.markSeen("second", NOW.plusSeconds(60)));
+        }
+        assertEquals(expiry + " Zmlyc3Q\n" + expiry + " c2Vjb25k\n", Files.readString(file, StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void expiredNoncesAreEvictedByBucket() {
+        val clock = new MutableClock();
+        val store = store(clock);
+
+        store.markSeen("first", NOW.plusSeconds(5));
+        store.markSeen("second", NOW.plusSeconds(25));
+        assertEquals(2, store.size());
+
+        // The bucket of "first" ends at NOW + 10s, the one of "second" at NOW + 30s
+        clock.advance(Duration.ofSeconds(15));
+        store.markSeen("third", NOW.plusSeconds(60));
+        assertEquals(2, store.size());
+        assertTrue(store.markSeen("first", NOW.plusSeconds(60)));
+        assertFalse(store.markSeen("second", NOW.plusSeconds(60)));
+    }
+
+    @Test
+    public void fullStoreRejectsNewNonces() {
+        val clock = new MutableClock();
+        val store = store(clock);
+        store.setMaxEntries(2);
+
+        store.markSeen("first", NOW.plusSeconds(5));
+        store.markSeen("second", NOW.plusSeconds(5));
+        val exception = assertThrows(SecurityException.class, () -> store.markSeen("third", NOW.plusSeconds(5)));
+        assertEquals("Nonce store is full", exception.getMessage());
+
+        clock.advance(Duration.ofSeconds(10));
+        assertTrue(store.markSeen("third", NOW.plusSeconds(60)));
+        assertEquals(1, store.size());
+    }
+
+    private static InMemoryNonceStore store(Clock clock) {
+        val store = new InMemoryNonceStore();
+        store.setClock(clock);
+        return store;
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = NOW;
+
+        void advance(Duration duration) {
+            now = now.plus(duration);
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package dk.gov.dktb.mdoc.wallet;
+
+import dk.gov.dktb.mdoc.cose.CoseAlgorithm;
+import dk.gov.dktb.mdoc.cose.JcaCoseSigner;
+import dk.gov.dktb.mdoc.issuance.MdocIssuer;
+import dk.gov.dktb.mdoc.model.DeviceNameSpacesExt;
+import dk.gov.dktb.mdoc.model.DeviceResponseDecoder;
+import dk.gov.dktb.mdoc.model.SessionTranscript;
+import dk.gov.dktb.mdoc.model.SignedQRPayload;
+import dk.gov.dktb.mdoc.utilities.Base64Url;
+import dk.gov.dktb.mdoc.utilities.ByteSink;
+import dk.gov.dktb.mdoc.utilities.ByteSlice;
+import dk.gov.dktb.mdoc.verification.MdocVerifier;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Map;
+
+import static dk.gov.dktb.mdoc.cose.TestKeys.generateKey;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PresentationGeneratorTest {
+    private static final String DOC_TYPE = "eu.europa.ec.eudi.pid.1";
+
+    @Test
+    public void vpTokenVerifiesForItsTranscript() {
+        val generator = generator();
+        val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "mdocGeneratedNonce");
+
+        val streamed = new ByteArrayOutputStream();
+        generator.writeVpToken(transcript, ByteSink.of(streamed));
+        val vpToken = generator.vpToken(transcript);
+
+        assertEquals(vpToken.length(), streamed.size());
+        val verifier = new MdocVerifier();
+        for (val token : new String[]{vpToken, streamed.toString()}) {
+            val document = new DeviceResponseDecoder().decode(Base64Url.decode(token)).getDocument(0);
+            verifier.verifyDeviceSignature(document, transcript);
+            verifier.verifyValueDigests(document.getIssuerSigned());
+        }
+        val document = new DeviceResponseDecoder().decode(Base64Url.decode(vpToken)).getDocument(0);
+        val otherTranscript = SessionTranscript.forOid4VP("otherClient", "responseUrl", "nonce", "mdocGeneratedNonce");
+        assertThrows(SecurityException.class, () -> verifier.verifyDeviceSignature(document, otherTranscript));
+    }
+
+    @Test
+    public void deviceSignedElementsAreDecodedAndSigned() {
+        val generator = generator();
+        generator.setDeviceNameSpaces(new DeviceNameSpacesExt(Map.of(DOC_TYPE, Map.of("nickname", "Jens"))));
+        val transcript = SessionTranscript.forOid4VP("clientId", "responseUrl", "nonce", "mdocGeneratedNonce");
+
+        val document = new DeviceResponseDecoder().decode(generator.deviceResponse(transcript)).getDocument(0);
+
+        assertEquals("Jens", document.getDeviceSignedValue(DOC_TYPE, "nickname"));
+        assertEquals("Jensen", document.getIssuerSignedValue(DOC_TYPE, "family_name"));
+        assertNull(document.getDeviceSignedValue(DOC_TYPE, "family_name"));
+        new MdocVerifier().verifyDeviceSignature(document, transcript);
+    }
+
+    @Test
+    public void signedQRSplitsIntoPartsThatReassemble() {
+        val generator = generator();
+        generator.setMaxQRSize(300);
+
+        val codes = generator.signedQRCodes();
+
+        assertTrue(codes.size() > 1);
+        codes.forEach(code -> assertTrue(code.length() <= 300));
+        val payload = SignedQRPayload.fromMultipleParts(codes.stream().map(ByteSlice::toByteArray).toList());
+        assertTrue(payload.check().isValid());
+    }
+
+    private static PresentationGenerator generator() {
+        val issuerKey = generateKey();
+        val deviceKey = generateKey();
+        val issuer = new MdocIssuer(new JcaCoseSigner(issuerKey.getPrivate(), CoseAlgorithm.ES256));
+        val document = issuer.issue(DOC_TYPE, Map.of(DOC_TYPE, Map.of("family_name", "Jensen", "age_over_18", true)), deviceKey.getPublic());
+        return new PresentationGenerator(document, new JcaCoseSigner(deviceKey.getPrivate(), CoseAlgorithm.ES256));
+    }
+}